@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Compares runs of tokens several at a time, with the vector API.
+ * <p>
+ * This class is compiled separately, only with a JDK that has the
+ * <code>jdk.incubator.vector</code> module, and {@link Mismatch} loads it
+ * only if the module is enabled at run time.
+ *
+ * @version $Revision$ $Date$
+ * @see Mismatch
+ */
+final class VectorFinder extends Mismatch.Finder
+{
+    static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    String getName()
+    {
+        return "vector";
+    }
+
+    int forward(int[] a, int i, int[] b, int j, int max)
+    {
+        final int step = SPECIES.length();
+        int n = 0;
+        for (; n + step <= max; n += step)
+        {
+            IntVector va = IntVector.fromArray(SPECIES, a, i + n);
+            IntVector vb = IntVector.fromArray(SPECIES, b, j + n);
+            VectorMask<Integer> ne = va.compare(VectorOperators.NE, vb);
+            if (ne.anyTrue())
+                return n + ne.firstTrue();
+        }
+        return n + super.forward(a, i + n, b, j + n, max - n);
+    }
+
+    int backward(int[] a, int i, int[] b, int j, int max)
+    {
+        final int step = SPECIES.length();
+        int n = 0;
+        for (; n + step <= max; n += step)
+        {
+            IntVector va = IntVector.fromArray(SPECIES, a, i - n - step);
+            IntVector vb = IntVector.fromArray(SPECIES, b, j - n - step);
+            VectorMask<Integer> ne = va.compare(VectorOperators.NE, vb);
+            if (ne.anyTrue())
+                return n + step - 1 - ne.lastTrue();
+        }
+        return n + super.backward(a, i - n, b, j - n, max - n);
+    }
+}
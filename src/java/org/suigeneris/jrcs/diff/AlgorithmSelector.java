@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.util.Arrays;
+
+import org.suigeneris.jrcs.diff.histogram.HistogramDiff;
+import org.suigeneris.jrcs.diff.parallel.ParallelDiff;
+import org.suigeneris.jrcs.diff.patience.PatienceDiff;
+
+/**
+ * Chooses the differencing algorithm for a pair of sequences from a quick
+ * look at them.
+ * <p>
+ * Sequences smaller than {@link #SMALL} items are left to Myers' algorithm.
+ * For larger ones, the hash codes of all the items are counted in a table,
+ * and a sample of the items of the original sequence is looked up in it. The
+ * sampled items that are missing from the revised sequence, or that occur
+ * once in each sequence but out of the order of the others, give an
+ * estimate of the edit distance <code>D</code>. The ones that occur at most
+ * once in each sequence give the fraction of unique items. Then:
+ * <ul>
+ * <li>If the estimated work of Myers' algorithm, <code>(N + M) * D</code>,
+ * is within {@link #MYERS_BUDGET}, Myers' algorithm is used.</li>
+ * <li>Otherwise, if most items are unique, {@link PatienceDiff} is used,
+ * which anchors the diff on the unique items without searching between
+ * them. Above the {@link Diff#getLinearThreshold() linear threshold}, it
+ * runs on segments in parallel through {@link ParallelDiff}.</li>
+ * <li>Otherwise, {@link HistogramDiff} is used, unless the sequences are
+ * above the linear threshold, in which case they are left to the linear
+ * space variant of Myers' algorithm.</li>
+ * </ul>
+ *
+ * @version $Revision$ $Date$
+ * @see Diff#defaultAlgorithm(Object[], int, int, Object[], int, int)
+ * @see DiffMetrics
+ */
+public final class AlgorithmSelector
+{
+    /** The combined size under which Myers' algorithm is always used. */
+    public static final int SMALL = 2048;
+
+    /** The estimated work up to which Myers' algorithm is used. */
+    public static final long MYERS_BUDGET = 1L << 26;
+
+    /** The number of items of the original sequence sampled. */
+    static final int SAMPLES = 1024;
+
+    /** The fraction of unique items from which PatienceDiff is used. */
+    static final double UNIQUE = 0.5;
+
+    private AlgorithmSelector()
+    {
+    }
+
+    /**
+     * Chooses the algorithm for <code>orig[i0..i1)</code> and
+     * <code>rev[j0..j1)</code>.
+     *
+     * @param orig
+     *            the original sequence.
+     * @param i0
+     *            the start of the range in the original sequence.
+     * @param i1
+     *            the end of the range in the original sequence.
+     * @param rev
+     *            the revised sequence.
+     * @param j0
+     *            the start of the range in the revised sequence.
+     * @param j1
+     *            the end of the range in the revised sequence.
+     * @return the algorithm, or <code>null</code> if the sequences are best
+     *         left to Myers' algorithm or its linear space variant.
+     */
+    public static DiffAlgorithm select(Object[] orig, int i0, int i1,
+            Object[] rev, int j0, int j1)
+    {
+        final int N = i1 - i0;
+        final int M = j1 - j0;
+        if (N + M <= SMALL || N == 0 || M == 0)
+            return null;
+
+        // the original counts are in the low half of the counts, and the
+        // revised ones in the high half; an empty slot has no counts
+        int capacity = Tokens.capacity((long) N + M);
+        final int mask = capacity - 1;
+        int missing = 0;
+        int moved = 0;
+        int unique = 0;
+        int samples = Math.min(N, SAMPLES);
+        DiffContext context = DiffContext.acquire();
+        try
+        {
+            int[] keys = context.vector(capacity);
+            int[] counts = context.vector2(capacity);
+            int[] positions = context.offsets(capacity);
+            Arrays.fill(counts, 0, capacity, 0);
+            for (int i = i0; i < i1; i++)
+                count(keys, counts, mask, orig[i].hashCode(), 0);
+            for (int j = j0; j < j1; j++)
+            {
+                int slot = count(keys, counts, mask, rev[j].hashCode(), 16);
+                positions[slot] = j;
+            }
+
+            // the sampled items that occur once in each sequence, where
+            // they are
+            int[] candI = context.origTokens(samples);
+            int[] candJ = context.revTokens(samples);
+            int n = 0;
+            for (int s = 0; s < samples; s++)
+            {
+                int i = i0 + (int) ((long) s * N / samples);
+                int slot = find(keys, counts, mask, orig[i].hashCode());
+                int c = counts[slot];
+                if ((c >>> 16) == 0)
+                    missing++;
+                if ((c & 0xFFFF) == 1 && (c >>> 16) <= 1)
+                    unique++;
+                if (c == 0x10001)
+                {
+                    candI[n] = i;
+                    candJ[n] = positions[slot];
+                    n++;
+                }
+            }
+            if (n > 0)
+                moved = n - PatienceDiff.longestIncreasing(candI, candJ, n)
+                        .length / 2;
+        }
+        finally
+        {
+            context.release();
+        }
+
+        // each missing or moved item is a deletion, and most likely has an
+        // insertion for a counterpart
+        long distance = 2L * (missing + moved) * N / samples;
+        if (distance * (N + M) <= MYERS_BUDGET)
+            return null;
+
+        boolean huge = N + M > Diff.getLinearThreshold();
+        if (unique >= UNIQUE * samples)
+        {
+            if (huge)
+                return new ParallelDiff(new PatienceDiff());
+            return new PatienceDiff();
+        }
+        return (huge ? null : new HistogramDiff());
+    }
+
+    /**
+     * Adds to the count of a hash code, saturating at 0xFFFF.
+     *
+     * @return the slot of the hash code.
+     */
+    private static int count(int[] keys, int[] counts, int mask, int hash,
+            int shift)
+    {
+        int slot = find(keys, counts, mask, hash);
+        keys[slot] = hash;
+        if (((counts[slot] >>> shift) & 0xFFFF) != 0xFFFF)
+            counts[slot] += 1 << shift;
+        return slot;
+    }
+
+    /**
+     * Returns the slot of a hash code, or the empty slot where it goes.
+     */
+    private static int find(int[] keys, int[] counts, int mask, int hash)
+    {
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (counts[slot] != 0 && keys[slot] != hash)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+}
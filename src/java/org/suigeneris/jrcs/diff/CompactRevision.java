@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.suigeneris.jrcs.diff.delta.Chunk;
+import org.suigeneris.jrcs.diff.delta.Delta;
+
+/**
+ * A {@link Revision} that holds its deltas as positions in the sequences it
+ * was computed from, instead of as {@link Delta} objects.
+ * <p>
+ * Each delta, or hunk, takes four entries in parallel <code>int[]</code>
+ * arrays: the anchor and size of the original chunk, and the anchor and size
+ * of the revised one. The items are not copied; the revision keeps
+ * references to the original and revised sequences, which must not be
+ * changed while it is in use.
+ * <p>
+ * {@link Delta} and {@link Chunk} objects are only created, and then kept,
+ * for the hunks that are asked for with {@link #getDelta(int)}, including
+ * those a {@link RevisionVisitor} visits, and their chunks are
+ * {@link Chunk#view(Object[], int, int, int) views} of the sequences.
+ * Patching and printing work on the positions directly. Deltas added with
+ * {@link #addDelta(Delta)} are kept as they are, so they may refer to any
+ * sequences.
+ *
+ * @version $Revision$ $Date$
+ * @see Matches#toRevision(Object[], Object[])
+ */
+public class CompactRevision extends Revision
+{
+    private final Object[] orig;
+
+    private final Object[] rev;
+
+    /** How far the positions are from the indexes in the sequences. */
+    private int offset = 0;
+
+    private int[] origAnchor = new int[8];
+
+    private int[] origCount = new int[8];
+
+    private int[] revAnchor = new int[8];
+
+    private int[] revCount = new int[8];
+
+    /** The deltas created or added so far, or <code>null</code> if none. */
+    private Delta[] deltas;
+
+    private int size = 0;
+
+    /**
+     * Creates an empty revision between two sequences.
+     *
+     * @param orig
+     *            the original sequence.
+     * @param rev
+     *            the revised sequence.
+     */
+    public CompactRevision(Object[] orig, Object[] rev)
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("original sequence is null");
+        if (rev == null)
+            throw new IllegalArgumentException("revised sequence is null");
+        this.orig = orig;
+        this.rev = rev;
+    }
+
+    /**
+     * Adds a delta, given by the positions of its chunks.
+     *
+     * @param origAnchor
+     *            the position of the original chunk.
+     * @param origCount
+     *            the number of items in the original chunk.
+     * @param revAnchor
+     *            the position of the revised chunk.
+     * @param revCount
+     *            the number of items in the revised chunk.
+     */
+    public synchronized void addHunk(int origAnchor, int origCount,
+            int revAnchor, int revCount)
+    {
+        if (origCount < 0 || revCount < 0)
+            throw new IllegalArgumentException("negative hunk size");
+        if (origCount == 0 && revCount == 0)
+            throw new IllegalArgumentException("empty hunk");
+        if (origAnchor - offset < 0
+                || origAnchor - offset + origCount > orig.length
+                || revAnchor - offset < 0
+                || revAnchor - offset + revCount > rev.length)
+            throw new IllegalArgumentException("hunk out of the sequences");
+        grow();
+        this.origAnchor[size] = origAnchor;
+        this.origCount[size] = origCount;
+        this.revAnchor[size] = revAnchor;
+        this.revCount[size] = revCount;
+        size++;
+    }
+
+    public synchronized void addDelta(Delta delta)
+    {
+        if (delta == null)
+            throw new IllegalArgumentException("new delta is null");
+        grow();
+        set(size, delta);
+        size++;
+    }
+
+    public synchronized void insertDelta(Delta delta)
+    {
+        if (delta == null)
+            throw new IllegalArgumentException("new delta is null");
+        grow();
+        System.arraycopy(origAnchor, 0, origAnchor, 1, size);
+        System.arraycopy(origCount, 0, origCount, 1, size);
+        System.arraycopy(revAnchor, 0, revAnchor, 1, size);
+        System.arraycopy(revCount, 0, revCount, 1, size);
+        if (deltas != null)
+            System.arraycopy(deltas, 0, deltas, 1, size);
+        set(0, delta);
+        size++;
+    }
+
+    public synchronized Delta getDelta(int i)
+    {
+        check(i);
+        if (deltas == null)
+            deltas = new Delta[origAnchor.length];
+        if (deltas[i] == null)
+            deltas[i] = newDelta(i);
+        return deltas[i];
+    }
+
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The deltas that haven't been created yet are created for the iterator
+     * and not kept.
+     */
+    public ListIterator listIterator(int i)
+    {
+        List deltas = new AbstractList()
+        {
+            public Object get(int index)
+            {
+                synchronized (CompactRevision.this)
+                {
+                    check(index);
+                    return delta(index);
+                }
+            }
+
+            public int size()
+            {
+                return CompactRevision.this.size();
+            }
+        };
+        return deltas.listIterator(i);
+    }
+
+    /**
+     * Returns the position of the original chunk of a delta.
+     *
+     * @param i
+     *            the position of the delta.
+     * @return the position of the chunk in the original sequence.
+     */
+    public synchronized int origAnchor(int i)
+    {
+        check(i);
+        return (isMaterialized(i) ? deltas[i].getOriginal().anchor()
+                : origAnchor[i]);
+    }
+
+    /**
+     * Returns the size of the original chunk of a delta.
+     *
+     * @param i
+     *            the position of the delta.
+     * @return the number of items of the original sequence replaced.
+     */
+    public synchronized int origCount(int i)
+    {
+        check(i);
+        return (isMaterialized(i) ? deltas[i].getOriginal().size()
+                : origCount[i]);
+    }
+
+    /**
+     * Returns the position of the revised chunk of a delta.
+     *
+     * @param i
+     *            the position of the delta.
+     * @return the position of the chunk in the revised sequence.
+     */
+    public synchronized int revAnchor(int i)
+    {
+        check(i);
+        if (isMaterialized(i) && deltas[i].getRevised() != null)
+            return deltas[i].getRevised().anchor();
+        return revAnchor[i];
+    }
+
+    /**
+     * Returns the size of the revised chunk of a delta.
+     *
+     * @param i
+     *            the position of the delta.
+     * @return the number of items of the revised sequence inserted.
+     */
+    public synchronized int revCount(int i)
+    {
+        check(i);
+        return (isMaterialized(i) ? countOf(deltas[i].getRevised())
+                : revCount[i]);
+    }
+
+    synchronized void shift(int offset)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            origAnchor[i] += offset;
+            revAnchor[i] += offset;
+            if (isMaterialized(i))
+            {
+                deltas[i].getOriginal().shift(offset);
+                if (deltas[i].getRevised() != null)
+                    deltas[i].getRevised().shift(offset);
+            }
+        }
+        this.offset += offset;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If none of the deltas has been created, the inverse is a compact
+     * revision of the same sequences, the other way around.
+     */
+    public synchronized Revision invert()
+    {
+        if (deltas != null)
+            return super.invert();
+        CompactRevision inverse = new CompactRevision(rev, orig);
+        inverse.offset = offset;
+        for (int i = 0; i < size; i++)
+            inverse.addHunk(revAnchor[i], revCount[i], origAnchor[i],
+                    origCount[i]);
+        inverse.setApproximate(isApproximate());
+        return inverse;
+    }
+
+    synchronized Object[] merge(Object[] src, DiffOptions options)
+            throws PatchFailedException, DiffTimeoutException
+    {
+        int length = src.length;
+        int end = 0;
+        for (int i = 0; i < size; i++)
+        {
+            if (isMaterialized(i))
+            {
+                Delta delta = deltas[i];
+                if (!isMergeable(delta, end))
+                    return null;
+                end = delta.getOriginal().first() + delta.getOriginal().size();
+                length += sizeOf(delta.getRevised())
+                        - delta.getOriginal().size();
+            }
+            else
+            {
+                if (origAnchor[i] < end)
+                    return null;
+                end = origAnchor[i] + origCount[i];
+                length += revCount[i] - origCount[i];
+            }
+        }
+        if (end > src.length)
+            throw new PatchFailedException("chunk beyond target.size()");
+
+        Object[] result = new Object[length];
+        int from = 0;
+        int to = 0;
+        for (int i = 0; i < size; i++)
+        {
+            DiffOptions.check(options);
+            int first = (isMaterialized(i) ? deltas[i].getOriginal().first()
+                    : origAnchor[i]);
+            System.arraycopy(src, from, result, to, first - from);
+            to += first - from;
+            from = first;
+            if (isMaterialized(i))
+            {
+                from = merge(deltas[i], src, result, to);
+                to += sizeOf(deltas[i].getRevised());
+                continue;
+            }
+
+            int k = origAnchor[i] - offset;
+            for (int n = origCount[i]; n > 0; n--)
+            {
+                if (!src[from++].equals(orig[k++]))
+                    throw new PatchFailedException();
+            }
+            System.arraycopy(rev, revAnchor[i] - offset, result, to,
+                    revCount[i]);
+            to += revCount[i];
+        }
+        System.arraycopy(src, from, result, to, src.length - from);
+        return result;
+    }
+
+    synchronized void applyEach(List target, DiffOptions options)
+            throws PatchFailedException, DiffTimeoutException
+    {
+        for (int i = size - 1; i >= 0; i--)
+        {
+            DiffOptions.check(options);
+            patch(i, target);
+        }
+    }
+
+    public synchronized void toString(StringBuffer s)
+    {
+        for (int i = 0; i < size; i++)
+            delta(i).toString(s);
+    }
+
+    public synchronized void toRCSString(StringBuffer s, String eol)
+    {
+        for (int i = 0; i < size; i++)
+            delta(i).toRCSString(s, eol);
+    }
+
+    public void accept(RevisionVisitor visitor)
+    {
+        visitor.visit(this);
+        for (int i = 0; i < size(); i++)
+            getDelta(i).accept(visitor);
+    }
+
+    /**
+     * Applies a delta, with the same checks and changes as the delta classes
+     * but working on the positions.
+     */
+    private void patch(int i, List target) throws PatchFailedException
+    {
+        if (isMaterialized(i))
+        {
+            deltas[i].patch(target);
+            return;
+        }
+
+        int at = origAnchor[i];
+        int n = origCount[i];
+        int from = at - offset;
+        if (at + n > target.size())
+            throw new PatchFailedException("chunk beyond target.size()");
+        for (int k = 0; k < n; k++)
+        {
+            if (!target.get(at + k).equals(orig[from + k]))
+                throw new PatchFailedException();
+        }
+        if (n > 0)
+            target.subList(at, at + n).clear();
+        if (revCount[i] > 0)
+        {
+            int start = revAnchor[i] - offset;
+            target.addAll(at, Arrays.asList(rev).subList(start,
+                    start + revCount[i]));
+        }
+    }
+
+    private boolean isMaterialized(int i)
+    {
+        return deltas != null && deltas[i] != null;
+    }
+
+    /**
+     * Returns the delta at a position, creating a temporary one if it hasn't
+     * been created yet.
+     */
+    private Delta delta(int i)
+    {
+        return (isMaterialized(i) ? deltas[i] : newDelta(i));
+    }
+
+    private Delta newDelta(int i)
+    {
+        Chunk original = Chunk.view(orig, origAnchor[i] - offset,
+                origCount[i], origAnchor[i]);
+        Chunk revised = Chunk.view(rev, revAnchor[i] - offset, revCount[i],
+                revAnchor[i]);
+        return Delta.newDelta(original, revised);
+    }
+
+    /**
+     * Records a delta. A delta without a revised chunk, such as a
+     * {@link org.suigeneris.jrcs.diff.delta.DeleteDelta DeleteDelta} made
+     * from its original chunk alone, inserts nothing where the deltas before
+     * it leave the revised sequence.
+     */
+    private void set(int i, Delta delta)
+    {
+        Chunk revised = delta.getRevised();
+        origAnchor[i] = delta.getOriginal().anchor();
+        origCount[i] = delta.getOriginal().size();
+        if (revised != null)
+            revAnchor[i] = revised.anchor();
+        else if (i == 0)
+            revAnchor[i] = origAnchor[i];
+        else
+            revAnchor[i] = origAnchor[i] + revAnchor[i - 1]
+                    + revCount[i - 1] - origAnchor[i - 1] - origCount[i - 1];
+        revCount[i] = countOf(revised);
+        if (deltas == null)
+            deltas = new Delta[origAnchor.length];
+        deltas[i] = delta;
+    }
+
+    /**
+     * Returns the size of a chunk, which may be missing.
+     */
+    private static int countOf(Chunk chunk)
+    {
+        return (chunk == null ? 0 : chunk.size());
+    }
+
+    private void check(int i)
+    {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: "
+                    + size);
+    }
+
+    /**
+     * Makes room for one more delta.
+     */
+    private void grow()
+    {
+        if (size < origAnchor.length)
+            return;
+        int length = 2 * origAnchor.length;
+        origAnchor = copyOf(origAnchor, length);
+        origCount = copyOf(origCount, length);
+        revAnchor = copyOf(revAnchor, length);
+        revCount = copyOf(revCount, length);
+        if (deltas != null)
+        {
+            Delta[] grown = new Delta[length];
+            System.arraycopy(deltas, 0, grown, 0, size);
+            deltas = grown;
+        }
+    }
+
+    private static int[] copyOf(int[] array, int length)
+    {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+}
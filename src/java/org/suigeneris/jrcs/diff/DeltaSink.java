@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.io.IOException;
+
+import org.suigeneris.jrcs.diff.delta.Delta;
+
+/**
+ * Receives the deltas of a difference as they are found, so they don't all
+ * have to be held in memory.
+ * <p>
+ * The deltas are given in order, and don't overlap. A {@link Revision} is
+ * itself a sink that collects them.
+ *
+ * @version $Revision$ $Date$
+ * @see org.suigeneris.jrcs.diff.external.ExternalDiff
+ */
+public interface DeltaSink
+{
+    /**
+     * Receives the next delta.
+     *
+     * @param delta
+     *            the delta.
+     * @throws IOException
+     *             if the delta can't be stored or written.
+     */
+    public void addDelta(Delta delta) throws IOException;
+}
@@ -16,6 +16,7 @@
 package org.suigeneris.jrcs.diff;
 
 import org.suigeneris.jrcs.diff.delta.Delta;
+import org.suigeneris.jrcs.diff.myers.LinearMyersDiff;
 import org.suigeneris.jrcs.diff.myers.MyersDiff;
 import org.suigeneris.jrcs.util.ToString;
 
@@ -65,12 +66,48 @@ public class Diff extends ToString
     /** The line separator to use in RCS format output. */
     public static final String RCS_EOL = "\n";
 
+    /**
+     * The combined size of the input sequences above which the default
+     * algorithm is {@link LinearMyersDiff} instead of {@link MyersDiff}.
+     * Initialized from the <code>org.suigeneris.jrcs.diff.linearThreshold</code>
+     * system property.
+     */
+    private static int linearThreshold = Integer.getInteger(
+            "org.suigeneris.jrcs.diff.linearThreshold", 100000).intValue();
+
+    /**
+     * Whether the default algorithm is chosen by the
+     * {@link AlgorithmSelector}. Initialized from the
+     * <code>org.suigeneris.jrcs.diff.adaptive</code> system property.
+     */
+    private static boolean adaptive = !"false".equals(System
+            .getProperty("org.suigeneris.jrcs.diff.adaptive"));
+
+    /** Where diffs are reported, or <code>null</code>. */
+    private static volatile DiffMetrics metrics;
+
+    /**
+     * The distance up to which {@link #stat stat()} compares the items
+     * without interning them.
+     */
+    private static final int STAT_NEAR_DISTANCE = 64;
+
     /** The original sequence. */
     protected final Object[] orig;
 
-    /** The differencing algorithm to use. */
+    /**
+     * The differencing algorithm to use. If it is the one made by
+     * {@link #defaultAlgorithm()} of this class, the default algorithm is
+     * chosen again for each revision.
+     */
     protected DiffAlgorithm algorithm;
 
+    /**
+     * The algorithm made by {@link #defaultAlgorithm()} of this class, or
+     * <code>null</code> if a subclass made its own.
+     */
+    private DiffAlgorithm standard;
+
     /**
      * Create a differencing object using the default algorithm
      * 
@@ -106,15 +143,139 @@ public class Diff extends ToString
 
     /**
      * Returns the default differencing algorith.
+     * <p>
+     * The algorithm returned by this implementation stands for the choice
+     * that {@link #diff(Object[], DiffOptions)} makes for each revision
+     * with {@link #defaultAlgorithm(Object[], int, int, Object[], int, int)}.
+     * Subclasses that override this method to return an algorithm of their
+     * own have it used for all revisions.
+     * 
      * @return the default algorithm.
      */
     protected DiffAlgorithm defaultAlgorithm()
     {
-        return new MyersDiff();
+        standard = defaultAlgorithm(orig.length);
+        return standard;
+    }
+
+    /**
+     * Returns the default differencing algorith for input sequences of the
+     * given combined size.
+     * <p>
+     * {@link MyersDiff} is used unless the size is above the
+     * {@link #getLinearThreshold linear threshold}, in which case the
+     * {@link LinearMyersDiff linear space} variant is used.
+     * 
+     * @param size
+     *            the combined size of the original and revised sequences.
+     * @return the default algorithm.
+     */
+    protected DiffAlgorithm defaultAlgorithm(int size)
+    {
+        if (size > linearThreshold)
+            return new LinearMyersDiff();
+        else
+            return new MyersDiff();
+    }
+
+    /**
+     * Returns the default differencing algorithm for
+     * <code>orig[i0..i1)</code> and <code>rev[j0..j1)</code>, which are what
+     * remains of the sequences after trimming their common prefix and
+     * suffix.
+     * <p>
+     * If the choice is {@link #isAdaptive() adaptive}, it is made by the
+     * {@link AlgorithmSelector}, and falls back to
+     * {@link #defaultAlgorithm(int)} when the selector leaves the sequences
+     * to Myers' algorithm.
+     * 
+     * @return the default algorithm.
+     */
+    protected DiffAlgorithm defaultAlgorithm(Object[] orig, int i0, int i1,
+            Object[] rev, int j0, int j1)
+    {
+        DiffAlgorithm algorithm = null;
+        if (adaptive)
+            algorithm = AlgorithmSelector.select(orig, i0, i1, rev, j0, j1);
+        if (algorithm == null)
+            algorithm = defaultAlgorithm(i1 - i0 + j1 - j0);
+        return algorithm;
+    }
+
+    /**
+     * Tells whether the default algorithm is chosen looking at the
+     * sequences, or only at their size.
+     * 
+     * @return true if the {@link AlgorithmSelector} is used.
+     */
+    public static boolean isAdaptive()
+    {
+        return adaptive;
+    }
+
+    /**
+     * Sets whether the default algorithm is chosen looking at the sequences,
+     * or only at their size.
+     * 
+     * @param adaptive
+     *            true to use the {@link AlgorithmSelector}.
+     */
+    public static void setAdaptive(boolean adaptive)
+    {
+        Diff.adaptive = adaptive;
+    }
+
+    /**
+     * Returns where diffs are reported.
+     * 
+     * @return the metrics hook, or <code>null</code>.
+     */
+    public static DiffMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Sets where the algorithm, size and duration of every diff computed
+     * through this class are reported.
+     * 
+     * @param metrics
+     *            the metrics hook, or <code>null</code> for none.
+     */
+    public static void setMetrics(DiffMetrics metrics)
+    {
+        Diff.metrics = metrics;
+    }
+
+    /**
+     * Returns the combined input size above which the default algorithm
+     * switches to {@link LinearMyersDiff}.
+     * 
+     * @return the threshold.
+     */
+    public static int getLinearThreshold()
+    {
+        return linearThreshold;
+    }
+
+    /**
+     * Sets the combined input size above which the default algorithm
+     * switches to {@link LinearMyersDiff}.
+     * 
+     * @param threshold
+     *            the new threshold.
+     */
+    public static void setLinearThreshold(int threshold)
+    {
+        linearThreshold = threshold;
     }
 
     /**
      * compute the difference between the original and a revision.
+     * <p>
+     * If the algorithm is a {@link TrimmableDiffAlgorithm}, it is applied
+     * only to the items between the common prefix and suffix of both
+     * sequences.
      * 
      * @param rev
      *            the revision to compare with the original.
@@ -122,10 +283,101 @@ public class Diff extends ToString
      */
     public Revision diff(Object[] rev) throws DifferentiationFailedException
     {
-        if (orig.length == 0 && rev.length == 0)
+        return diff(rev, (DiffOptions) null);
+    }
+
+    /**
+     * compute the difference between the original and a revision, giving up
+     * if the given options say so.
+     * 
+     * @param rev
+     *            the revision to compare with the original.
+     * @param options
+     *            the deadline and cancellation flag to check while the diff
+     *            is computed, or <code>null</code> if there are no limits.
+     * @return a Revision describing the differences
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the diff was cancelled.
+     * @see #diff(Object[])
+     */
+    public Revision diff(Object[] rev, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        // the items that are equal at the start and at the end of both
+        // sequences are never part of a delta, so trimmable algorithms are
+        // given only the window between them
+        int prefix = 0;
+        int limit = Math.min(orig.length, rev.length);
+        while (prefix < limit && orig[prefix].equals(rev[prefix]))
+        {
+            prefix++;
+        }
+        if (prefix == orig.length && prefix == rev.length)
             return new Revision();
-        else
-            return algorithm.diff(orig, rev);
+
+        DiffAlgorithm algo = algorithm;
+        int suffix = 0;
+        if (algo == null || algo == standard
+                || algo instanceof TrimmableDiffAlgorithm)
+        {
+            limit -= prefix;
+            while (suffix < limit
+                    && orig[orig.length - 1 - suffix].equals(
+                            rev[rev.length - 1 - suffix]))
+            {
+                suffix++;
+            }
+        }
+        boolean selected = (algo == null || algo == standard);
+        if (selected)
+            algo = defaultAlgorithm(orig, prefix, orig.length - suffix, rev,
+                    prefix, rev.length - suffix);
+        if (!(algo instanceof TrimmableDiffAlgorithm)
+                || (prefix == 0 && suffix == 0))
+            return run(algo, selected, orig, rev, options);
+
+        Revision revision = run(algo, selected, window(orig, prefix, suffix),
+                window(rev, prefix, suffix), options);
+        revision.shift(prefix);
+        return revision;
+    }
+
+    /**
+     * Runs an algorithm, and reports it to the {@link DiffMetrics metrics}
+     * hook if there is one.
+     */
+    private static Revision run(DiffAlgorithm algo, boolean selected,
+            Object[] orig, Object[] rev, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        DiffMetrics hook = metrics;
+        if (hook == null)
+            return algo.diff(orig, rev, options);
+
+        long start = System.nanoTime();
+        Revision revision = null;
+        try
+        {
+            revision = algo.diff(orig, rev, options);
+            return revision;
+        }
+        finally
+        {
+            long nanos = System.nanoTime() - start;
+            hook.diffed(algo, selected, orig.length, rev.length, nanos,
+                    revision);
+        }
+    }
+
+    /**
+     * Returns the part of a sequence that remains after removing the given
+     * number of items from its start and end.
+     */
+    private static Object[] window(Object[] seq, int prefix, int suffix)
+    {
+        Object[] result = new Object[seq.length - prefix - suffix];
+        System.arraycopy(seq, prefix, result, 0, result.length);
+        return result;
     }
 
     /**
@@ -150,6 +402,36 @@ public class Diff extends ToString
         return new Diff(orig, algorithm).diff(rev);
     }
 
+    /**
+     * compute the difference between an original and a revision, giving up
+     * if the given options say so.
+     * 
+     * @param orig
+     *            the original
+     * @param rev
+     *            the revision to compare with the original.
+     * @param algorithm
+     *            the difference algorithm to use, or <code>null</code> for
+     *            the default one.
+     * @param options
+     *            the deadline and cancellation flag to check while the diff
+     *            is computed, or <code>null</code> if there are no limits.
+     * @return a Revision describing the differences
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the diff was cancelled.
+     */
+    public static Revision diff(Object[] orig, Object[] rev,
+            DiffAlgorithm algorithm, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        if (orig == null || rev == null)
+        {
+            throw new IllegalArgumentException("orig or reve is null");
+        }
+
+        return new Diff(orig, algorithm).diff(rev, options);
+    }
+
     /**
      * Compute the difference between an original and a revision.
      * 
@@ -174,6 +456,184 @@ public class Diff extends ToString
         return Diff.diff(orig, rev, null);
     }
 
+    /**
+     * Counts the items inserted and deleted by a minimum diff between two
+     * sequences, without computing the diff itself.
+     * 
+     * @param orig
+     *            the original sequence.
+     * @param rev
+     *            the revised sequence.
+     * @return the counts.
+     * @see DiffStat
+     */
+    public static DiffStat stat(Object[] orig, Object[] rev)
+    {
+        try
+        {
+            return stat(orig, rev, null);
+        }
+        catch (DiffTimeoutException e)
+        {
+            // there are no limits without options
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Counts the items inserted and deleted by a minimum diff between two
+     * sequences, giving up if the given options say so.
+     * 
+     * @param orig
+     *            the original sequence.
+     * @param rev
+     *            the revised sequence.
+     * @param options
+     *            the deadline and cancellation flag to check while counting,
+     *            or <code>null</code> if there are no limits.
+     * @return the counts.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the count was cancelled.
+     * @see DiffStat
+     */
+    public static DiffStat stat(Object[] orig, Object[] rev,
+            DiffOptions options) throws DiffTimeoutException
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("orig is null");
+        if (rev == null)
+            throw new IllegalArgumentException("rev is null");
+
+        int prefix = 0;
+        int limit = Math.min(orig.length, rev.length);
+        while (prefix < limit && orig[prefix].equals(rev[prefix]))
+            prefix++;
+        int suffix = 0;
+        limit -= prefix;
+        while (suffix < limit
+                && orig[orig.length - 1 - suffix].equals(
+                        rev[rev.length - 1 - suffix]))
+            suffix++;
+
+        int m = orig.length - prefix - suffix;
+        int n = rev.length - prefix - suffix;
+        int lcs = 0;
+        if (m > 0 && n > 0)
+        {
+            // sequences this close don't even need to be interned
+            int d = MyersDiff.distance(orig, prefix, orig.length - suffix, rev,
+                    prefix, rev.length - suffix, STAT_NEAR_DISTANCE, options);
+            if (d >= 0)
+                return new DiffStat((n - m + d) / 2, (m - n + d) / 2,
+                        prefix + suffix + (m + n - d) / 2);
+
+            DiffContext context = DiffContext.acquire();
+            try
+            {
+                Tokens tokens = context.intern(window(orig, prefix, suffix),
+                        window(rev, prefix, suffix));
+
+                // similar sequences are counted faster by Myers' algorithm,
+                // so it is tried first, for a fraction of the steps the
+                // bit-parallel count would take
+                int max = (int) (Math.sqrt((double) m * n) / 32);
+                d = MyersDiff.distance(tokens.orig, 0, m, tokens.rev, 0, n,
+                        max, options);
+                if (d >= 0)
+                    return new DiffStat((n - m + d) / 2, (m - n + d) / 2,
+                            prefix + suffix + (m + n - d) / 2);
+
+                // the bit vector runs along the shorter sequence
+                if (m <= n)
+                    lcs = DiffStat.lcs(tokens.orig, m, tokens.rev, n,
+                            tokens.count, context, options);
+                else
+                    lcs = DiffStat.lcs(tokens.rev, n, tokens.orig, m,
+                            tokens.count, context, options);
+            }
+            finally
+            {
+                context.release();
+            }
+        }
+        return new DiffStat(n - lcs, m - lcs, prefix + suffix + lcs);
+    }
+
+    /**
+     * Tells if a minimum diff between two sequences inserts and deletes at
+     * most the given number of items.
+     * <p>
+     * This is much faster than computing the diff when the limit is small,
+     * because only the diagonals within the limit are explored, and the
+     * search stops as soon as the limit is exceeded.
+     * 
+     * @param orig
+     *            the original sequence.
+     * @param rev
+     *            the revised sequence.
+     * @param k
+     *            the largest number of inserted and deleted items allowed.
+     * @return true if the sequences are within the given edit distance.
+     * @see MyersDiff#distance
+     */
+    public static boolean withinDistance(Object[] orig, Object[] rev, int k)
+    {
+        try
+        {
+            return withinDistance(orig, rev, k, null);
+        }
+        catch (DiffTimeoutException e)
+        {
+            // there are no limits without options
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Tells if a minimum diff between two sequences inserts and deletes at
+     * most the given number of items, giving up if the given options say so.
+     * 
+     * @param orig
+     *            the original sequence.
+     * @param rev
+     *            the revised sequence.
+     * @param k
+     *            the largest number of inserted and deleted items allowed.
+     * @param options
+     *            the deadline and cancellation flag to check, or
+     *            <code>null</code> if there are no limits.
+     * @return true if the sequences are within the given edit distance.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the check was cancelled.
+     * @see #withinDistance(Object[], Object[], int)
+     */
+    public static boolean withinDistance(Object[] orig, Object[] rev, int k,
+            DiffOptions options) throws DiffTimeoutException
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("orig is null");
+        if (rev == null)
+            throw new IllegalArgumentException("rev is null");
+        if (k < 0)
+            throw new IllegalArgumentException("k < 0");
+        if (Math.abs(orig.length - rev.length) > k)
+            return false;
+
+        int prefix = 0;
+        int limit = Math.min(orig.length, rev.length);
+        while (prefix < limit && orig[prefix].equals(rev[prefix]))
+            prefix++;
+        int suffix = 0;
+        limit -= prefix;
+        while (suffix < limit
+                && orig[orig.length - 1 - suffix].equals(
+                        rev[rev.length - 1 - suffix]))
+            suffix++;
+
+        return MyersDiff.distance(orig, prefix, orig.length - suffix, rev,
+                prefix, rev.length - suffix, k, options) >= 0;
+    }
+
     /**
      * Compares the two input sequences.
      * 
@@ -40,4 +40,32 @@ public interface DiffAlgorithm
      */
     public abstract Revision diff(Object[] orig, Object[] rev)
             throws DifferentiationFailedException;
+
+    /**
+     * Computes the difference between the original sequence and the revised
+     * sequence, giving up if the given options say so.
+     * <p>
+     * The default implementation checks the options once, before calling
+     * {@link #diff(Object[], Object[])}, so algorithms that don't override
+     * it can't be stopped once they have started.
+     * 
+     * @param orig
+     *            the original text
+     * @param rev
+     *            the revised text
+     * @param options
+     *            the deadline and cancellation flag to check while the diff
+     *            is computed, or <code>null</code> if there are no limits.
+     * @return the revision script.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the diff was cancelled.
+     * @throws DifferentiationFailedException
+     *             if the diff could not be computed.
+     */
+    public default Revision diff(Object[] orig, Object[] rev,
+            DiffOptions options) throws DifferentiationFailedException
+    {
+        DiffOptions.check(options);
+        return diff(orig, rev);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+/**
+ * Holds the scratch buffers used by the differencing algorithms, so they can
+ * be reused from one diff to the next instead of allocated each time.
+ * <p>
+ * A context belongs to a single thread while it is in use. The algorithms
+ * {@link #acquire() acquire} the context of the current thread when they
+ * start, and {@link #release() release} it when they are done, so a thread
+ * that computes many diffs allocates the buffers only once. If the context of
+ * the thread is already in use, as when one algorithm calls another, a
+ * temporary one is handed out instead.
+ * <p>
+ * Buffers are grown as needed, but they are only kept after use while they
+ * take no more than {@link #RETAINED_BYTES} bytes together, so that one huge
+ * diff doesn't leave its memory tied to the thread. Threads of a pool that
+ * outlives the code using the algorithms, as in a container, should
+ * {@link #clear() clear} their context when done.
+ *
+ * @version $Revision$ $Date$
+ * @see Tokens
+ * @see Matches
+ */
+public class DiffContext
+{
+    /** The largest number of bytes of buffers kept between uses. */
+    public static final int RETAINED_BYTES = 256 << 10;
+
+    private static final ThreadLocal CONTEXTS = new ThreadLocal();
+
+    private boolean inUse = false;
+
+    private Object[] keys = new Object[0];
+    private int[] ids = new int[0];
+    private int[] origTokens = new int[0];
+    private int[] revTokens = new int[0];
+    private int[] vector = new int[0];
+    private int[] vector2 = new int[0];
+    private int[] trace = new int[0];
+    private long[] words = new long[0];
+    private char[] chars = new char[0];
+    private int[] offsets = new int[0];
+    private Matches matches = new Matches();
+
+    /**
+     * Creates an empty context. Most code should use {@link #acquire()}
+     * instead.
+     */
+    public DiffContext()
+    {
+    }
+
+    /**
+     * Returns the context of the current thread, or a temporary one if that
+     * is in use.
+     *
+     * @return a context that must be {@link #release() released} when done.
+     */
+    public static DiffContext acquire()
+    {
+        DiffContext context = (DiffContext) CONTEXTS.get();
+        if (context == null)
+        {
+            context = new DiffContext();
+            CONTEXTS.set(context);
+        }
+        if (context.inUse)
+            context = new DiffContext();
+        context.inUse = true;
+        return context;
+    }
+
+    /**
+     * Drops the context of the current thread, and the buffers it keeps. A
+     * new one is made the next time the thread needs it.
+     */
+    public static void clear()
+    {
+        CONTEXTS.remove();
+    }
+
+    /**
+     * Gives the context back, dropping all its buffers if together they
+     * take more than {@link #RETAINED_BYTES} bytes.
+     */
+    public void release()
+    {
+        if (getRetainedBytes() > RETAINED_BYTES)
+        {
+            keys = new Object[0];
+            ids = new int[0];
+            origTokens = new int[0];
+            revTokens = new int[0];
+            vector = new int[0];
+            vector2 = new int[0];
+            trace = new int[0];
+            words = new long[0];
+            chars = new char[0];
+            offsets = new int[0];
+            matches = new Matches();
+        }
+        inUse = false;
+    }
+
+    /**
+     * Returns an estimate of the memory taken by the buffers of this
+     * context, counting references as eight bytes.
+     *
+     * @return the number of bytes.
+     */
+    public long getRetainedBytes()
+    {
+        return 8L * keys.length + 4L * ids.length + 4L * origTokens.length
+                + 4L * revTokens.length + 4L * vector.length + 4L
+                * vector2.length + 4L * trace.length + 8L * words.length + 2L
+                * chars.length + 4L * offsets.length + 4L
+                * matches.capacity();
+    }
+
+    /**
+     * Translates the given sequences to tokens, using the buffers of this
+     * context.
+     * <p>
+     * The token arrays may be longer than the sequences, and are only valid
+     * until the context is released.
+     *
+     * @param orig
+     *            the original sequence.
+     * @param rev
+     *            the revised sequence.
+     * @return the token sequences.
+     * @see Tokens#intern(Object[], Object[])
+     */
+    public Tokens intern(Object[] orig, Object[] rev)
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("original sequence is null");
+        if (rev == null)
+            throw new IllegalArgumentException("revised sequence is null");
+
+        int capacity = Tokens.capacity((long) orig.length + rev.length);
+        if (keys.length < capacity)
+        {
+            keys = new Object[capacity];
+            ids = new int[capacity];
+        }
+        if (origTokens.length < orig.length)
+            origTokens = new int[grow(origTokens.length, orig.length)];
+        if (revTokens.length < rev.length)
+            revTokens = new int[grow(revTokens.length, rev.length)];
+        return Tokens.intern(orig, rev, keys, ids, origTokens, revTokens);
+    }
+
+    /**
+     * Returns a buffer with room for at least the given number of entries.
+     * Its contents are undefined.
+     *
+     * @param size
+     *            the number of entries needed.
+     * @return the buffer.
+     */
+    public int[] vector(int size)
+    {
+        if (vector.length < size)
+            vector = new int[grow(vector.length, size)];
+        return vector;
+    }
+
+    /**
+     * Returns a second buffer with room for at least the given number of
+     * entries. Its contents are undefined.
+     *
+     * @param size
+     *            the number of entries needed.
+     * @return the buffer.
+     */
+    public int[] vector2(int size)
+    {
+        if (vector2.length < size)
+            vector2 = new int[grow(vector2.length, size)];
+        return vector2;
+    }
+
+    /**
+     * Returns a buffer of bit vector words with room for at least the given
+     * number of entries. Its contents are undefined.
+     *
+     * @param size
+     *            the number of entries needed.
+     * @return the buffer.
+     */
+    public long[] words(int size)
+    {
+        if (words.length < size)
+            words = new long[grow(words.length, size)];
+        return words;
+    }
+
+    /**
+     * Returns a buffer of characters with room for at least the given number
+     * of entries. Its contents are undefined.
+     *
+     * @param size
+     *            the number of entries needed.
+     * @return the buffer.
+     */
+    public char[] chars(int size)
+    {
+        if (chars.length < size)
+            chars = new char[grow(chars.length, size)];
+        return chars;
+    }
+
+    /**
+     * Returns a buffer for positions in the {@link #chars(int) characters}
+     * buffer, with room for at least the given number of entries. Its
+     * contents are undefined.
+     *
+     * @param size
+     *            the number of entries needed.
+     * @return the buffer.
+     */
+    public int[] offsets(int size)
+    {
+        if (offsets.length < size)
+            offsets = new int[grow(offsets.length, size)];
+        return offsets;
+    }
+
+    /**
+     * Returns the buffer for the original sequence of tokens, which is the
+     * one {@link #intern(Object[], Object[]) intern()} fills, with room for
+     * at least the given number of entries. Its contents are undefined.
+     *
+     * @param size
+     *            the number of entries needed.
+     * @return the buffer.
+     */
+    public int[] origTokens(int size)
+    {
+        if (origTokens.length < size)
+            origTokens = new int[grow(origTokens.length, size)];
+        return origTokens;
+    }
+
+    /**
+     * Returns the buffer for the revised sequence of tokens, which is the
+     * one {@link #intern(Object[], Object[]) intern()} fills, with room for
+     * at least the given number of entries. Its contents are undefined.
+     *
+     * @param size
+     *            the number of entries needed.
+     * @return the buffer.
+     */
+    public int[] revTokens(int size)
+    {
+        if (revTokens.length < size)
+            revTokens = new int[grow(revTokens.length, size)];
+        return revTokens;
+    }
+
+    /**
+     * Returns the trace buffer, grown if needed to hold at least the given
+     * number of entries, and keeping its contents.
+     *
+     * @param size
+     *            the number of entries needed.
+     * @return the buffer.
+     */
+    public int[] trace(int size)
+    {
+        if (trace.length < size)
+        {
+            int[] grown = new int[grow(trace.length, size)];
+            System.arraycopy(trace, 0, grown, 0, trace.length);
+            trace = grown;
+        }
+        return trace;
+    }
+
+    /**
+     * Returns an empty list of matches.
+     *
+     * @return the list, which is only valid until the context is released.
+     */
+    public Matches matches()
+    {
+        matches.clear();
+        return matches;
+    }
+
+    /**
+     * Computes the new size of a buffer, at least doubling it so that
+     * growing it step by step takes linear time.
+     */
+    private static int grow(int length, int size)
+    {
+        return Math.max(size, Math.min(2 * length, Integer.MAX_VALUE / 2));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+/**
+ * Receives a report of every diff computed through {@link Diff}, so that the
+ * algorithms chosen and the time they took can be monitored.
+ * <p>
+ * Reports are made from the threads that compute the diffs, so
+ * implementations must be thread-safe, and should be quick.
+ *
+ * @version $Revision$ $Date$
+ * @see Diff#setMetrics(DiffMetrics)
+ * @see AlgorithmSelector
+ */
+public interface DiffMetrics
+{
+    /**
+     * Reports a diff.
+     *
+     * @param algorithm
+     *            the algorithm that computed it.
+     * @param selected
+     *            <code>true</code> if the algorithm was chosen by
+     *            {@link Diff}, or <code>false</code> if it was given.
+     * @param origSize
+     *            the number of items of the original sequence given to the
+     *            algorithm, which excludes the common prefix and suffix when
+     *            they were trimmed.
+     * @param revSize
+     *            the number of items of the revised sequence given to the
+     *            algorithm.
+     * @param nanos
+     *            the time the algorithm took, in nanoseconds.
+     * @param revision
+     *            the result, or <code>null</code> if the algorithm failed or
+     *            gave up.
+     */
+    public void diffed(DiffAlgorithm algorithm, boolean selected,
+            int origSize, int revSize, long nanos, Revision revision);
+}
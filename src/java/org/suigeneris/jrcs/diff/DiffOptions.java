@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+/**
+ * Limits the time a differencing or patching operation may take.
+ * <p>
+ * The options carry a deadline, and a flag that can be raised from any thread
+ * to cancel the operation. The algorithms {@link #check() check} them
+ * periodically, and give up with a {@link DiffTimeoutException} when the
+ * deadline has passed or the operation was cancelled.
+ * <p>
+ * Subclasses can override {@link #isCancelled()} to add their own
+ * conditions, like the client of a request having gone away.
+ *
+ * @version $Revision$ $Date$
+ * @see DiffAlgorithm#diff(Object[], Object[], DiffOptions)
+ * @see Revision#patch(Object[], DiffOptions)
+ */
+public class DiffOptions
+{
+    /** The value of the deadline when there is none. */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private long deadline = NO_DEADLINE;
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * Creates options without a deadline.
+     */
+    public DiffOptions()
+    {
+    }
+
+    /**
+     * Creates options with a deadline the given number of milliseconds from
+     * now.
+     *
+     * @param timeout
+     *            the time allowed, in milliseconds.
+     */
+    public DiffOptions(long timeout)
+    {
+        setTimeout(timeout);
+    }
+
+    /**
+     * Returns the deadline.
+     *
+     * @return the deadline, in milliseconds since the epoch, or
+     *         {@link #NO_DEADLINE} if there is none.
+     */
+    public long getDeadline()
+    {
+        return deadline;
+    }
+
+    /**
+     * Sets the deadline.
+     *
+     * @param deadline
+     *            the deadline, in milliseconds since the epoch, as returned by
+     *            {@link System#currentTimeMillis()}.
+     */
+    public void setDeadline(long deadline)
+    {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Sets the deadline the given number of milliseconds from now.
+     *
+     * @param timeout
+     *            the time allowed, in milliseconds.
+     */
+    public void setTimeout(long timeout)
+    {
+        if (timeout < 0)
+            throw new IllegalArgumentException("timeout < 0");
+        long now = System.currentTimeMillis();
+        deadline = (timeout > NO_DEADLINE - now ? NO_DEADLINE : now + timeout);
+    }
+
+    /**
+     * Cancels the operations that use these options. May be called from any
+     * thread.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Tells if the operations that use these options were cancelled.
+     *
+     * @return true if {@link #cancel()} was called.
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Checks that the operation may go on.
+     *
+     * @throws DiffTimeoutException
+     *             if the operation was cancelled, or the deadline has passed.
+     */
+    public void check() throws DiffTimeoutException
+    {
+        if (isCancelled())
+            throw new DiffTimeoutException("cancelled");
+        if (deadline != NO_DEADLINE && System.currentTimeMillis() > deadline)
+            throw new DiffTimeoutException("deadline exceeded");
+    }
+
+    /**
+     * Checks that an operation with the given options may go on.
+     *
+     * @param options
+     *            the options, or <code>null</code> if there are no limits.
+     * @throws DiffTimeoutException
+     *             if the operation was cancelled, or the deadline has passed.
+     */
+    public static void check(DiffOptions options) throws DiffTimeoutException
+    {
+        if (options != null)
+            options.check();
+    }
+}
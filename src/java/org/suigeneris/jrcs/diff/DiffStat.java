@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.util.Arrays;
+
+/**
+ * The number of items inserted, deleted, and kept between two sequences, as
+ * computed by {@link Diff#stat(Object[], Object[]) Diff.stat()}.
+ * <p>
+ * The counts are those of a minimum diff, which keeps the longest common
+ * subsequence. They are computed with the bit-parallel algorithm of Allison
+ * and Dix, as improved by Hyyr, which processes 64 items of one sequence at
+ * a time and doesn't build any deltas. Sequences that turn out to be close are
+ * counted with {@link org.suigeneris.jrcs.diff.myers.MyersDiff#distance
+ * MyersDiff.distance()} instead, which is faster for them.
+ *
+ * @version $Revision$ $Date$
+ * @see Diff#stat(Object[], Object[])
+ */
+public class DiffStat
+{
+    /** How many rows are processed between checks of the options. */
+    static final int CHECK_INTERVAL = 256;
+
+    private final int inserted;
+
+    private final int deleted;
+
+    private final int common;
+
+    /**
+     * Creates a set of counts.
+     *
+     * @param inserted
+     *            the number of items only in the revised sequence.
+     * @param deleted
+     *            the number of items only in the original sequence.
+     * @param common
+     *            the length of the longest common subsequence.
+     */
+    public DiffStat(int inserted, int deleted, int common)
+    {
+        this.inserted = inserted;
+        this.deleted = deleted;
+        this.common = common;
+    }
+
+    /**
+     * Returns the number of items only in the revised sequence.
+     *
+     * @return the number of inserted items.
+     */
+    public int getInserted()
+    {
+        return inserted;
+    }
+
+    /**
+     * Returns the number of items only in the original sequence.
+     *
+     * @return the number of deleted items.
+     */
+    public int getDeleted()
+    {
+        return deleted;
+    }
+
+    /**
+     * Returns the number of items in both sequences, which is the length of
+     * their longest common subsequence.
+     *
+     * @return the number of common items.
+     */
+    public int getCommon()
+    {
+        return common;
+    }
+
+    /**
+     * Returns the edit distance between the sequences, counting only
+     * insertions and deletions.
+     *
+     * @return the number of inserted and deleted items.
+     */
+    public int getDistance()
+    {
+        return inserted + deleted;
+    }
+
+    public String toString()
+    {
+        return "+" + inserted + " -" + deleted + " =" + common;
+    }
+
+    /**
+     * Computes the length of the longest common subsequence of two token
+     * sequences.
+     * <p>
+     * The bit vector <code>V</code> has a bit for each position of
+     * <code>a</code>, and each token of <code>b</code> updates it with
+     * <code>V = (V + (V &amp; M)) | (V &amp; ~M)</code>, where <code>M</code>
+     * has the bits of the positions that hold the token. The length is the
+     * number of bits of <code>V</code> cleared at the end.
+     * <p>
+     * The masks of the tokens that occur more times in <code>a</code> than
+     * the vector has words are precomputed, which takes at most as many words
+     * as <code>a</code> has tokens. The masks of the others are set and
+     * cleared for each row. Only the words from the first occurrence of the
+     * token, up to where the carry stops, are updated.
+     *
+     * @param a
+     *            the tokens of the shorter sequence.
+     * @param m
+     *            the number of tokens in <code>a</code>.
+     * @param b
+     *            the tokens of the longer sequence.
+     * @param n
+     *            the number of tokens in <code>b</code>.
+     * @param count
+     *            the number of distinct tokens.
+     * @return the length of the longest common subsequence.
+     */
+    static int lcs(int[] a, int m, int[] b, int n, int count,
+            DiffContext context, DiffOptions options)
+            throws DiffTimeoutException
+    {
+        if (m == 0 || n == 0)
+            return 0;
+        final int words = (m + 63) >>> 6;
+
+        // start[t] .. start[t + 1] are the positions of token t in a, in
+        // order; dense[t] is the offset of its mask, or -1
+        int[] ints = context.vector(2 * count + 1 + m);
+        final int start = 0;
+        final int dense = count + 1;
+        final int positions = 2 * count + 1;
+        Arrays.fill(ints, start, start + count + 1, 0);
+        for (int i = 0; i < m; i++)
+            ints[start + a[i] + 1]++;
+        for (int t = 0; t < count; t++)
+            ints[start + t + 1] += ints[start + t];
+        for (int t = 0; t < count; t++)
+            ints[dense + t] = ints[start + t];
+        for (int i = 0; i < m; i++)
+            ints[positions + ints[dense + a[i]]++] = i;
+
+        int masks = 2 * words;
+        for (int t = 0; t < count; t++)
+        {
+            if (ints[start + t + 1] - ints[start + t] > words)
+            {
+                ints[dense + t] = masks;
+                masks += words;
+            }
+            else
+                ints[dense + t] = -1;
+        }
+
+        // V, the scratch mask, and the precomputed masks
+        long[] bits = context.words(masks);
+        final int scratch = words;
+        Arrays.fill(bits, 0, words, -1L);
+        Arrays.fill(bits, words, masks, 0L);
+        for (int t = 0; t < count; t++)
+        {
+            int mask = ints[dense + t];
+            if (mask >= 0)
+            {
+                for (int p = ints[start + t]; p < ints[start + t + 1]; p++)
+                {
+                    int i = ints[positions + p];
+                    bits[mask + (i >>> 6)] |= 1L << i;
+                }
+            }
+        }
+
+        // the words above top are all ones, and absorb any carry
+        int top = -1;
+        for (int j = 0; j < n; j++)
+        {
+            if (j % CHECK_INTERVAL == 0)
+                DiffOptions.check(options);
+
+            int t = b[j];
+            int first = ints[start + t];
+            int last = ints[start + t + 1];
+            if (first == last)
+                continue;
+
+            int mask = ints[dense + t];
+            if (mask < 0)
+            {
+                mask = scratch;
+                for (int p = first; p < last; p++)
+                {
+                    int i = ints[positions + p];
+                    bits[mask + (i >>> 6)] |= 1L << i;
+                }
+            }
+
+            int lo = ints[positions + first] >>> 6;
+            int hi = ints[positions + last - 1] >>> 6;
+            long carry = 0;
+            int w = lo;
+            for (; w <= hi; w++)
+            {
+                long v = bits[w];
+                long u = v & bits[mask + w];
+                long sum = v + u + carry;
+                carry = ((v & u) | ((v | u) & ~sum)) >>> 63;
+                bits[w] = sum | (v & ~bits[mask + w]);
+            }
+            if (hi > top)
+                top = hi;
+            for (; carry != 0 && w <= top; w++)
+            {
+                long v = bits[w];
+                long sum = v + 1;
+                carry = (sum == 0 ? 1 : 0);
+                bits[w] = sum | v;
+            }
+
+            if (mask == scratch)
+            {
+                for (int p = first; p < last; p++)
+                    bits[scratch + (ints[positions + p] >>> 6)] = 0;
+            }
+        }
+
+        // the bits past the end of a are never cleared
+        int lcs = 0;
+        for (int w = 0; w < words; w++)
+            lcs += 64 - Long.bitCount(bits[w]);
+        return lcs;
+    }
+}
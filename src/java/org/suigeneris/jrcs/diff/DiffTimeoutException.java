@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+/**
+ * Thrown when a differencing or patching operation is given up because its
+ * deadline passed, or because it was cancelled.
+ *
+ * @version $Revision$ $Date$
+ * @see DiffOptions
+ */
+public class DiffTimeoutException extends DifferentiationFailedException
+{
+
+    public DiffTimeoutException()
+    {
+    }
+
+    public DiffTimeoutException(String msg)
+    {
+        super(msg);
+    }
+}
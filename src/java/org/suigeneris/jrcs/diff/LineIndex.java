@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Indexes the lines of a file mapped into memory, so it can be differenced
+ * without loading its text on the heap.
+ * <p>
+ * The file is mapped with {@link FileChannel#map FileChannel.map()}, and
+ * scanned once to record where each line starts and to compute a 64-bit hash
+ * of its bytes. Lines end with <code>\n</code> or <code>\r\n</code>, and the
+ * line terminators are not part of the lines.
+ * <p>
+ * The {@link #lines()} of an index are small views that can be given to any
+ * {@link DiffAlgorithm}. They compare by hash first, and then byte by byte,
+ * and are decoded to text only when {@link Line#toString() printed}, which is
+ * usually only done for the lines in the deltas.
+ * <p>
+ * Files larger than 2GB are mapped in several segments.
+ *
+ * @version $Revision$ $Date$
+ * @see Diff
+ */
+public class LineIndex
+{
+    /** The size of the segments in which files are mapped. */
+    static final int SEGMENT_BITS = 30;
+
+    static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    private final MappedByteBuffer[] segments;
+
+    private final Charset charset;
+
+    /** The start of each line. */
+    private long[] starts;
+
+    /** The length of each line, without its terminator. */
+    private int[] lengths;
+
+    private long[] hashes;
+
+    private int size;
+
+    private Line[] lines;
+
+    /**
+     * Maps a file and indexes its lines, which will be decoded with the
+     * default charset.
+     *
+     * @param file
+     *            the file.
+     * @return the index.
+     * @throws IOException
+     *             if the file can't be read.
+     */
+    public static LineIndex map(File file) throws IOException
+    {
+        return map(file, Charset.defaultCharset());
+    }
+
+    /**
+     * Maps a file and indexes its lines.
+     *
+     * @param file
+     *            the file.
+     * @param charset
+     *            the charset used to decode the lines.
+     * @return the index.
+     * @throws IOException
+     *             if the file can't be read.
+     */
+    public static LineIndex map(File file, Charset charset) throws IOException
+    {
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            return new LineIndex(in.getChannel(), charset);
+        }
+        finally
+        {
+            // the mapping stays valid after the channel is closed
+            in.close();
+        }
+    }
+
+    /**
+     * Maps the contents of a channel and indexes its lines.
+     *
+     * @param channel
+     *            the channel, which must be readable.
+     * @param charset
+     *            the charset used to decode the lines.
+     * @throws IOException
+     *             if the channel can't be mapped.
+     */
+    public LineIndex(FileChannel channel, Charset charset) throws IOException
+    {
+        if (charset == null)
+            throw new IllegalArgumentException("charset is null");
+        this.charset = charset;
+
+        long length = channel.size();
+        int count = (int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS);
+        segments = new MappedByteBuffer[count];
+        for (int s = 0; s < count; s++)
+        {
+            long position = (long) s << SEGMENT_BITS;
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    position, Math.min(length - position, SEGMENT_MASK + 1));
+        }
+        scan(length);
+    }
+
+    /**
+     * Finds the lines, and computes their hashes.
+     */
+    private void scan(long length)
+    {
+        starts = new long[1024];
+        lengths = new int[1024];
+        hashes = new long[1024];
+        size = 0;
+
+        long start = 0;
+        long hash = FNV_OFFSET;
+        // the hash before the last byte, in case it is a carriage return
+        long previous = FNV_OFFSET;
+        byte last = 0;
+        for (int s = 0; s < segments.length; s++)
+        {
+            MappedByteBuffer segment = segments[s];
+            long base = (long) s << SEGMENT_BITS;
+            int limit = segment.limit();
+            for (int p = 0; p < limit; p++)
+            {
+                byte b = segment.get(p);
+                if (b == '\n')
+                {
+                    long end = base + p;
+                    if (last == '\r' && end > start)
+                        add(start, end - 1, previous);
+                    else
+                        add(start, end, hash);
+                    start = end + 1;
+                    hash = FNV_OFFSET;
+                    last = 0;
+                }
+                else
+                {
+                    previous = hash;
+                    hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+                    last = b;
+                }
+            }
+        }
+        if (start < length)
+        {
+            if (last == '\r')
+                add(start, length - 1, previous);
+            else
+                add(start, length, hash);
+        }
+    }
+
+    private void add(long start, long end, long hash)
+    {
+        if (end - start > Integer.MAX_VALUE)
+            throw new IllegalStateException("line too long");
+        if (size == starts.length)
+        {
+            long[] s = new long[2 * size];
+            int[] l = new int[2 * size];
+            long[] h = new long[2 * size];
+            System.arraycopy(starts, 0, s, 0, size);
+            System.arraycopy(lengths, 0, l, 0, size);
+            System.arraycopy(hashes, 0, h, 0, size);
+            starts = s;
+            lengths = l;
+            hashes = h;
+        }
+        starts[size] = start;
+        lengths[size] = (int) (end - start);
+        hashes[size] = hash;
+        size++;
+    }
+
+    private byte byteAt(long position)
+    {
+        return segments[(int) (position >>> SEGMENT_BITS)]
+                .get((int) (position & SEGMENT_MASK));
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return the number of lines.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the 64-bit hash of a line.
+     *
+     * @param line
+     *            the line number, starting at zero.
+     * @return the hash.
+     */
+    public long hash(int line)
+    {
+        if (line < 0 || line >= size)
+            throw new IndexOutOfBoundsException("line " + line);
+        return hashes[line];
+    }
+
+    /**
+     * Compares a line of this index to a line of another one, by hash and
+     * then byte by byte.
+     *
+     * @param line
+     *            the line of this index.
+     * @param other
+     *            the other index.
+     * @param otherLine
+     *            the line of the other index.
+     * @return true if the lines have the same bytes.
+     */
+    public boolean equals(int line, LineIndex other, int otherLine)
+    {
+        if (hashes[line] != other.hashes[otherLine])
+            return false;
+        int length = lengths[line];
+        if (length != other.lengths[otherLine])
+            return false;
+        long p = starts[line];
+        long q = other.starts[otherLine];
+        for (int i = 0; i < length; i++)
+        {
+            if (byteAt(p + i) != other.byteAt(q + i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a line.
+     *
+     * @param line
+     *            the line number, starting at zero.
+     * @return the text of the line.
+     */
+    public String getLine(int line)
+    {
+        if (line < 0 || line >= size)
+            throw new IndexOutOfBoundsException("line " + line);
+        byte[] bytes = new byte[lengths[line]];
+        long p = starts[line];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = byteAt(p + i);
+        return new String(bytes, charset);
+    }
+
+    /**
+     * Returns the lines of this index, as a sequence that can be given to the
+     * differencing algorithms.
+     *
+     * @return the lines.
+     */
+    public synchronized Object[] lines()
+    {
+        if (lines == null)
+        {
+            lines = new Line[size];
+            for (int i = 0; i < size; i++)
+                lines[i] = new Line(this, i);
+        }
+        return lines;
+    }
+
+    /**
+     * A view of a line of an index.
+     */
+    public static final class Line
+    {
+        private final LineIndex index;
+
+        private final int line;
+
+        Line(LineIndex index, int line)
+        {
+            this.index = index;
+            this.line = line;
+        }
+
+        /**
+         * Returns the index this line belongs to.
+         */
+        public LineIndex getIndex()
+        {
+            return index;
+        }
+
+        /**
+         * Returns the number of this line in its index.
+         */
+        public int getLine()
+        {
+            return line;
+        }
+
+        public int hashCode()
+        {
+            long hash = index.hashes[line];
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        public boolean equals(Object o)
+        {
+            if (o == this)
+                return true;
+            if (!(o instanceof Line))
+                return false;
+            Line other = (Line) o;
+            return index.equals(line, other.index, other.line);
+        }
+
+        /**
+         * Decodes the text of the line.
+         */
+        public String toString()
+        {
+            return index.getLine(line);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+/**
+ * Holds the runs of matching items found between two sequences, in order.
+ * <p>
+ * Differencing algorithms that work by finding what is common to both
+ * sequences can collect it here, and then build the {@link Revision} from the
+ * gaps between the runs.
+ *
+ * @version $Revision$ $Date$
+ * @see Revision
+ */
+public class Matches
+{
+    /** The runs, as (i, j, length) triplets. */
+    private int[] runs = new int[3 * 16];
+
+    private int size = 0;
+
+    /**
+     * Creates an empty list of matches.
+     */
+    public Matches()
+    {
+    }
+
+    /**
+     * Appends a run of matching items, joining it with the last one if they
+     * are contiguous.
+     *
+     * @param i
+     *            the start of the run in the original sequence.
+     * @param j
+     *            the start of the run in the revised sequence.
+     * @param length
+     *            the number of matching items.
+     */
+    public void add(int i, int j, int length)
+    {
+        if (length <= 0)
+            return;
+        if (size > 0)
+        {
+            int last = 3 * (size - 1);
+            if (runs[last] + runs[last + 2] == i
+                    && runs[last + 1] + runs[last + 2] == j)
+            {
+                runs[last + 2] += length;
+                return;
+            }
+            if (i < runs[last] + runs[last + 2]
+                    || j < runs[last + 1] + runs[last + 2])
+                throw new IllegalArgumentException("matches out of order");
+        }
+        if (3 * size == runs.length)
+        {
+            int[] grown = new int[2 * runs.length];
+            System.arraycopy(runs, 0, grown, 0, runs.length);
+            runs = grown;
+        }
+        runs[3 * size] = i;
+        runs[3 * size + 1] = j;
+        runs[3 * size + 2] = length;
+        size++;
+    }
+
+    /**
+     * Removes all the runs.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * Returns the number of runs.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the number of entries of the array that holds the runs.
+     */
+    int capacity()
+    {
+        return runs.length;
+    }
+
+    /**
+     * Returns the start of a run in the original sequence.
+     */
+    public int origStart(int run)
+    {
+        return runs[3 * run];
+    }
+
+    /**
+     * Returns the start of a run in the revised sequence.
+     */
+    public int revStart(int run)
+    {
+        return runs[3 * run + 1];
+    }
+
+    /**
+     * Returns the number of items in a run.
+     */
+    public int length(int run)
+    {
+        return runs[3 * run + 2];
+    }
+
+    /**
+     * Constructs a {@link CompactRevision} with one delta for each gap
+     * between the runs.
+     *
+     * @param orig
+     *            the original sequence.
+     * @param rev
+     *            the revised sequence.
+     * @return the revision.
+     */
+    public Revision toRevision(Object[] orig, Object[] rev)
+    {
+        CompactRevision revision = new CompactRevision(orig, rev);
+        int i = 0;
+        int j = 0;
+        for (int r = 0; r <= size; r++)
+        {
+            int ianchor = (r < size ? runs[3 * r] : orig.length);
+            int janchor = (r < size ? runs[3 * r + 1] : rev.length);
+            if (ianchor > i || janchor > j)
+                revision.addHunk(i, ianchor - i, j, janchor - j);
+            if (r < size)
+            {
+                i = ianchor + runs[3 * r + 2];
+                j = janchor + runs[3 * r + 2];
+            }
+        }
+        return revision;
+    }
+}
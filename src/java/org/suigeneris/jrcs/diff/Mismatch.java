@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Measures the runs of equal tokens in two token sequences, which is what the
+ * snakes of Myers' algorithm, and the trimming of common prefixes and
+ * suffixes, spend their time on.
+ * <p>
+ * Short runs are compared one token at a time. Longer ones are handed to the
+ * fastest implementation available, which is chosen once:
+ * <ul>
+ * <li><code>vector</code> compares several tokens per step with the
+ * <code>IntVector</code> class of the <code>jdk.incubator.vector</code>
+ * module. It is built only with a JDK that has the module, and used only when
+ * the module is enabled with <code>--add-modules jdk.incubator.vector</code>.
+ * </li>
+ * <li><code>arrays</code> uses <code>Arrays.mismatch()</code>, which the
+ * Java 9 and later virtual machines compile to vector instructions too.</li>
+ * <li><code>scalar</code> compares one token at a time, and is always
+ * available.</li>
+ * </ul>
+ * The <code>org.suigeneris.jrcs.diff.mismatch</code> system property can
+ * name the implementation to prefer.
+ *
+ * @version $Revision$ $Date$
+ * @see Tokens
+ */
+public final class Mismatch
+{
+    /** The length of the runs that are always compared token by token. */
+    static final int THRESHOLD = 16;
+
+    private static final Finder FINDER = load(System
+            .getProperty("org.suigeneris.jrcs.diff.mismatch"));
+
+    private Mismatch()
+    {
+    }
+
+    /**
+     * Counts the equal tokens at the start of <code>a[i..i+max)</code> and
+     * <code>b[j..j+max)</code>.
+     *
+     * @param a
+     *            the first sequence.
+     * @param i
+     *            the start of the run in the first sequence.
+     * @param b
+     *            the second sequence.
+     * @param j
+     *            the start of the run in the second sequence.
+     * @param max
+     *            the most tokens to compare; nothing is compared if it is not
+     *            positive.
+     * @return the number of equal tokens.
+     */
+    public static int forward(int[] a, int i, int[] b, int j, int max)
+    {
+        int n = 0;
+        int limit = Math.min(max, THRESHOLD);
+        while (n < limit && a[i + n] == b[j + n])
+            n++;
+        if (n < THRESHOLD || n == max)
+            return n;
+        return n + FINDER.forward(a, i + n, b, j + n, max - n);
+    }
+
+    /**
+     * Counts the equal items at the start of <code>a[i..i+max)</code> and
+     * <code>b[j..j+max)</code>, comparing them with
+     * {@link Object#equals equals()}.
+     *
+     * @return the number of equal items.
+     * @see #forward(int[], int, int[], int, int)
+     */
+    public static int forward(Object[] a, int i, Object[] b, int j, int max)
+    {
+        int n = 0;
+        while (n < max && a[i + n].equals(b[j + n]))
+            n++;
+        return n;
+    }
+
+    /**
+     * Counts the equal tokens at the end of <code>a[i-max..i)</code> and
+     * <code>b[j-max..j)</code>.
+     *
+     * @param a
+     *            the first sequence.
+     * @param i
+     *            the end of the run in the first sequence.
+     * @param b
+     *            the second sequence.
+     * @param j
+     *            the end of the run in the second sequence.
+     * @param max
+     *            the most tokens to compare; nothing is compared if it is not
+     *            positive.
+     * @return the number of equal tokens.
+     */
+    public static int backward(int[] a, int i, int[] b, int j, int max)
+    {
+        int n = 0;
+        int limit = Math.min(max, THRESHOLD);
+        while (n < limit && a[i - 1 - n] == b[j - 1 - n])
+            n++;
+        if (n < THRESHOLD || n == max)
+            return n;
+        return n + FINDER.backward(a, i - n, b, j - n, max - n);
+    }
+
+    /**
+     * Returns the name of the implementation in use.
+     *
+     * @return <code>vector</code>, <code>arrays</code>, or
+     *         <code>scalar</code>.
+     */
+    public static String getImplementation()
+    {
+        return FINDER.getName();
+    }
+
+    /**
+     * Chooses the implementation, preferring the given one.
+     */
+    static Finder load(String name)
+    {
+        Finder finder = null;
+        if (name == null || name.equals("vector"))
+            finder = probe("org.suigeneris.jrcs.diff.VectorFinder");
+        if (finder == null && (name == null || !name.equals("scalar")))
+            finder = probe("org.suigeneris.jrcs.diff.Mismatch$ArraysFinder");
+        if (finder == null)
+            finder = new Finder();
+        return finder;
+    }
+
+    /**
+     * Instantiates an implementation and tries it, so that a missing module
+     * or method is found now rather than in the middle of a diff.
+     */
+    static Finder probe(String className)
+    {
+        try
+        {
+            Finder finder = (Finder) Class.forName(className)
+                    .getDeclaredConstructor().newInstance();
+            int[] a = new int[4 * THRESHOLD];
+            int n = a.length;
+            if (finder.forward(a, 0, a, 0, n) != n
+                    || finder.backward(a, n, a, n, n) != n)
+                return null;
+            return finder;
+        }
+        catch (Throwable e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Compares runs of tokens. This implementation compares them one at a
+     * time.
+     */
+    static class Finder
+    {
+        String getName()
+        {
+            return "scalar";
+        }
+
+        int forward(int[] a, int i, int[] b, int j, int max)
+        {
+            int n = 0;
+            while (n < max && a[i + n] == b[j + n])
+                n++;
+            return n;
+        }
+
+        int backward(int[] a, int i, int[] b, int j, int max)
+        {
+            int n = 0;
+            while (n < max && a[i - 1 - n] == b[j - 1 - n])
+                n++;
+            return n;
+        }
+    }
+
+    /**
+     * Compares runs of tokens with <code>Arrays.mismatch()</code>, which is
+     * looked up at run time because it doesn't exist before Java 9.
+     */
+    static final class ArraysFinder extends Finder
+    {
+        /** The size of the blocks in which runs are compared backwards. */
+        static final int BLOCK = 64;
+
+        private static final MethodHandle MISMATCH;
+
+        static
+        {
+            try
+            {
+                MISMATCH = MethodHandles.publicLookup().findStatic(
+                        java.util.Arrays.class,
+                        "mismatch",
+                        MethodType.methodType(int.class, new Class[] {
+                                int[].class, int.class, int.class,
+                                int[].class, int.class, int.class }));
+            }
+            catch (Exception e)
+            {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        String getName()
+        {
+            return "arrays";
+        }
+
+        static int mismatch(int[] a, int i, int[] b, int j, int length)
+        {
+            try
+            {
+                return (int) MISMATCH.invokeExact(a, i, i + length, b, j, j
+                        + length);
+            }
+            catch (RuntimeException e)
+            {
+                throw e;
+            }
+            catch (Throwable e)
+            {
+                throw new IllegalStateException(e.toString());
+            }
+        }
+
+        int forward(int[] a, int i, int[] b, int j, int max)
+        {
+            int n = mismatch(a, i, b, j, max);
+            return (n < 0 ? max : n);
+        }
+
+        int backward(int[] a, int i, int[] b, int j, int max)
+        {
+            // find the block with the last mismatch, and then the mismatch
+            int n = 0;
+            while (n < max)
+            {
+                int length = Math.min(BLOCK, max - n);
+                int at = i - n - length;
+                if (mismatch(a, at, b, j - n - length, length) >= 0)
+                    return n + super.backward(a, i - n, b, j - n, length);
+                n += length;
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.util.ListIterator;
+
+import org.suigeneris.jrcs.diff.delta.Chunk;
+import org.suigeneris.jrcs.diff.delta.Delta;
+
+/**
+ * Rewrites a revision into a canonical form, with the same effect but
+ * fewer and better placed deltas.
+ * <p>
+ * <b>Overview of Algorithm</b>
+ * </p>
+ * <p>
+ * First, each delta that only deletes or only inserts lines is slid, when
+ * the lines around it allow, to the position that best follows the structure
+ * of the text: the one where the block of lines ends with a blank line, or
+ * else the one where it starts after a blank line, or else the lowest one.
+ * This is the blank line part of the heuristics of <code>git diff</code>,
+ * which also weigh the indentation of the lines.
+ * </p>
+ * <p>
+ * Then, deltas separated by no more than a given number of unchanged lines
+ * are merged into one, which replaces the unchanged lines with themselves.
+ * Deltas that are next to each other are always merged.
+ * </p>
+ * <p>
+ * The result is a {@link CompactRevision} of the given sequences.
+ * </p>
+ *
+ * @version $Revision$ $Date$
+ * @see Revision
+ */
+public class Normalizer
+{
+    private final int gap;
+
+    /**
+     * Constructs a normalizer that only merges deltas that are next to each
+     * other.
+     */
+    public Normalizer()
+    {
+        this(0);
+    }
+
+    /**
+     * Constructs a normalizer.
+     *
+     * @param gap
+     *            the largest number of unchanged lines between two deltas
+     *            that are merged.
+     */
+    public Normalizer(int gap)
+    {
+        if (gap < 0)
+            throw new IllegalArgumentException("gap < 0");
+        this.gap = gap;
+    }
+
+    /**
+     * Normalizes a revision.
+     *
+     * @param revision
+     *            the revision from <code>orig</code> to <code>rev</code>.
+     * @param orig
+     *            the original sequence.
+     * @param rev
+     *            the revised sequence.
+     * @return the normalized revision.
+     * @throws IllegalArgumentException
+     *             if the deltas are out of order or beyond the sequences.
+     */
+    public Revision normalize(Revision revision, Object[] orig, Object[] rev)
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("original sequence is null");
+        if (rev == null)
+            throw new IllegalArgumentException("revised sequence is null");
+
+        // the deltas, as (i, n, j, m) tuples
+        int[] hunks = new int[4 * revision.size()];
+        int k = 0;
+        int shift = 0;
+        int end = 0;
+        ListIterator d = revision.listIterator(0);
+        while (d.hasNext())
+        {
+            Delta delta = (Delta) d.next();
+            Chunk original = delta.getOriginal();
+            Chunk revised = delta.getRevised();
+            int i = original.first();
+            int n = original.size();
+            int m = (revised == null ? 0 : revised.size());
+            if (i < end)
+                throw new IllegalArgumentException("deltas out of order");
+            if (i + n > orig.length || i + shift + m > rev.length)
+                throw new IllegalArgumentException(
+                        "delta beyond the sequences");
+            hunks[k++] = i;
+            hunks[k++] = n;
+            hunks[k++] = i + shift;
+            hunks[k++] = m;
+            end = i + n;
+            shift += m - n;
+        }
+
+        for (int h = 0; h < k; h += 4)
+            slide(hunks, h, k, orig, rev);
+
+        CompactRevision result = new CompactRevision(orig, rev);
+        result.setApproximate(revision.isApproximate());
+        int h = 0;
+        while (h < k)
+        {
+            int i0 = hunks[h];
+            int j0 = hunks[h + 2];
+            int i1 = i0 + hunks[h + 1];
+            int j1 = j0 + hunks[h + 3];
+            for (h += 4; h < k && hunks[h] - i1 <= gap; h += 4)
+            {
+                i1 = hunks[h] + hunks[h + 1];
+                j1 = hunks[h + 2] + hunks[h + 3];
+            }
+            result.addHunk(i0, i1 - i0, j0, j1 - j0);
+        }
+        return result;
+    }
+
+    /**
+     * Slides a delta that only deletes or only inserts lines within the
+     * unchanged lines around it.
+     */
+    private static void slide(int[] hunks, int h, int k, Object[] orig,
+            Object[] rev)
+    {
+        int i = hunks[h];
+        int n = hunks[h + 1];
+        int j = hunks[h + 2];
+        int m = hunks[h + 3];
+        if (n > 0 && m > 0)
+            return;
+
+        // the unchanged lines before and after the delta
+        int before = (h == 0 ? Math.min(i, j) : i - hunks[h - 4]
+                - hunks[h - 3]);
+        int after = (h + 4 < k ? hunks[h + 4] - i - n : Math.min(orig.length
+                - i - n, rev.length - j - m));
+
+        Object[] seq = (n > 0 ? orig : rev);
+        int s = (n > 0 ? i : j);
+        int length = n + m;
+        int up = 0;
+        while (up < before && seq[s - up - 1].equals(seq[s - up + length - 1]))
+            up++;
+        int down = 0;
+        while (down < after && seq[s + down].equals(seq[s + down + length]))
+            down++;
+
+        int best = down;
+        int score = score(seq, s + down, length);
+        for (int t = down - 1; t >= -up; t--)
+        {
+            int c = score(seq, s + t, length);
+            if (c > score)
+            {
+                best = t;
+                score = c;
+            }
+        }
+        hunks[h] += best;
+        hunks[h + 2] += best;
+    }
+
+    /**
+     * Scores a position of a block of lines: 2 if it ends with a blank line,
+     * 1 if it starts after one, or at the start of the text, and 0 otherwise.
+     */
+    private static int score(Object[] seq, int start, int length)
+    {
+        if (isBlank(seq[start + length - 1]))
+            return 2;
+        if (start == 0 || isBlank(seq[start - 1]))
+            return 1;
+        return 0;
+    }
+
+    private static boolean isBlank(Object line)
+    {
+        return line.toString().trim().length() == 0;
+    }
+}
@@ -17,12 +17,16 @@ package org.suigeneris.jrcs.diff;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 
+import org.suigeneris.jrcs.diff.delta.AddDelta;
+import org.suigeneris.jrcs.diff.delta.ChangeDelta;
 import org.suigeneris.jrcs.diff.delta.Chunk;
+import org.suigeneris.jrcs.diff.delta.DeleteDelta;
 import org.suigeneris.jrcs.diff.delta.Delta;
 import org.suigeneris.jrcs.util.ToString;
 
@@ -45,11 +49,13 @@ import org.suigeneris.jrcs.util.ToString;
  * Added visitor pattern Visitor interface and accept() method.
  */
 
-public class Revision extends ToString
+public class Revision extends ToString implements DeltaSink
 {
 
     private List deltas_ = new LinkedList();
 
+    private boolean approximate_ = false;
+
     /**
      * Creates an empty Revision.
      */
@@ -109,6 +115,71 @@ public class Revision extends ToString
         return deltas_.size();
     }
 
+    /**
+     * Returns an iterator over the deltas in this revision, starting at the
+     * given position. Going through the deltas this way doesn't take the
+     * time {@link #getDelta(int)} may take for each, but the revision must
+     * not be changed while the iterator is in use.
+     * 
+     * @param i
+     *            the position of the first delta returned by
+     *            <code>next()</code>, or of the one after the first delta
+     *            returned by <code>previous()</code>.
+     * @return an iterator that can't change the revision.
+     */
+    public ListIterator listIterator(int i)
+    {
+        return Collections.unmodifiableList(deltas_).listIterator(i);
+    }
+
+    /**
+     * Tells if this revision may not be a minimum one, because the algorithm
+     * that computed it gave up searching for the shortest path and took a
+     * heuristic one.
+     * <p>
+     * Approximate revisions are still valid: patching the original sequence
+     * with them produces the revised one.
+     * 
+     * @return true if this revision may have more deltas, or larger ones,
+     *         than necessary.
+     */
+    public boolean isApproximate()
+    {
+        return approximate_;
+    }
+
+    /**
+     * Flags this revision as possibly not a minimum one.
+     * 
+     * @param approximate
+     *            true if the revision may not be a minimum one.
+     * @see #isApproximate()
+     */
+    public void setApproximate(boolean approximate)
+    {
+        approximate_ = approximate;
+    }
+
+    /**
+     * Displaces all the deltas in this revision by the given number of
+     * positions in both the original and the revised texts.
+     * 
+     * @param offset
+     *            the number of positions to displace.
+     */
+    synchronized void shift(int offset)
+    {
+        Iterator i = deltas_.iterator();
+        while (i.hasNext())
+        {
+            Delta delta = (Delta) i.next();
+            if (delta.getOriginal() != null)
+                delta.getOriginal().shift(offset);
+            if (delta.getRevised() != null)
+                delta.getRevised().shift(offset);
+        }
+    }
+
     /**
      * Applies the series of deltas in this revision as patches to the given
      * text.
@@ -121,8 +192,40 @@ public class Revision extends ToString
      */
     public Object[] patch(Object[] src) throws PatchFailedException
     {
+        try
+        {
+            return patch(src, null);
+        }
+        catch (DiffTimeoutException e)
+        {
+            // there are no limits without options
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the series of deltas in this revision as patches to the given
+     * text, giving up if the given options say so.
+     * 
+     * @param src
+     *            the text to patch, which the method doesn't change.
+     * @param options
+     *            the deadline and cancellation flag to check between deltas,
+     *            or <code>null</code> if there are no limits.
+     * @return the resulting text after the patches have been applied.
+     * @throws PatchFailedException
+     *             if any of the patches cannot be applied.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the patch was cancelled.
+     */
+    public Object[] patch(Object[] src, DiffOptions options)
+            throws PatchFailedException, DiffTimeoutException
+    {
+        Object[] result = merge(src, options);
+        if (result != null)
+            return result;
         List target = new ArrayList(Arrays.asList(src));
-        applyTo(target);
+        applyEach(target, options);
         return target.toArray();
     }
 
@@ -135,16 +238,184 @@ public class Revision extends ToString
      * @throws PatchFailedException
      *             if any of the patches cannot be applied.
      */
-    public synchronized void applyTo(List target) throws PatchFailedException
+    public void applyTo(List target) throws PatchFailedException
+    {
+        try
+        {
+            applyTo(target, null);
+        }
+        catch (DiffTimeoutException e)
+        {
+            // there are no limits without options
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the series of deltas in this revision as patches to the given
+     * text, giving up if the given options say so.
+     * <p>
+     * The text is left unchanged if a patch cannot be applied, unless the
+     * deltas are out of order, or of classes other than those in the
+     * {@link org.suigeneris.jrcs.diff.delta delta} package, in which case
+     * they are applied one at a time, from the last one.
+     * 
+     * @param target
+     *            the text to patch.
+     * @param options
+     *            the deadline and cancellation flag to check between deltas,
+     *            or <code>null</code> if there are no limits.
+     * @throws PatchFailedException
+     *             if any of the patches cannot be applied.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the patch was cancelled.
+     */
+    public void applyTo(List target, DiffOptions options)
+            throws PatchFailedException, DiffTimeoutException
+    {
+        // lists may override toArray(), as Lines does
+        Object[] src = new Object[target.size()];
+        Iterator i = target.iterator();
+        for (int k = 0; k < src.length; k++)
+            src[k] = i.next();
+        Object[] result = merge(src, options);
+        if (result == null)
+        {
+            applyEach(target, options);
+            return;
+        }
+        target.clear();
+        target.addAll(Arrays.asList(result));
+    }
+
+    /**
+     * Applies the deltas in one forward pass over the text, copying the
+     * unchanged runs and the revised chunks into a new array of the final
+     * size, and verifying the original chunks on the way.
+     * 
+     * @param src
+     *            the text to patch, which the method doesn't change.
+     * @param options
+     *            the deadline and cancellation flag to check between deltas,
+     *            or <code>null</code> if there are no limits.
+     * @return the resulting text, or <code>null</code> if the deltas can't
+     *         be merged in one pass.
+     * @throws PatchFailedException
+     *             if any of the patches cannot be applied.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the patch was cancelled.
+     */
+    synchronized Object[] merge(Object[] src, DiffOptions options)
+            throws PatchFailedException, DiffTimeoutException
+    {
+        int length = src.length;
+        int end = 0;
+        Iterator i = deltas_.iterator();
+        while (i.hasNext())
+        {
+            Delta delta = (Delta) i.next();
+            if (!isMergeable(delta, end))
+                return null;
+            end = delta.getOriginal().first() + delta.getOriginal().size();
+            length += sizeOf(delta.getRevised()) - delta.getOriginal().size();
+        }
+        if (end > src.length)
+            throw new PatchFailedException("chunk beyond target.size()");
+
+        Object[] result = new Object[length];
+        int from = 0;
+        int to = 0;
+        i = deltas_.iterator();
+        while (i.hasNext())
+        {
+            DiffOptions.check(options);
+            Delta delta = (Delta) i.next();
+            int first = delta.getOriginal().first();
+            System.arraycopy(src, from, result, to, first - from);
+            to += first - from;
+            from = merge(delta, src, result, to);
+            to += sizeOf(delta.getRevised());
+        }
+        System.arraycopy(src, from, result, to, src.length - from);
+        return result;
+    }
+
+    /**
+     * Applies the deltas one at a time, from the last one, so that the
+     * positions of the ones not yet applied stay valid.
+     * 
+     * @param target
+     *            the text to patch.
+     * @param options
+     *            the deadline and cancellation flag to check between deltas,
+     *            or <code>null</code> if there are no limits.
+     * @throws PatchFailedException
+     *             if any of the patches cannot be applied.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the patch was cancelled.
+     */
+    synchronized void applyEach(List target, DiffOptions options)
+            throws PatchFailedException, DiffTimeoutException
     {
         ListIterator i = deltas_.listIterator(deltas_.size());
         while (i.hasPrevious())
         {
+            DiffOptions.check(options);
             Delta delta = (Delta) i.previous();
             delta.patch(target);
         }
     }
 
+    /**
+     * Tells if a delta can be merged after the original text up to a
+     * position has been consumed.
+     */
+    static boolean isMergeable(Delta delta, int end)
+    {
+        Class type = delta.getClass();
+        if (type != AddDelta.class && type != ChangeDelta.class
+                && type != DeleteDelta.class)
+            return false;
+        Chunk revised = delta.getRevised();
+        if (revised != null && revised.size() > 0 && !revised.hasText())
+            return false;
+        return delta.getOriginal().first() >= end;
+    }
+
+    /**
+     * Verifies the original chunk of a delta against the text, and copies the
+     * revised chunk to the result.
+     * 
+     * @return the position in the text after the original chunk.
+     */
+    static int merge(Delta delta, Object[] src, Object[] result, int to)
+            throws PatchFailedException
+    {
+        Chunk original = delta.getOriginal();
+        int from = original.first();
+        if (original.hasText())
+        {
+            for (int k = 0; k < original.size(); k++)
+            {
+                if (!src[from + k].equals(original.get(k)))
+                    throw new PatchFailedException();
+            }
+        }
+        if (sizeOf(delta.getRevised()) > 0)
+            delta.getRevised().copyTo(result, to);
+        return from + original.size();
+    }
+
+    /**
+     * Returns the number of items saved in a chunk, which may be missing.
+     */
+    static int sizeOf(Chunk chunk)
+    {
+        if (chunk == null || !chunk.hasText())
+            return 0;
+        return chunk.size();
+    }
+
     /**
      * Converts this revision into its Unix diff style string representation.
      * 
@@ -238,6 +509,268 @@ public class Revision extends ToString
         return toRCSString(Diff.NL);
     }
 
+    /**
+     * Returns the revision that undoes this one: the one that turns the
+     * revised text back into the original text.
+     * <p>
+     * Only the positions of the deltas are computed; their text is shared
+     * with this revision, so the original chunks must have their text.
+     * 
+     * @return the inverse revision.
+     * @throws IllegalStateException
+     *             if the text of an original chunk wasn't saved.
+     */
+    public Revision invert()
+    {
+        Revision inverse = new Revision();
+        int shift = 0;
+        ListIterator i = listIterator(0);
+        while (i.hasNext())
+        {
+            Delta delta = (Delta) i.next();
+            Chunk original = delta.getOriginal();
+            Chunk revised = delta.getRevised();
+            int n = sizeOf(revised);
+            if (original.size() > 0 && !original.hasText())
+                throw new IllegalStateException("delta without original text");
+            int at = original.first() + shift;
+            Chunk undone = (n > 0 ? revised.at(at) : new Chunk(at, 0));
+            inverse.addDelta(Delta.newDelta(undone, original.at(original
+                    .first())));
+            shift += n - original.size();
+        }
+        inverse.setApproximate(isApproximate());
+        return inverse;
+    }
+
+    /**
+     * Composes two revisions: given the revision from a text A to a text B,
+     * and the one from B to a text C, returns the revision from A to C.
+     * <p>
+     * The revisions are merged in one pass over their deltas, by their
+     * positions in B, without the texts themselves: the deltas that overlap
+     * or touch in B become one delta, whose text is put together from that of
+     * the deltas. The result is a valid revision, but not necessarily a
+     * minimum one, and the text of its original chunks is only saved if that
+     * of the original chunks of both revisions was.
+     * 
+     * @param a
+     *            the revision from A to B.
+     * @param b
+     *            the revision from B to C.
+     * @return the revision from A to C.
+     * @throws IllegalArgumentException
+     *             if the deltas of a revision are out of order, or the text
+     *             of a revised chunk wasn't saved.
+     */
+    public static Revision compose(Revision a, Revision b)
+    {
+        if (a == null || b == null)
+            throw new IllegalArgumentException("revision is null");
+
+        Revision result = new Revision();
+        result.setApproximate(a.isApproximate() || b.isApproximate());
+        List groupA = new ArrayList();
+        List groupB = new ArrayList();
+        ListIterator ia = a.listIterator(0);
+        ListIterator ib = b.listIterator(0);
+        Delta da = next(ia);
+        Delta db = next(ib);
+        // B is A displaced by shiftA, and C is B displaced by shiftB, outside
+        // the deltas already passed
+        int shiftA = 0;
+        int shiftB = 0;
+        int endA = 0;
+        int endB = 0;
+        while (da != null || db != null)
+        {
+            int lo = Math.min(da == null ? Integer.MAX_VALUE : da
+                    .getOriginal().first()
+                    + shiftA, db == null ? Integer.MAX_VALUE : db
+                    .getOriginal().first());
+            int alo = lo - shiftA;
+            int clo = lo + shiftB;
+            int shiftA0 = shiftA;
+
+            // the deltas that overlap or touch in B, up to hi
+            groupA.clear();
+            groupB.clear();
+            int hi = lo;
+            while (true)
+            {
+                if (da != null && da.getOriginal().first() + shiftA <= hi)
+                {
+                    if (da.getOriginal().first() < endA)
+                        throw new IllegalArgumentException(
+                                "deltas out of order");
+                    endA = da.getOriginal().first() + da.getOriginal().size();
+                    int n = sizeOf(da.getRevised());
+                    hi = Math.max(hi, da.getOriginal().first() + shiftA + n);
+                    shiftA += n - da.getOriginal().size();
+                    groupA.add(da);
+                    da = next(ia);
+                }
+                else if (db != null && db.getOriginal().first() <= hi)
+                {
+                    if (db.getOriginal().first() < endB)
+                        throw new IllegalArgumentException(
+                                "deltas out of order");
+                    endB = db.getOriginal().first() + db.getOriginal().size();
+                    hi = Math.max(hi, endB);
+                    shiftB += sizeOf(db.getRevised()) - db.getOriginal().size();
+                    groupB.add(db);
+                    db = next(ib);
+                }
+                else
+                    break;
+            }
+
+            Chunk original = compose(groupA, shiftA0, groupB, lo, hi, alo);
+            Chunk revised = compose(groupB, groupA, shiftA0, lo, hi, clo);
+            if (original.size() > 0 || revised.size() > 0)
+                result.addDelta(Delta.newDelta(original, revised));
+        }
+        return result;
+    }
+
+    /**
+     * Puts together the text in A of a group of overlapping deltas: the
+     * original chunks of the deltas from A to B, and the text of B between
+     * them, taken from the original chunks of the deltas from B to C.
+     */
+    private static Chunk compose(List groupA, int shiftA, List groupB,
+            int lo, int hi, int alo)
+    {
+        int count = 0;
+        for (int d = 0; d < groupA.size(); d++)
+        {
+            Delta delta = (Delta) groupA.get(d);
+            count += delta.getOriginal().size() - sizeOf(delta.getRevised());
+        }
+        count += hi - lo;
+
+        Object[] text = new Object[count];
+        int k = 0;
+        int p = lo;
+        int bi = 0;
+        for (int d = 0; d < groupA.size() && text != null; d++)
+        {
+            Delta delta = (Delta) groupA.get(d);
+            Chunk original = delta.getOriginal();
+            int ja = original.first() + shiftA;
+            for (; p < ja && text != null; p++)
+            {
+                bi = cover(groupB, bi, p);
+                Chunk unchanged = ((Delta) groupB.get(bi)).getOriginal();
+                if (unchanged.hasText())
+                    text[k++] = unchanged.get(p - unchanged.first());
+                else
+                    text = null;
+            }
+            if (original.size() > 0 && !original.hasText())
+                text = null;
+            else if (text != null)
+            {
+                original.copyTo(text, k);
+                k += original.size();
+            }
+            shiftA += sizeOf(delta.getRevised()) - original.size();
+            p = ja + sizeOf(delta.getRevised());
+        }
+        for (; p < hi && text != null; p++)
+        {
+            bi = cover(groupB, bi, p);
+            Chunk unchanged = ((Delta) groupB.get(bi)).getOriginal();
+            if (unchanged.hasText())
+                text[k++] = unchanged.get(p - unchanged.first());
+            else
+                text = null;
+        }
+        return (text == null ? new Chunk(alo, count) : Chunk.view(text, 0,
+                count, alo));
+    }
+
+    /**
+     * Puts together the text in C of a group of overlapping deltas: the
+     * revised chunks of the deltas from B to C, and the text of B between
+     * them, taken from the revised chunks of the deltas from A to B.
+     */
+    private static Chunk compose(List groupB, List groupA, int shiftA,
+            int lo, int hi, int clo)
+    {
+        int count = hi - lo;
+        for (int d = 0; d < groupB.size(); d++)
+        {
+            Delta delta = (Delta) groupB.get(d);
+            count += sizeOf(delta.getRevised()) - delta.getOriginal().size();
+        }
+
+        Object[] text = new Object[count];
+        int k = 0;
+        int p = lo;
+        int ai = 0;
+        for (int d = 0; d <= groupB.size(); d++)
+        {
+            Delta delta = (d < groupB.size() ? (Delta) groupB.get(d) : null);
+            int kb = (delta == null ? hi : delta.getOriginal().first());
+            while (p < kb)
+            {
+                // the text inserted in B by the delta from A that covers p
+                Delta added = (Delta) groupA.get(ai);
+                int ja = added.getOriginal().first() + shiftA;
+                int n = sizeOf(added.getRevised());
+                if (p >= ja + n)
+                {
+                    shiftA += n - added.getOriginal().size();
+                    ai++;
+                    continue;
+                }
+                int end = Math.min(kb, ja + n);
+                copy(added.getRevised(), p - ja, text, k, end - p);
+                k += end - p;
+                p = end;
+            }
+            if (delta == null)
+                break;
+            int n = sizeOf(delta.getRevised());
+            copy(delta.getRevised(), 0, text, k, n);
+            k += n;
+            p = kb + delta.getOriginal().size();
+        }
+        return Chunk.view(text, 0, count, clo);
+    }
+
+    /**
+     * Returns the position of the delta of a group whose original chunk
+     * covers a position, starting from a given one.
+     */
+    private static int cover(List group, int i, int p)
+    {
+        while (true)
+        {
+            Chunk original = ((Delta) group.get(i)).getOriginal();
+            if (p < original.first() + original.size())
+                return i;
+            i++;
+        }
+    }
+
+    private static void copy(Chunk chunk, int from, Object[] text, int k,
+            int n)
+    {
+        if (n == 0)
+            return;
+        if (!chunk.hasText())
+            throw new IllegalArgumentException("delta without revised text");
+        for (int i = 0; i < n; i++)
+            text[k + i] = chunk.get(from + i);
+    }
+
+    private static Delta next(Iterator i)
+    {
+        return (i.hasNext() ? (Delta) i.next() : null);
+    }
+
     /**
      * Accepts a visitor.
      * 
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.util.Arrays;
+
+/**
+ * Holds a pair of sequences translated to integer tokens.
+ * <p>
+ * Every distinct item in the original and revised sequences is mapped to a
+ * dense integer id, so equal items get equal ids. Differencing algorithms can
+ * then work on the <code>int[]</code> sequences, where comparing two items is
+ * a single integer comparison instead of a call to
+ * {@link Object#equals equals()}, and map the results back to the original
+ * <code>Object[]</code> sequences by position.
+ * <p>
+ * Ids are assigned in order of first appearance, scanning the original
+ * sequence first and then the revised one. So the ids of the items in the
+ * original sequence are <code>0..n-1</code>, where <code>n</code> is the
+ * number of distinct items in it, and ids greater or equal than that belong to
+ * items that appear only in the revised sequence.
+ *
+ * @version $Revision$ $Date$
+ * @see DiffAlgorithm
+ */
+public class Tokens
+{
+    /** The original sequence, as tokens. */
+    public final int[] orig;
+
+    /** The revised sequence, as tokens. */
+    public final int[] rev;
+
+    /** The number of distinct tokens. */
+    public final int count;
+
+    /**
+     * Creates a pair of token sequences.
+     *
+     * @param orig
+     *            the original sequence, as tokens.
+     * @param rev
+     *            the revised sequence, as tokens.
+     * @param count
+     *            the number of distinct tokens.
+     */
+    public Tokens(int[] orig, int[] rev, int count)
+    {
+        this.orig = orig;
+        this.rev = rev;
+        this.count = count;
+    }
+
+    /**
+     * Translates the given sequences to tokens.
+     * <p>
+     * A single open addressing hash table, sized for the worst case in which
+     * all the items are distinct, is used for both sequences.
+     *
+     * @param orig
+     *            the original sequence.
+     * @param rev
+     *            the revised sequence.
+     * @return the token sequences.
+     */
+    public static Tokens intern(Object[] orig, Object[] rev)
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("original sequence is null");
+        if (rev == null)
+            throw new IllegalArgumentException("revised sequence is null");
+
+        int capacity = capacity((long) orig.length + rev.length);
+        return intern(orig, rev, new Object[capacity], new int[capacity],
+                new int[orig.length], new int[rev.length]);
+    }
+
+    /** The largest size of a hash table. */
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * Returns the size of an open addressing hash table for the given number
+     * of items: the smallest power of two that is at least twice the number.
+     *
+     * @param size
+     *            the number of items.
+     * @return the size of the table.
+     * @throws IllegalArgumentException
+     *             if the table would be larger than {@link #MAX_CAPACITY}.
+     */
+    public static int capacity(long size)
+    {
+        if (2 * size > MAX_CAPACITY)
+            throw new IllegalArgumentException("too many items: " + size);
+        int capacity = 2;
+        while (capacity < 2 * size)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    /**
+     * Translates the given sequences to tokens, using the given buffers. The
+     * buffers may be larger than needed, and the table is left empty.
+     */
+    static Tokens intern(Object[] orig, Object[] rev, Object[] keys,
+            int[] ids, int[] iorig, int[] irev)
+    {
+        int capacity = capacity((long) orig.length + rev.length);
+        int count = intern(orig, iorig, keys, ids, capacity, 0);
+        count = intern(rev, irev, keys, ids, capacity, count);
+        Arrays.fill(keys, 0, capacity, null);
+        return new Tokens(iorig, irev, count);
+    }
+
+    /**
+     * Looks up, or adds, the items of a sequence in the table.
+     *
+     * @return the number of distinct items in the table afterwards.
+     */
+    private static int intern(Object[] seq, int[] result, Object[] keys,
+            int[] ids, int capacity, int count)
+    {
+        final int mask = capacity - 1;
+        for (int i = 0; i < seq.length; i++)
+        {
+            Object item = seq[i];
+            int h = item.hashCode();
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (keys[slot] != null && !keys[slot].equals(item))
+            {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == null)
+            {
+                keys[slot] = item;
+                ids[slot] = count++;
+            }
+            result[i] = ids[slot];
+        }
+        return count;
+    }
+}
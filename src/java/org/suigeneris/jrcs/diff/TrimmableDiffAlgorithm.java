@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+/**
+ * Marks the differencing algorithms whose result doesn't change when the
+ * items that are equal at the start and at the end of both sequences are
+ * removed before differencing.
+ * <p>
+ * {@link Diff} passes these algorithms only the window between the common
+ * prefix and suffix of the input sequences, and displaces the resulting
+ * deltas back to their positions in the complete sequences.
+ * <p>
+ * Algorithms that may choose a different script among several of the same
+ * size when given the window, or that use the complete sequences for their
+ * heuristics, must not implement this interface.
+ *
+ * @version $Revision$ $Date$
+ * @see Diff#diff(Object[])
+ */
+public interface TrimmableDiffAlgorithm extends DiffAlgorithm
+{
+}
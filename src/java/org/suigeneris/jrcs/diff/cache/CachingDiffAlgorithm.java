@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.suigeneris.jrcs.diff.CompactRevision;
+import org.suigeneris.jrcs.diff.DiffAlgorithm;
+import org.suigeneris.jrcs.diff.DiffOptions;
+import org.suigeneris.jrcs.diff.DifferentiationFailedException;
+import org.suigeneris.jrcs.diff.Revision;
+import org.suigeneris.jrcs.diff.delta.Delta;
+
+/**
+ * Remembers the revisions computed by another algorithm, so that asking again
+ * for the difference between the same sequences doesn't compute it again.
+ * <p>
+ * <b>Overview of Algorithm</b>
+ * </p>
+ * <p>
+ * Entries are keyed by a 128 bit hash of the contents of both sequences and
+ * the id of the algorithm. Items that are {@link CharSequence character
+ * sequences} are hashed character by character; other items are hashed
+ * through their {@link Object#hashCode() hashCode()}, so they should have a
+ * good one.
+ * </p>
+ * <p>
+ * A revision is stored in compact form, as the positions and sizes of its
+ * deltas, and a new revision with chunks of the given sequences is built from
+ * it on each hit, so callers are free to modify what they get. The cache is
+ * bounded by an estimate of the bytes used by its entries, and drops the
+ * least recently used entries first.
+ * </p>
+ * <p>
+ * The entries are spread over a number of stripes, each an LRU list with its
+ * own lock and its share of the budget, so that threads looking for different
+ * entries seldom wait for each other. No lock is held while a revision is
+ * computed, so two threads that miss the same entry at the same time both
+ * compute it.
+ * </p>
+ *
+ * @version $Revision$ $Date$
+ * @see DiffAlgorithm
+ */
+public class CachingDiffAlgorithm implements DiffAlgorithm
+{
+    /** The default byte budget of the cache. */
+    public static final long DEFAULT_BUDGET = 16L << 20;
+
+    /** The default number of stripes. */
+    public static final int DEFAULT_STRIPES = 16;
+
+    /** The estimated size of an entry without deltas, in bytes. */
+    static final int ENTRY_SIZE = 128;
+
+    /** The estimated size of a delta in an entry, in bytes. */
+    static final int DELTA_SIZE = 16;
+
+    private final DiffAlgorithm algorithm;
+
+    private final String id;
+
+    private final Stripe[] stripes;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs a cache with the default budget, identifying the algorithm
+     * by its class name.
+     *
+     * @param algorithm
+     *            the algorithm that computes the revisions.
+     */
+    public CachingDiffAlgorithm(DiffAlgorithm algorithm)
+    {
+        this(algorithm, algorithm == null ? null : algorithm.getClass()
+                .getName(), DEFAULT_BUDGET, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Constructs a cache.
+     *
+     * @param algorithm
+     *            the algorithm that computes the revisions.
+     * @param id
+     *            the id of the algorithm, which should be different for
+     *            algorithms, or configurations of one, that produce different
+     *            revisions.
+     * @param budget
+     *            the estimated number of bytes the entries may use.
+     * @param stripes
+     *            the number of independently locked parts of the cache.
+     */
+    public CachingDiffAlgorithm(DiffAlgorithm algorithm, String id,
+            long budget, int stripes)
+    {
+        if (algorithm == null)
+            throw new IllegalArgumentException("algorithm is null");
+        if (id == null)
+            throw new IllegalArgumentException("id is null");
+        if (budget < 0)
+            throw new IllegalArgumentException("budget < 0");
+        if (stripes < 1)
+            throw new IllegalArgumentException("stripes < 1");
+        this.algorithm = algorithm;
+        this.id = id;
+        this.stripes = new Stripe[stripes];
+        for (int s = 0; s < stripes; s++)
+            this.stripes[s] = new Stripe(budget / stripes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Revision diff(Object[] orig, Object[] rev)
+            throws DifferentiationFailedException
+    {
+        return diff(orig, rev, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Revision diff(Object[] orig, Object[] rev, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("original sequence is null");
+        if (rev == null)
+            throw new IllegalArgumentException("revised sequence is null");
+
+        Key key = key(orig, rev);
+        Stripe stripe = stripes[(key.hashCode() & Integer.MAX_VALUE)
+                % stripes.length];
+        int[] entry = stripe.get(key);
+        if (entry != null)
+        {
+            hits.incrementAndGet();
+            return toRevision(entry, orig, rev);
+        }
+        misses.incrementAndGet();
+
+        Revision revision = algorithm.diff(orig, rev, options);
+        stripe.put(key, toEntry(revision));
+        return revision;
+    }
+
+    /**
+     * Returns the number of diffs answered from the cache.
+     *
+     * @return the number of hits.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of diffs that had to be computed.
+     *
+     * @return the number of misses.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of revisions in the cache.
+     *
+     * @return the number of entries.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (int s = 0; s < stripes.length; s++)
+            size += stripes[s].size();
+        return size;
+    }
+
+    /**
+     * Returns the estimated number of bytes used by the entries.
+     *
+     * @return the estimated size of the cache.
+     */
+    public long getBytes()
+    {
+        long bytes = 0;
+        for (int s = 0; s < stripes.length; s++)
+            bytes += stripes[s].getBytes();
+        return bytes;
+    }
+
+    /**
+     * Drops all the entries. The counters are kept.
+     */
+    public void clear()
+    {
+        for (int s = 0; s < stripes.length; s++)
+            stripes[s].clear();
+    }
+
+    /**
+     * Hashes the sequences, their lengths, and the lengths of their items,
+     * in two independent 64 bit lanes.
+     */
+    Key key(Object[] orig, Object[] rev)
+    {
+        Hash hash = new Hash();
+        hash.update(orig.length);
+        for (int i = 0; i < orig.length; i++)
+            hash.update(orig[i]);
+        hash.update(rev.length);
+        for (int j = 0; j < rev.length; j++)
+            hash.update(rev[j]);
+        return new Key(hash.high(), hash.low(), id);
+    }
+
+    /**
+     * Stores a revision as an approximate flag followed by the positions and
+     * sizes of its deltas, four entries per delta.
+     */
+    static int[] toEntry(Revision revision)
+    {
+        int[] entry = new int[1 + 4 * revision.size()];
+        entry[0] = (revision.isApproximate() ? 1 : 0);
+        if (revision instanceof CompactRevision)
+        {
+            CompactRevision compact = (CompactRevision) revision;
+            for (int d = 0; d < compact.size(); d++)
+            {
+                entry[1 + 4 * d] = compact.origAnchor(d);
+                entry[2 + 4 * d] = compact.origCount(d);
+                entry[3 + 4 * d] = compact.revAnchor(d);
+                entry[4 + 4 * d] = compact.revCount(d);
+            }
+            return entry;
+        }
+        for (int d = 0; d < revision.size(); d++)
+        {
+            Delta delta = revision.getDelta(d);
+            entry[1 + 4 * d] = delta.getOriginal().first();
+            entry[2 + 4 * d] = delta.getOriginal().size();
+            entry[3 + 4 * d] = delta.getRevised().first();
+            entry[4 + 4 * d] = delta.getRevised().size();
+        }
+        return entry;
+    }
+
+    static Revision toRevision(int[] entry, Object[] orig, Object[] rev)
+    {
+        CompactRevision revision = new CompactRevision(orig, rev);
+        for (int e = 1; e < entry.length; e += 4)
+            revision.addHunk(entry[e], entry[e + 1], entry[e + 2],
+                    entry[e + 3]);
+        revision.setApproximate(entry[0] != 0);
+        return revision;
+    }
+
+    static long sizeOf(int[] entry)
+    {
+        return ENTRY_SIZE + DELTA_SIZE * (entry.length / 4);
+    }
+
+    /**
+     * A 128 bit hash, computed as two 64 bit multiplicative hashes with
+     * different constants, each finished with the MurmurHash3 mixer.
+     */
+    static final class Hash
+    {
+        private long high = 0x6A09E667F3BCC908L;
+
+        private long low = 0xBB67AE8584CAA73BL;
+
+        void update(long value)
+        {
+            high = Long.rotateLeft(high ^ value, 27) * 0x9E3779B97F4A7C15L;
+            low = (low ^ value) * 0x100000001B3L + 0x632BE59BD9B4E019L;
+        }
+
+        void update(Object item)
+        {
+            if (item instanceof CharSequence)
+            {
+                CharSequence chars = (CharSequence) item;
+                int length = chars.length();
+                for (int c = 0; c < length; c++)
+                    update(chars.charAt(c));
+                update(length);
+            }
+            else if (item == null)
+                update(-1);
+            else
+                update(item.hashCode());
+        }
+
+        long high()
+        {
+            return mix(high);
+        }
+
+        long low()
+        {
+            return mix(low);
+        }
+
+        static long mix(long h)
+        {
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    /**
+     * The key of an entry.
+     */
+    static final class Key
+    {
+        final long high;
+
+        final long low;
+
+        final String id;
+
+        Key(long high, long low, String id)
+        {
+            this.high = high;
+            this.low = low;
+            this.id = id;
+        }
+
+        public int hashCode()
+        {
+            return (int) (low ^ (low >>> 32));
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return high == other.high && low == other.low
+                    && id.equals(other.id);
+        }
+    }
+
+    /**
+     * A part of the cache, kept in access order under its own lock.
+     */
+    static final class Stripe
+    {
+        private final long budget;
+
+        private final LinkedHashMap entries = new LinkedHashMap(16, 0.75f,
+                true);
+
+        private long bytes = 0;
+
+        Stripe(long budget)
+        {
+            this.budget = budget;
+        }
+
+        synchronized int[] get(Key key)
+        {
+            return (int[]) entries.get(key);
+        }
+
+        synchronized void put(Key key, int[] entry)
+        {
+            long size = sizeOf(entry);
+            if (size > budget)
+                return;
+            int[] old = (int[]) entries.put(key, entry);
+            if (old != null)
+                bytes -= sizeOf(old);
+            bytes += size;
+
+            Iterator i = entries.entrySet().iterator();
+            while (bytes > budget)
+            {
+                Map.Entry eldest = (Map.Entry) i.next();
+                bytes -= sizeOf((int[]) eldest.getValue());
+                i.remove();
+            }
+        }
+
+        synchronized int size()
+        {
+            return entries.size();
+        }
+
+        synchronized long getBytes()
+        {
+            return bytes;
+        }
+
+        synchronized void clear()
+        {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import java.util.List;
 
 import org.suigeneris.jrcs.diff.Diff;
 import org.suigeneris.jrcs.diff.PatchFailedException;
+import org.suigeneris.jrcs.diff.Revision;
 import org.suigeneris.jrcs.diff.RevisionVisitor;
 
 /**
@@ -32,6 +33,7 @@ import org.suigeneris.jrcs.diff.RevisionVisitor;
  */
 public class ChangeDelta extends Delta
 {
+    private Revision refinement;
 
     ChangeDelta()
     {
@@ -88,6 +90,30 @@ public class ChangeDelta extends Delta
         revised.toString(s, "", EOL);
     }
 
+    /**
+     * Returns the differences between the words or characters of the original
+     * and revised chunks, if they have been computed.
+     * 
+     * @return the refinement, or <code>null</code>.
+     * @see org.suigeneris.jrcs.diff.refine.Refiner
+     */
+    public Revision getRefinement()
+    {
+        return refinement;
+    }
+
+    /**
+     * Attaches the differences between the words or characters of the
+     * original and revised chunks.
+     * 
+     * @param refinement
+     *            the refinement, or <code>null</code> to drop it.
+     */
+    public void setRefinement(Revision refinement)
+    {
+        this.refinement = refinement;
+    }
+
     public void accept(RevisionVisitor visitor)
     {
         visitor.visit(this);
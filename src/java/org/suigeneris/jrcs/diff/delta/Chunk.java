@@ -25,6 +25,11 @@ import org.suigeneris.jrcs.diff.Diff;
 /**
  * Holds a information about a parrt of the text involved in a differencing or
  * patching operation.
+ * <p>
+ * A chunk created through {@link #view(Object[], int, int, int) view()}
+ * doesn't copy its text, but reads it from the sequence it was given, which
+ * must not be changed while the chunk is in use, until its text is asked for
+ * with {@link #chunk()}.
  * 
  * @version $Id: Chunk.java,v 1.1 2006/06/08 05:28:34 juanca Exp $
  * @author <a href="mailto:juanco@suigeneris.org">Juanco Anez</a>
@@ -40,6 +45,12 @@ public class Chunk extends org.suigeneris.jrcs.util.ToString
 
     protected List chunk;
 
+    /** The sequence a view reads its text from, or <code>null</code>. */
+    private Object[] source;
+
+    /** The position of the text of a view in its sequence. */
+    private int base;
+
     /**
      * Creates a chunk that doesn't copy the original text.
      * 
@@ -89,6 +100,47 @@ public class Chunk extends org.suigeneris.jrcs.util.ToString
         chunk = slice(iseq, pos, count);
     }
 
+    /**
+     * Creates a chunk that will be displaced in the resulting text, and reads
+     * its text from the original text instead of saving a copy.
+     * 
+     * @param iseq
+     *            the original text.
+     * @param pos
+     *            the start position in the text.
+     * @param count
+     *            the size of the chunk.
+     * @param offset
+     *            the position the chunk should have in the resulting text.
+     * @return the chunk.
+     */
+    public static Chunk view(Object[] iseq, int pos, int count, int offset)
+    {
+        if (pos < 0 || pos + Math.max(count, 0) > iseq.length)
+            throw new IndexOutOfBoundsException("chunk beyond the text");
+        Chunk chunk = new Chunk(offset, count);
+        chunk.source = iseq;
+        chunk.base = pos;
+        return chunk;
+    }
+
+    /**
+     * Returns a chunk with the same text as this one, at another position.
+     * The text isn't copied.
+     * 
+     * @param offset
+     *            the position of the new chunk.
+     * @return the chunk.
+     */
+    public Chunk at(int offset)
+    {
+        Chunk moved = new Chunk(offset, count);
+        moved.chunk = chunk;
+        moved.source = source;
+        moved.base = base;
+        return moved;
+    }
+
     /**
      * Creates a chunk and saves a copy the original chunk's text.
      * 
@@ -176,16 +228,86 @@ public class Chunk extends org.suigeneris.jrcs.util.ToString
         return anchor + count;
     }
 
+    /**
+     * Displaces this chunk by the given number of positions.
+     * 
+     * @param offset
+     *            the number of positions to displace.
+     */
+    public void shift(int offset)
+    {
+        anchor += offset;
+    }
+
     /**
      * Returns the text saved for this chunk.
+     * <p>
+     * The text of a view is copied the first time it is asked for, and the
+     * view stops reading from its sequence, so the list returned is the
+     * chunk's own and changing it doesn't change the sequence.
      * 
      * @return the text.
      */
     public List chunk()
     {
+        if (source != null)
+        {
+            chunk = slice(source, base, count);
+            source = null;
+        }
         return chunk;
     }
 
+    /**
+     * Returns an item of the text saved for this chunk.
+     * 
+     * @param i
+     *            the position of the item in the chunk.
+     * @return the item.
+     */
+    public Object get(int i)
+    {
+        if (source != null)
+        {
+            if (i < 0 || i >= count)
+                throw new IndexOutOfBoundsException("Index: " + i
+                        + ", Size: " + count);
+            return source[base + i];
+        }
+        return chunk.get(i);
+    }
+
+    /**
+     * Tells if this chunk has its text, either saved or in a sequence it
+     * reads from.
+     * 
+     * @return true if the text is available.
+     */
+    public boolean hasText()
+    {
+        return chunk != null || source != null;
+    }
+
+    /**
+     * Copies the text of this chunk into an array.
+     * 
+     * @param target
+     *            the array to copy to.
+     * @param pos
+     *            the position in the array of the first item.
+     */
+    public void copyTo(Object[] target, int pos)
+    {
+        if (source != null)
+        {
+            System.arraycopy(source, base, target, pos, count);
+            return;
+        }
+        Iterator i = chunk.iterator();
+        while (i.hasNext())
+            target[pos++] = i.next();
+    }
+
     /**
      * Verifies that this chunk's saved text matches the corresponding text in
      * the given sequence.
@@ -196,7 +318,7 @@ public class Chunk extends org.suigeneris.jrcs.util.ToString
      */
     public boolean verify(List target)
     {
-        if (chunk == null)
+        if (!hasText())
         {
             return true;
         }
@@ -206,7 +328,7 @@ public class Chunk extends org.suigeneris.jrcs.util.ToString
         }
         for (int i = 0; i < count; i++)
         {
-            if (!target.get(anchor + i).equals(chunk.get(i)))
+            if (!target.get(anchor + i).equals(get(i)))
             {
                 return false;
             }
@@ -222,10 +344,8 @@ public class Chunk extends org.suigeneris.jrcs.util.ToString
      */
     public void applyDelete(List target)
     {
-        for (int i = last(); i >= first(); i--)
-        {
-            target.remove(i);
-        }
+        if (count > 0)
+            target.subList(first(), first() + count).clear();
     }
 
     /**
@@ -238,11 +358,11 @@ public class Chunk extends org.suigeneris.jrcs.util.ToString
      */
     public void applyAdd(int start, List target)
     {
-        Iterator i = chunk.iterator();
-        while (i.hasNext())
-        {
-            target.add(start++, i.next());
-        }
+        if (source != null)
+            target.addAll(start, Arrays.asList(source).subList(base,
+                    base + count));
+        else
+            target.addAll(start, chunk);
     }
 
     /**
@@ -266,7 +386,16 @@ public class Chunk extends org.suigeneris.jrcs.util.ToString
      */
     public StringBuffer toString(StringBuffer s, String prefix, String postfix)
     {
-        if (chunk != null)
+        if (source != null)
+        {
+            for (int i = base; i < base + count; i++)
+            {
+                s.append(prefix);
+                s.append(source[i]);
+                s.append(postfix);
+            }
+        }
+        else if (chunk != null)
         {
             Iterator i = chunk.iterator();
             while (i.hasNext())
@@ -0,0 +1,523 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.external;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.suigeneris.jrcs.diff.DeltaSink;
+import org.suigeneris.jrcs.diff.DiffAlgorithm;
+import org.suigeneris.jrcs.diff.DiffOptions;
+import org.suigeneris.jrcs.diff.DifferentiationFailedException;
+import org.suigeneris.jrcs.diff.Revision;
+import org.suigeneris.jrcs.diff.delta.Chunk;
+import org.suigeneris.jrcs.diff.delta.Delta;
+import org.suigeneris.jrcs.diff.myers.MyersDiff;
+import org.suigeneris.jrcs.diff.patience.PatienceDiff;
+
+/**
+ * Differences text files that are too large to be held in memory.
+ * <p>
+ * <b>Overview of Algorithm</b>
+ * </p>
+ * <p>
+ * Each file is read once to write the 64-bit hash of every line, with its
+ * number, to a spill file. The spill files are sorted by hash on disk, and
+ * merged to find the lines that occur exactly once in each file. Those
+ * candidates are sorted by their position in the original file, and the ones
+ * that are in the same order in both files are chosen as anchors, as in
+ * {@link PatienceDiff}, one block of candidates at a time.
+ * </p>
+ * <p>
+ * Finally both files are read side by side, and the windows between the
+ * anchors are differenced in memory with the given algorithm. The deltas are
+ * handed to a {@link DeltaSink} as soon as they are found, so neither the
+ * files nor the complete {@link Revision} are ever in memory.
+ * </p>
+ * <p>
+ * Anchors whose lines turn out to be different, because of a hash collision,
+ * are ignored. Windows larger than the configured size are not differenced,
+ * but replaced as a whole, so the result is a minimum diff only when the
+ * anchors are close enough.
+ * </p>
+ *
+ * @version $Revision$ $Date$
+ * @see PatienceDiff
+ * @see DeltaSink
+ */
+public class ExternalDiff
+{
+    /** The default number of records sorted in memory at once. */
+    public static final int DEFAULT_RUN_SIZE = 1 << 20;
+
+    /** The default largest number of lines differenced in memory at once. */
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 16;
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    private final DiffAlgorithm algorithm;
+
+    private final int runSize;
+
+    private final int windowSize;
+
+    private final File directory;
+
+    /**
+     * Constructs an external differencing algorithm that uses
+     * {@link MyersDiff} on the windows, the default sizes, and the default
+     * temporary directory.
+     */
+    public ExternalDiff()
+    {
+        this(new MyersDiff(), DEFAULT_RUN_SIZE, DEFAULT_WINDOW_SIZE, null);
+    }
+
+    /**
+     * Constructs an external differencing algorithm.
+     *
+     * @param algorithm
+     *            the algorithm used to difference the windows between
+     *            anchors.
+     * @param runSize
+     *            the number of records sorted in memory at once.
+     * @param windowSize
+     *            the largest combined number of original and revised lines
+     *            differenced in memory at once.
+     * @param directory
+     *            the directory for the spill files, or <code>null</code> for
+     *            the default temporary directory.
+     */
+    public ExternalDiff(DiffAlgorithm algorithm, int runSize, int windowSize,
+            File directory)
+    {
+        if (algorithm == null)
+            throw new IllegalArgumentException("algorithm is null");
+        if (runSize < 1)
+            throw new IllegalArgumentException("runSize < 1");
+        if (windowSize < 2)
+            throw new IllegalArgumentException("windowSize < 2");
+        this.algorithm = algorithm;
+        this.runSize = runSize;
+        this.windowSize = windowSize;
+        this.directory = directory;
+    }
+
+    /**
+     * Computes the differences between two text files.
+     *
+     * @param orig
+     *            the original file.
+     * @param rev
+     *            the revised file.
+     * @param charset
+     *            the charset of the files.
+     * @param sink
+     *            receives the deltas, in order.
+     * @throws IOException
+     *             if the files can't be read, or the spill files written.
+     * @throws DifferentiationFailedException
+     *             if the diff could not be computed.
+     */
+    public void diff(File orig, File rev, Charset charset, DeltaSink sink)
+            throws IOException, DifferentiationFailedException
+    {
+        diff(orig, rev, charset, sink, null);
+    }
+
+    /**
+     * Computes the differences between two text files, within the limits
+     * of the given options.
+     *
+     * @param orig
+     *            the original file.
+     * @param rev
+     *            the revised file.
+     * @param charset
+     *            the charset of the files.
+     * @param sink
+     *            receives the deltas, in order.
+     * @param options
+     *            the limits of the operation, or <code>null</code>.
+     * @throws IOException
+     *             if the files can't be read, or the spill files written.
+     * @throws DifferentiationFailedException
+     *             if the diff could not be computed.
+     */
+    public void diff(File orig, File rev, Charset charset, DeltaSink sink,
+            DiffOptions options) throws IOException,
+            DifferentiationFailedException
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("original file is null");
+        if (rev == null)
+            throw new IllegalArgumentException("revised file is null");
+        if (charset == null)
+            throw new IllegalArgumentException("charset is null");
+        if (sink == null)
+            throw new IllegalArgumentException("sink is null");
+
+        List spills = new ArrayList();
+        try
+        {
+            SpillFile origHashes = hashLines(orig, charset, spills);
+            SpillFile revHashes = hashLines(rev, charset, spills);
+            DiffOptions.check(options);
+
+            SpillFile origSorted = sort(origHashes, spills);
+            SpillFile revSorted = sort(revHashes, spills);
+            DiffOptions.check(options);
+
+            SpillFile candidates = sort(unique(origSorted, revSorted, spills),
+                    spills);
+            SpillFile anchors = anchors(candidates, spills, options);
+
+            new Windows(orig, rev, charset, sink, options).run(anchors,
+                    origHashes.size, revHashes.size);
+        }
+        finally
+        {
+            for (int s = 0; s < spills.size(); s++)
+                ((SpillFile) spills.get(s)).delete();
+        }
+    }
+
+    private SpillFile newSpill(List spills) throws IOException
+    {
+        SpillFile spill = new SpillFile(directory);
+        spills.add(spill);
+        return spill;
+    }
+
+    private SpillFile sort(SpillFile spill, List spills) throws IOException
+    {
+        SpillFile sorted = spill.sort(runSize);
+        spills.add(sorted);
+        return sorted;
+    }
+
+    /**
+     * Writes the hash and number of each line of a file to a spill file.
+     */
+    private SpillFile hashLines(File file, Charset charset, List spills)
+            throws IOException
+    {
+        SpillFile spill = newSpill(spills);
+        SpillFile.Output out = spill.openOutput();
+        BufferedReader in = open(file, charset);
+        try
+        {
+            String line;
+            int n = 0;
+            while ((line = in.readLine()) != null)
+            {
+                if (n == Integer.MAX_VALUE)
+                    throw new IOException(file + " has too many lines");
+                out.write(hash(line), n++);
+            }
+        }
+        finally
+        {
+            in.close();
+            out.close();
+        }
+        return spill;
+    }
+
+    /**
+     * Merges the lines of both files sorted by hash, and writes the
+     * positions of the ones that occur exactly once in each, keyed by their
+     * position in the original file.
+     */
+    private SpillFile unique(SpillFile origSorted, SpillFile revSorted,
+            List spills) throws IOException
+    {
+        SpillFile result = newSpill(spills);
+        SpillFile.Output out = result.openOutput();
+        SpillFile.Input a = origSorted.openInput();
+        SpillFile.Input b = revSorted.openInput();
+        try
+        {
+            boolean more = a.next() && b.next();
+            while (more)
+            {
+                if (a.key < b.key)
+                    more = a.next();
+                else if (a.key > b.key)
+                    more = b.next();
+                else
+                {
+                    long key = a.key;
+                    int i = a.value;
+                    int j = b.value;
+                    int na = 0;
+                    int nb = 0;
+                    boolean moreA;
+                    do
+                    {
+                        na++;
+                    }
+                    while ((moreA = a.next()) && a.key == key);
+                    boolean moreB;
+                    do
+                    {
+                        nb++;
+                    }
+                    while ((moreB = b.next()) && b.key == key);
+                    if (na == 1 && nb == 1)
+                        out.write(i, j);
+                    more = moreA && moreB;
+                }
+            }
+        }
+        finally
+        {
+            a.close();
+            b.close();
+            out.close();
+        }
+        return result;
+    }
+
+    /**
+     * Chooses the candidates that are in the same order in both files, one
+     * block of at most {@link #runSize} candidates at a time.
+     */
+    private SpillFile anchors(SpillFile candidates, List spills,
+            DiffOptions options) throws IOException,
+            DifferentiationFailedException
+    {
+        SpillFile result = newSpill(spills);
+        SpillFile.Output out = result.openOutput();
+        SpillFile.Input in = candidates.openInput();
+        try
+        {
+            int capacity = (int) Math.max(1, Math.min(runSize,
+                    candidates.size));
+            int[] candI = new int[capacity];
+            int[] candJ = new int[capacity];
+            int last = -1;
+            boolean more = true;
+            while (more)
+            {
+                DiffOptions.check(options);
+                int n = 0;
+                while (n < capacity && (more = in.next()))
+                {
+                    // candidates before the last anchor in the revised file
+                    // can't be anchors anymore
+                    if (in.value > last)
+                    {
+                        candI[n] = (int) in.key;
+                        candJ[n] = in.value;
+                        n++;
+                    }
+                }
+                if (n > 0)
+                {
+                    int[] chosen = PatienceDiff.longestIncreasing(candI, candJ,
+                            n);
+                    for (int c = 0; c < chosen.length; c += 2)
+                        out.write(chosen[c], chosen[c + 1]);
+                    last = chosen[chosen.length - 1];
+                }
+            }
+        }
+        finally
+        {
+            in.close();
+            out.close();
+        }
+        return result;
+    }
+
+    /**
+     * Computes the 64-bit FNV-1a hash of a line.
+     */
+    static long hash(String line)
+    {
+        long hash = FNV_OFFSET;
+        for (int c = 0; c < line.length(); c++)
+            hash = (hash ^ line.charAt(c)) * FNV_PRIME;
+        return hash;
+    }
+
+    static BufferedReader open(File file, Charset charset) throws IOException
+    {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(
+                file), charset), BUFFER_SIZE);
+    }
+
+    /**
+     * Reads both files side by side, differencing the windows between
+     * anchors.
+     */
+    final class Windows
+    {
+        final BufferedReader origIn;
+        final BufferedReader revIn;
+        final DeltaSink sink;
+        final DiffOptions options;
+
+        /** The lines of the current window. */
+        final List origLines = new ArrayList();
+        final List revLines = new ArrayList();
+
+        /** The positions of the current window in both files. */
+        int i0 = 0;
+        int j0 = 0;
+
+        Windows(File orig, File rev, Charset charset, DeltaSink sink,
+                DiffOptions options) throws IOException
+        {
+            this.origIn = open(orig, charset);
+            BufferedReader r = null;
+            try
+            {
+                r = open(rev, charset);
+            }
+            finally
+            {
+                if (r == null)
+                    origIn.close();
+            }
+            this.revIn = r;
+            this.sink = sink;
+            this.options = options;
+        }
+
+        void run(SpillFile anchors, long n, long m) throws IOException,
+                DifferentiationFailedException
+        {
+            SpillFile.Input in = anchors.openInput();
+            try
+            {
+                while (in.next())
+                {
+                    DiffOptions.check(options);
+                    int x = (int) in.key;
+                    int y = in.value;
+                    extend(x, y);
+                    String a = origIn.readLine();
+                    String b = revIn.readLine();
+                    if (a == null || b == null)
+                        throw new IOException("a file changed while read");
+                    if (a.equals(b))
+                    {
+                        flush();
+                        i0 = x + 1;
+                        j0 = y + 1;
+                    }
+                    else
+                    {
+                        // a hash collision; the lines stay in the window
+                        origLines.add(a);
+                        revLines.add(b);
+                    }
+                }
+                extend((int) n, (int) m);
+                flush();
+            }
+            finally
+            {
+                in.close();
+                origIn.close();
+                revIn.close();
+            }
+        }
+
+        /**
+         * Reads the lines up to the given positions into the window, or
+         * replaces the window whole if it would get too large.
+         */
+        void extend(int x, int y) throws IOException
+        {
+            if ((x - i0) + (y - j0) > windowSize)
+            {
+                replace(x, y);
+                return;
+            }
+            read(origIn, origLines, x - i0);
+            read(revIn, revLines, y - j0);
+        }
+
+        /**
+         * Sends the deltas between the lines in the window.
+         */
+        void flush() throws IOException, DifferentiationFailedException
+        {
+            if (!origLines.isEmpty() || !revLines.isEmpty())
+            {
+                Revision revision = algorithm.diff(origLines.toArray(),
+                        revLines.toArray(), options);
+                for (int d = 0; d < revision.size(); d++)
+                {
+                    Delta delta = revision.getDelta(d);
+                    delta.getOriginal().shift(i0);
+                    delta.getRevised().shift(j0);
+                    sink.addDelta(delta);
+                }
+                origLines.clear();
+                revLines.clear();
+            }
+        }
+
+        /**
+         * Replaces the window and the lines up to the given positions, in
+         * slices small enough to be held in memory.
+         */
+        void replace(int x, int y) throws IOException
+        {
+            int half = windowSize / 2;
+            while (i0 < x || j0 < y)
+            {
+                read(origIn, origLines, Math.min(x - i0, half));
+                read(revIn, revLines, Math.min(y - j0, half));
+                sink.addDelta(Delta.newDelta(new Chunk(origLines, 0,
+                        origLines.size(), i0), new Chunk(revLines, 0, revLines
+                        .size(), j0)));
+                i0 += origLines.size();
+                j0 += revLines.size();
+                origLines.clear();
+                revLines.clear();
+            }
+        }
+
+        /**
+         * Reads lines into a list until it holds the given number.
+         */
+        void read(BufferedReader in, List lines, int count) throws IOException
+        {
+            while (lines.size() < count)
+            {
+                String line = in.readLine();
+                if (line == null)
+                    throw new IOException("a file changed while read");
+                lines.add(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.external;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A temporary file of <code>(key, value)</code> records, that can be sorted
+ * by key without loading it whole into memory.
+ *
+ * @version $Revision$ $Date$
+ */
+final class SpillFile
+{
+    /** The largest number of runs merged at once. */
+    static final int MERGE_WAYS = 64;
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    final File directory;
+
+    final File file;
+
+    /** The number of records written. */
+    long size = 0;
+
+    SpillFile(File directory) throws IOException
+    {
+        this.directory = directory;
+        this.file = File.createTempFile("jrcs", ".spill", directory);
+        file.deleteOnExit();
+    }
+
+    Output openOutput() throws IOException
+    {
+        return new Output(this);
+    }
+
+    Input openInput() throws IOException
+    {
+        return new Input(this);
+    }
+
+    void delete()
+    {
+        file.delete();
+    }
+
+    /**
+     * Sorts the records by key into a new file. Records with the same key
+     * keep their order.
+     *
+     * @param runSize
+     *            the number of records sorted in memory at once.
+     * @return the sorted file.
+     */
+    SpillFile sort(int runSize) throws IOException
+    {
+        List runs = new ArrayList();
+        boolean done = false;
+        try
+        {
+            int capacity = (int) Math.max(1, Math.min(runSize, size));
+            long[] keys = new long[capacity];
+            int[] values = new int[capacity];
+            long[] keys2 = new long[capacity];
+            int[] values2 = new int[capacity];
+
+            Input in = openInput();
+            try
+            {
+                int n;
+                do
+                {
+                    n = 0;
+                    while (n < capacity && in.next())
+                    {
+                        keys[n] = in.key;
+                        values[n] = in.value;
+                        n++;
+                    }
+                    if (n > 0 || runs.isEmpty())
+                    {
+                        sort(keys, values, keys2, values2, n);
+                        SpillFile run = new SpillFile(directory);
+                        runs.add(run);
+                        Output out = run.openOutput();
+                        try
+                        {
+                            for (int r = 0; r < n; r++)
+                                out.write(keys[r], values[r]);
+                        }
+                        finally
+                        {
+                            out.close();
+                        }
+                    }
+                }
+                while (n == capacity);
+            }
+            finally
+            {
+                in.close();
+            }
+
+            while (runs.size() > 1)
+            {
+                List merged = new ArrayList();
+                for (int r = 0; r < runs.size(); r += MERGE_WAYS)
+                {
+                    List group = runs.subList(r, Math.min(runs.size(), r
+                            + MERGE_WAYS));
+                    SpillFile run = merge(group);
+                    merged.add(run);
+                    for (int g = 0; g < group.size(); g++)
+                        ((SpillFile) group.get(g)).delete();
+                }
+                runs = merged;
+            }
+            done = true;
+            return (SpillFile) runs.get(0);
+        }
+        finally
+        {
+            if (!done)
+            {
+                for (int r = 0; r < runs.size(); r++)
+                    ((SpillFile) runs.get(r)).delete();
+            }
+        }
+    }
+
+    /**
+     * Merges sorted runs into a new one.
+     */
+    private SpillFile merge(List runs) throws IOException
+    {
+        SpillFile result = new SpillFile(directory);
+        Input[] inputs = new Input[runs.size()];
+        Output out = null;
+        try
+        {
+            out = result.openOutput();
+            int live = 0;
+            for (int r = 0; r < inputs.length; r++)
+            {
+                inputs[r] = ((SpillFile) runs.get(r)).openInput();
+                if (inputs[r].next())
+                    live++;
+                else
+                    inputs[r].close();
+            }
+            while (live > 0)
+            {
+                // the first of the smallest keys, so that equal keys keep
+                // the order of the runs
+                Input min = null;
+                for (int r = 0; r < inputs.length; r++)
+                {
+                    Input in = inputs[r];
+                    if (!in.eof && (min == null || in.key < min.key))
+                        min = in;
+                }
+                out.write(min.key, min.value);
+                if (!min.next())
+                {
+                    min.close();
+                    live--;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            result.delete();
+            throw e;
+        }
+        finally
+        {
+            for (int r = 0; r < inputs.length; r++)
+            {
+                if (inputs[r] != null)
+                    inputs[r].close();
+            }
+            if (out != null)
+                out.close();
+        }
+        return result;
+    }
+
+    /**
+     * Sorts the first <code>n</code> records by key, with a stable bottom-up
+     * merge sort.
+     */
+    static void sort(long[] keys, int[] values, long[] keys2, int[] values2,
+            int n)
+    {
+        for (int width = 1; width < n; width *= 2)
+        {
+            for (int lo = 0; lo < n; lo += 2 * width)
+            {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int a = lo;
+                int b = mid;
+                for (int k = lo; k < hi; k++)
+                {
+                    if (a < mid && (b >= hi || keys[a] <= keys[b]))
+                    {
+                        keys2[k] = keys[a];
+                        values2[k] = values[a];
+                        a++;
+                    }
+                    else
+                    {
+                        keys2[k] = keys[b];
+                        values2[k] = values[b];
+                        b++;
+                    }
+                }
+            }
+            System.arraycopy(keys2, 0, keys, 0, n);
+            System.arraycopy(values2, 0, values, 0, n);
+        }
+    }
+
+    /**
+     * Writes records to a spill file.
+     */
+    static final class Output
+    {
+        private final SpillFile spill;
+
+        private final DataOutputStream out;
+
+        Output(SpillFile spill) throws IOException
+        {
+            this.spill = spill;
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(spill.file), BUFFER_SIZE));
+        }
+
+        void write(long key, int value) throws IOException
+        {
+            out.writeLong(key);
+            out.writeInt(value);
+            spill.size++;
+        }
+
+        void close() throws IOException
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the records of a spill file in order.
+     */
+    static final class Input
+    {
+        private final DataInputStream in;
+
+        private long remaining;
+
+        boolean eof = false;
+
+        /** The key of the current record. */
+        long key;
+
+        /** The value of the current record. */
+        int value;
+
+        Input(SpillFile spill) throws IOException
+        {
+            this.in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(spill.file), BUFFER_SIZE));
+            this.remaining = spill.size;
+        }
+
+        /**
+         * Moves to the next record.
+         *
+         * @return false if there are no more records.
+         */
+        boolean next() throws IOException
+        {
+            if (remaining == 0)
+            {
+                eof = true;
+                return false;
+            }
+            key = in.readLong();
+            value = in.readInt();
+            remaining--;
+            return true;
+        }
+
+        void close()
+        {
+            try
+            {
+                in.close();
+            }
+            catch (IOException e)
+            {
+                // nothing was written, so nothing is lost
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.format;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.suigeneris.jrcs.diff.Revision;
+import org.suigeneris.jrcs.diff.delta.Delta;
+
+/**
+ * Writes revisions in the context format of <code>diff -c</code>.
+ * <p>
+ * Deltas that are separated by no more than twice the number of context
+ * lines are written together in a hunk, which shows the lines around and
+ * between them. Only the deltas of the hunk being written are held.
+ *
+ * @version $Revision$ $Date$
+ * @see UnifiedDiffWriter
+ */
+public class ContextDiffWriter extends DiffWriter
+{
+    /** The default number of unchanged lines shown around the deltas. */
+    public static final int DEFAULT_CONTEXT = 3;
+
+    /** The number of unchanged lines shown around the deltas. */
+    protected final int context;
+
+    private final List hunk = new ArrayList();
+
+    /**
+     * Constructs a writer that shows the default number of context lines.
+     *
+     * @param out
+     *            where the script is written.
+     */
+    public ContextDiffWriter(Appendable out)
+    {
+        this(out, DEFAULT_CONTEXT);
+    }
+
+    /**
+     * Constructs a writer.
+     *
+     * @param out
+     *            where the script is written.
+     * @param context
+     *            the number of unchanged lines shown around the deltas.
+     */
+    public ContextDiffWriter(Appendable out, int context)
+    {
+        super(out);
+        if (context < 0)
+            throw new IllegalArgumentException("context < 0");
+        this.context = context;
+    }
+
+    /**
+     * Constructs a writer that encodes the script to a channel.
+     *
+     * @param channel
+     *            where the script is written.
+     * @param charsetName
+     *            the name of the encoding of the script.
+     * @param context
+     *            the number of unchanged lines shown around the deltas.
+     */
+    public ContextDiffWriter(WritableByteChannel channel, String charsetName,
+            int context)
+    {
+        super(channel, charsetName);
+        if (context < 0)
+            throw new IllegalArgumentException("context < 0");
+        this.context = context;
+    }
+
+    /**
+     * Writes the lines that name the original and revised files.
+     *
+     * @param origName
+     *            the name of the original file, and optionally its date.
+     * @param revName
+     *            the name of the revised file, and optionally its date.
+     * @throws IOException
+     *             if the output fails.
+     */
+    public void writeHeader(String origName, String revName)
+            throws IOException
+    {
+        line("*** " + origName);
+        line("--- " + revName);
+    }
+
+    public void write(Revision revision, Object[] orig) throws IOException
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("original sequence is null");
+
+        // the revised position of each original position before the hunk
+        int shift = 0;
+        ListIterator i = revision.listIterator(0);
+        while (i.hasNext())
+        {
+            hunk.clear();
+            Delta delta = (Delta) i.next();
+            hunk.add(delta);
+            int end = end(delta);
+            while (i.hasNext())
+            {
+                delta = (Delta) i.next();
+                if (delta.getOriginal().first() - end > 2 * context)
+                {
+                    i.previous();
+                    break;
+                }
+                hunk.add(delta);
+                end = end(delta);
+            }
+            if (end > orig.length)
+                throw new IllegalArgumentException(
+                        "delta beyond the original sequence");
+
+            int i0 = Math.max(0, first(hunk).getOriginal().first() - context);
+            int i1 = Math.min(orig.length, end + context);
+            int growth = 0;
+            for (int d = 0; d < hunk.size(); d++)
+            {
+                delta = (Delta) hunk.get(d);
+                growth += sizeOf(delta.getRevised())
+                        - delta.getOriginal().size();
+            }
+            writeHunk(hunk, orig, i0, i1, i0 + shift, i1 + shift + growth);
+            shift += growth;
+        }
+        hunk.clear();
+        flush();
+    }
+
+    /**
+     * Writes a hunk.
+     *
+     * @param deltas
+     *            the deltas in the hunk.
+     * @param orig
+     *            the original sequence.
+     * @param i0
+     *            the start of the hunk in the original sequence.
+     * @param i1
+     *            the end of the hunk in the original sequence.
+     * @param j0
+     *            the start of the hunk in the revised sequence.
+     * @param j1
+     *            the end of the hunk in the revised sequence.
+     * @throws IOException
+     *             if the output fails.
+     */
+    protected void writeHunk(List deltas, Object[] orig, int i0, int i1,
+            int j0, int j1) throws IOException
+    {
+        boolean deletes = false;
+        boolean adds = false;
+        for (int d = 0; d < deltas.size(); d++)
+        {
+            Delta delta = (Delta) deltas.get(d);
+            deletes |= delta.getOriginal().size() > 0;
+            adds |= sizeOf(delta.getRevised()) > 0;
+        }
+
+        line("***************");
+        line("*** " + range(i0, i1) + " ****");
+        if (deletes)
+        {
+            int k = i0;
+            for (int d = 0; d < deltas.size(); d++)
+            {
+                Delta delta = (Delta) deltas.get(d);
+                while (k < delta.getOriginal().first())
+                    line("  ", orig[k++]);
+                String prefix = (sizeOf(delta.getRevised()) > 0 ? "! "
+                        : "- ");
+                for (int n = delta.getOriginal().size(); n > 0; n--)
+                    line(prefix, orig[k++]);
+            }
+            while (k < i1)
+                line("  ", orig[k++]);
+        }
+        line("--- " + range(j0, j1) + " ----");
+        if (adds)
+        {
+            int k = i0;
+            for (int d = 0; d < deltas.size(); d++)
+            {
+                Delta delta = (Delta) deltas.get(d);
+                while (k < delta.getOriginal().first())
+                    line("  ", orig[k++]);
+                String prefix = (delta.getOriginal().size() > 0 ? "! "
+                        : "+ ");
+                writeText(prefix, delta.getRevised());
+                k += delta.getOriginal().size();
+            }
+            while (k < i1)
+                line("  ", orig[k++]);
+        }
+    }
+
+    static int end(Delta delta)
+    {
+        return delta.getOriginal().first() + delta.getOriginal().size();
+    }
+
+    static Delta first(List deltas)
+    {
+        return (Delta) deltas.get(0);
+    }
+
+    /**
+     * Formats the lines from <code>start</code> to <code>end</code> as the
+     * first and last line numbers, or as the line before them if there are
+     * none.
+     */
+    static String range(int start, int end)
+    {
+        if (end - start == 0)
+            return String.valueOf(start);
+        if (end - start == 1)
+            return String.valueOf(end);
+        return (start + 1) + "," + end;
+    }
+}
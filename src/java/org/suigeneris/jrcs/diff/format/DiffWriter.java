@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.format;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import org.suigeneris.jrcs.diff.Revision;
+import org.suigeneris.jrcs.diff.delta.Chunk;
+
+/**
+ * Writes a revision as a diff script, one delta at a time, straight to an
+ * {@link Appendable}, such as a {@link java.io.Writer Writer} or a
+ * {@link StringBuilder}, or to a byte channel.
+ * <p>
+ * Unlike {@link Revision#toString()} and {@link Revision#toRCSString()}, the
+ * writers don't build the script in memory: each delta is written as soon as
+ * it has been formatted, so the memory used doesn't depend on the size of the
+ * revision. The deltas are read through {@link Revision#listIterator(int)},
+ * so a {@link org.suigeneris.jrcs.diff.CompactRevision CompactRevision} isn't
+ * made to keep them.
+ * <p>
+ * Lines end with a newline unless {@link #setLineSeparator(String)} says
+ * otherwise. Writers are not thread-safe.
+ *
+ * @version $Revision$ $Date$
+ * @see Revision
+ */
+public abstract class DiffWriter
+{
+    /** Where the script is written. */
+    protected final Appendable out;
+
+    /** The text that ends each line. */
+    protected String eol = "\n";
+
+    /**
+     * Constructs a writer.
+     *
+     * @param out
+     *            where the script is written.
+     */
+    protected DiffWriter(Appendable out)
+    {
+        if (out == null)
+            throw new IllegalArgumentException("output is null");
+        this.out = out;
+    }
+
+    /**
+     * Constructs a writer that encodes the script to a channel.
+     *
+     * @param channel
+     *            where the script is written.
+     * @param charsetName
+     *            the name of the encoding of the script.
+     */
+    protected DiffWriter(WritableByteChannel channel, String charsetName)
+    {
+        this(Channels.newWriter(channel, charsetName));
+    }
+
+    /**
+     * Sets the text that ends each line.
+     *
+     * @param eol
+     *            the line separator.
+     */
+    public void setLineSeparator(String eol)
+    {
+        if (eol == null)
+            throw new IllegalArgumentException("line separator is null");
+        this.eol = eol;
+    }
+
+    /**
+     * Writes a revision, and flushes the output if it can be flushed.
+     *
+     * @param revision
+     *            the revision to write.
+     * @param orig
+     *            the original sequence of the revision. Formats that show
+     *            unchanged lines need it.
+     * @throws IOException
+     *             if the output fails.
+     */
+    public abstract void write(Revision revision, Object[] orig)
+            throws IOException;
+
+    /**
+     * Flushes the output, if it can be flushed.
+     *
+     * @throws IOException
+     *             if the output fails.
+     */
+    public void flush() throws IOException
+    {
+        if (out instanceof Flushable)
+            ((Flushable) out).flush();
+    }
+
+    /**
+     * Writes a line.
+     */
+    protected void line(String text) throws IOException
+    {
+        out.append(text);
+        out.append(eol);
+    }
+
+    /**
+     * Writes an item as a line, after a prefix.
+     */
+    protected void line(String prefix, Object item) throws IOException
+    {
+        out.append(prefix);
+        out.append(String.valueOf(item));
+        out.append(eol);
+    }
+
+    /**
+     * Writes the text of a chunk, a line for each item.
+     */
+    protected void writeText(String prefix, Chunk chunk) throws IOException
+    {
+        int n = sizeOf(chunk);
+        if (n > 0 && !chunk.hasText())
+            throw new IllegalArgumentException("chunk without text");
+        for (int k = 0; k < n; k++)
+            line(prefix, chunk.get(k));
+    }
+
+    /**
+     * Returns the size of a chunk, which may be missing.
+     */
+    static int sizeOf(Chunk chunk)
+    {
+        return (chunk == null ? 0 : chunk.size());
+    }
+}
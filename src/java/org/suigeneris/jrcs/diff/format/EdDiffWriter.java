@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.format;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ListIterator;
+
+import org.suigeneris.jrcs.diff.Revision;
+import org.suigeneris.jrcs.diff.delta.Chunk;
+import org.suigeneris.jrcs.diff.delta.Delta;
+
+/**
+ * Writes revisions as <code>ed</code> scripts, in the format of
+ * <code>diff -e</code>.
+ * <p>
+ * The deltas are written from the last one, so that the line numbers of
+ * each command are those of the original text. A line consisting of a
+ * single period, which would end the text of a command, is written as two
+ * periods, and then fixed with a substitution.
+ *
+ * @version $Revision$ $Date$
+ */
+public class EdDiffWriter extends DiffWriter
+{
+    /**
+     * Constructs a writer.
+     *
+     * @param out
+     *            where the script is written.
+     */
+    public EdDiffWriter(Appendable out)
+    {
+        super(out);
+    }
+
+    /**
+     * Constructs a writer that encodes the script to a channel.
+     *
+     * @param channel
+     *            where the script is written.
+     * @param charsetName
+     *            the name of the encoding of the script.
+     */
+    public EdDiffWriter(WritableByteChannel channel, String charsetName)
+    {
+        super(channel, charsetName);
+    }
+
+    /**
+     * Writes a revision. The original sequence isn't needed, and may be
+     * <code>null</code>.
+     */
+    public void write(Revision revision, Object[] orig) throws IOException
+    {
+        ListIterator i = revision.listIterator(revision.size());
+        while (i.hasPrevious())
+        {
+            Delta delta = (Delta) i.previous();
+            Chunk original = delta.getOriginal();
+            Chunk revised = delta.getRevised();
+            int n = sizeOf(revised);
+            if (original.size() == 0)
+                line(original.first() + "a");
+            else
+                line(range(original) + (n > 0 ? "c" : "d"));
+            if (n == 0)
+                continue;
+
+            if (!revised.hasText())
+                throw new IllegalArgumentException("chunk without text");
+            // after a period, the text is in command mode until appended to
+            boolean appending = true;
+            for (int k = 0; k < n; k++)
+            {
+                if (!appending)
+                    line("a");
+                Object item = revised.get(k);
+                appending = !".".equals(String.valueOf(item));
+                if (appending)
+                    line("", item);
+                else
+                {
+                    line("..");
+                    line(".");
+                    line("s/.//");
+                }
+            }
+            if (appending)
+                line(".");
+        }
+        flush();
+    }
+
+    /**
+     * Formats the lines of a chunk as the first and last line numbers.
+     */
+    static String range(Chunk chunk)
+    {
+        if (chunk.size() == 1)
+            return String.valueOf(chunk.first() + 1);
+        return (chunk.first() + 1) + "," + (chunk.first() + chunk.size());
+    }
+}
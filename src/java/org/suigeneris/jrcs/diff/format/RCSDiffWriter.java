@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.format;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ListIterator;
+
+import org.suigeneris.jrcs.diff.Revision;
+import org.suigeneris.jrcs.diff.delta.Chunk;
+import org.suigeneris.jrcs.diff.delta.Delta;
+
+/**
+ * Writes revisions in the format of the deltas of RCS archives, which is
+ * that of <code>diff -n</code> and of {@link Revision#toRCSString()}.
+ *
+ * @version $Revision$ $Date$
+ * @see org.suigeneris.jrcs.rcs.Archive
+ */
+public class RCSDiffWriter extends DiffWriter
+{
+    /**
+     * Constructs a writer.
+     *
+     * @param out
+     *            where the script is written.
+     */
+    public RCSDiffWriter(Appendable out)
+    {
+        super(out);
+    }
+
+    /**
+     * Constructs a writer that encodes the script to a channel.
+     *
+     * @param channel
+     *            where the script is written.
+     * @param charsetName
+     *            the name of the encoding of the script.
+     */
+    public RCSDiffWriter(WritableByteChannel channel, String charsetName)
+    {
+        super(channel, charsetName);
+    }
+
+    /**
+     * Writes a revision. The original sequence isn't needed, and may be
+     * <code>null</code>.
+     */
+    public void write(Revision revision, Object[] orig) throws IOException
+    {
+        ListIterator i = revision.listIterator(0);
+        while (i.hasNext())
+        {
+            Delta delta = (Delta) i.next();
+            Chunk original = delta.getOriginal();
+            Chunk revised = delta.getRevised();
+            if (original.size() > 0)
+                line("d" + original.rcsfrom() + " " + original.size());
+            int n = sizeOf(revised);
+            if (n > 0)
+            {
+                line("a" + original.rcsto() + " " + n);
+                writeText("", revised);
+            }
+        }
+        flush();
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.format;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import org.suigeneris.jrcs.diff.Revision;
+import org.suigeneris.jrcs.diff.delta.Chunk;
+import org.suigeneris.jrcs.diff.delta.Delta;
+
+/**
+ * Encodes revisions in a compact binary form, and decodes them straight from
+ * a {@link ByteBuffer}, so that they can be stored or sent to another process
+ * without going through {@link Revision#toRCSString()} and parsing the text
+ * back.
+ * <p>
+ * <b>Format</b>
+ * </p>
+ * <p>
+ * All numbers are unsigned variable length integers: seven bits per byte,
+ * least significant first, with the high bit set on all bytes but the last.
+ * A revision is:
+ * <ol>
+ * <li>the format version, one byte, {@link #VERSION};</li>
+ * <li>the flags: {@link #APPROXIMATE} if the revision is approximate, and
+ * {@link #TABLE} if the lines are kept in a table;</li>
+ * <li>the number of deltas;</li>
+ * <li>with {@link #TABLE}, the number of distinct lines, followed by each
+ * line as its length in bytes and its text in UTF-8;</li>
+ * <li>for each delta, the number of unchanged items before it in the
+ * original sequence and its size there, the number of unchanged items before
+ * it in the revised sequence and its size there, followed by the lines it
+ * adds: their index in the table, or, without {@link #TABLE}, their length
+ * and text.</li>
+ * </ol>
+ * The items a delta deletes aren't encoded, as in RCS delta texts, so a
+ * decoded revision can be applied but not inverted. Items are encoded as
+ * their string values.
+ * </p>
+ * <p>
+ * Decoding reads the numbers straight from the buffer, and decodes the text
+ * of each line from the buffer into a string, without copying the bytes
+ * first. With a table, each distinct line is decoded only once, and shared
+ * by all the deltas that add it. The added lines of a decoded revision are
+ * kept in a single array, which the revised chunks are
+ * {@link Chunk#view(Object[], int, int, int) views} of.
+ * </p>
+ *
+ * @version $Revision$ $Date$
+ * @see Revision
+ * @see RCSDiffWriter
+ */
+public final class RevisionCodec
+{
+    /** The version of the format. */
+    public static final int VERSION = 1;
+
+    /** The flag of approximate revisions. */
+    public static final int APPROXIMATE = 1;
+
+    /** The flag of revisions whose lines are kept in a table. */
+    public static final int TABLE = 2;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private RevisionCodec()
+    {
+    }
+
+    /**
+     * Encodes a revision, with a table of lines if some line is added more
+     * than once.
+     *
+     * @param revision
+     *            the revision to encode.
+     * @return a buffer with the encoded revision between its position and
+     *         its limit.
+     * @throws IllegalArgumentException
+     *             if the deltas are out of order.
+     */
+    public static ByteBuffer encode(Revision revision)
+    {
+        return encode(revision, null);
+    }
+
+    /**
+     * Encodes a revision.
+     *
+     * @param revision
+     *            the revision to encode.
+     * @param table
+     *            whether the lines should be kept in a table.
+     * @return a buffer with the encoded revision between its position and
+     *         its limit.
+     * @throws IllegalArgumentException
+     *             if the deltas are out of order.
+     */
+    public static ByteBuffer encode(Revision revision, boolean table)
+    {
+        return encode(revision, Boolean.valueOf(table));
+    }
+
+    private static ByteBuffer encode(Revision revision, Boolean table)
+    {
+        if (revision == null)
+            throw new IllegalArgumentException("revision is null");
+
+        // the distinct lines, in order of appearance, and their indexes
+        List lines = new ArrayList();
+        Map indexes = new HashMap();
+        int added = 0;
+        ListIterator d = revision.listIterator(0);
+        while (d.hasNext())
+        {
+            Chunk revised = ((Delta) d.next()).getRevised();
+            int m = sizeOf(revised);
+            if (m > 0 && !revised.hasText())
+                throw new IllegalArgumentException("chunk without text");
+            for (int k = 0; k < m; k++)
+            {
+                String line = String.valueOf(revised.get(k));
+                if (!indexes.containsKey(line))
+                {
+                    indexes.put(line, Integer.valueOf(lines.size()));
+                    lines.add(line);
+                }
+            }
+            added += m;
+        }
+        boolean tabled = (table == null ? lines.size() < added : table
+                .booleanValue());
+
+        Output out = new Output(16 + 8 * revision.size() + 16 * added);
+        out.write(VERSION);
+        out.varint((revision.isApproximate() ? APPROXIMATE : 0)
+                | (tabled ? TABLE : 0));
+        out.varint(revision.size());
+        if (tabled)
+        {
+            out.varint(lines.size());
+            for (int l = 0; l < lines.size(); l++)
+                out.text((String) lines.get(l));
+        }
+
+        int origEnd = 0;
+        int revEnd = 0;
+        d = revision.listIterator(0);
+        while (d.hasNext())
+        {
+            Delta delta = (Delta) d.next();
+            Chunk original = delta.getOriginal();
+            Chunk revised = delta.getRevised();
+            int i = original.first();
+            int n = original.size();
+            int j = (revised == null ? revEnd + i - origEnd : revised
+                    .first());
+            int m = sizeOf(revised);
+            if (i < origEnd || j < revEnd)
+                throw new IllegalArgumentException("deltas out of order");
+            out.varint(i - origEnd);
+            out.varint(n);
+            out.varint(j - revEnd);
+            out.varint(m);
+            for (int k = 0; k < m; k++)
+            {
+                String line = String.valueOf(revised.get(k));
+                if (tabled)
+                    out.varint(((Integer) indexes.get(line)).intValue());
+                else
+                    out.text(line);
+            }
+            origEnd = i + n;
+            revEnd = j + m;
+        }
+        return out.toBuffer();
+    }
+
+    /**
+     * Decodes a revision, from the position of a buffer, and leaves the
+     * position after it.
+     *
+     * @param buffer
+     *            the buffer with the encoded revision.
+     * @return the revision.
+     * @throws IllegalArgumentException
+     *             if the buffer doesn't hold a revision of this version of
+     *             the format.
+     */
+    public static Revision decode(ByteBuffer buffer)
+    {
+        if (buffer == null)
+            throw new IllegalArgumentException("buffer is null");
+        try
+        {
+            int version = buffer.get() & 0xFF;
+            if (version != VERSION)
+                throw new IllegalArgumentException("unknown format version "
+                        + version);
+            int flags = varint(buffer);
+            String[] table = null;
+            int size = varint(buffer);
+            if ((flags & TABLE) != 0)
+            {
+                // each line takes at least its length
+                table = new String[count(buffer, 1)];
+                for (int l = 0; l < table.length; l++)
+                    table[l] = text(buffer);
+            }
+
+            // each delta takes at least its four numbers
+            if (size > buffer.remaining() / 4)
+                throw new IllegalArgumentException("too many deltas: " + size);
+
+            // the deltas, as (i, n, j, m) tuples, and the lines they add
+            int[] hunks = new int[4 * size];
+            Object[] lines = new Object[Math.min(size,
+                    buffer.remaining())];
+            int added = 0;
+            int origEnd = 0;
+            int revEnd = 0;
+            for (int h = 0; h < hunks.length; h += 4)
+            {
+                int i = origEnd + varint(buffer);
+                int n = varint(buffer);
+                int j = revEnd + varint(buffer);
+                int m = varint(buffer);
+                if (i < origEnd || j < revEnd || i + n < i || j + m < j)
+                    throw new IllegalArgumentException(
+                            "delta beyond the largest position");
+                if (m > buffer.remaining())
+                    throw new BufferUnderflowException();
+                if (added + m > lines.length)
+                {
+                    Object[] grown = new Object[Math.max(added + m,
+                            2 * lines.length)];
+                    System.arraycopy(lines, 0, grown, 0, added);
+                    lines = grown;
+                }
+                for (int k = 0; k < m; k++)
+                {
+                    if (table == null)
+                        lines[added++] = text(buffer);
+                    else
+                        lines[added++] = table[index(buffer, table.length)];
+                }
+                hunks[h] = i;
+                hunks[h + 1] = n;
+                hunks[h + 2] = j;
+                hunks[h + 3] = m;
+                origEnd = i + n;
+                revEnd = j + m;
+            }
+
+            Revision revision = new Revision();
+            revision.setApproximate((flags & APPROXIMATE) != 0);
+            added = 0;
+            for (int h = 0; h < hunks.length; h += 4)
+            {
+                Chunk original = new Chunk(hunks[h], hunks[h + 1]);
+                Chunk revised = Chunk.view(lines, added, hunks[h + 3],
+                        hunks[h + 2]);
+                revision.addDelta(Delta.newDelta(original, revised));
+                added += hunks[h + 3];
+            }
+            return revision;
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IllegalArgumentException("truncated revision");
+        }
+    }
+
+    /**
+     * Reads a variable length integer.
+     */
+    private static int varint(ByteBuffer buffer)
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            int b = buffer.get();
+            if (shift == 28 && (b & 0xF8) != 0)
+                break;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("malformed number");
+    }
+
+    /**
+     * Reads a number of items that take at least the given number of bytes
+     * each, checking that the buffer can hold them.
+     */
+    private static int count(ByteBuffer buffer, int bytes)
+    {
+        int count = varint(buffer);
+        if (count > buffer.remaining() / bytes)
+            throw new IllegalArgumentException("too many items: " + count);
+        return count;
+    }
+
+    private static int index(ByteBuffer buffer, int size)
+    {
+        int index = varint(buffer);
+        if (index >= size)
+            throw new IllegalArgumentException("line " + index
+                    + " beyond the table");
+        return index;
+    }
+
+    /**
+     * Reads a line, decoding it straight from the buffer.
+     */
+    private static String text(ByteBuffer buffer)
+    {
+        int length = varint(buffer);
+        if (length > buffer.remaining())
+            throw new BufferUnderflowException();
+        int position = buffer.position();
+        buffer.position(position + length);
+        if (buffer.hasArray())
+            return new String(buffer.array(), buffer.arrayOffset() + position,
+                    length, UTF8);
+
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.position(position);
+        bytes.limit(position + length);
+        try
+        {
+            return UTF8.newDecoder().decode(bytes).toString();
+        }
+        catch (CharacterCodingException e)
+        {
+            throw new IllegalArgumentException("malformed line");
+        }
+    }
+
+    static int sizeOf(Chunk chunk)
+    {
+        return (chunk == null ? 0 : chunk.size());
+    }
+
+    /**
+     * A growing array of bytes.
+     */
+    private static final class Output
+    {
+        private byte[] bytes;
+
+        private int size = 0;
+
+        Output(int capacity)
+        {
+            bytes = new byte[capacity];
+        }
+
+        void write(int b)
+        {
+            if (size == bytes.length)
+                grow(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void varint(int value)
+        {
+            while ((value & ~0x7F) != 0)
+            {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void text(String line)
+        {
+            byte[] text = line.getBytes(UTF8);
+            varint(text.length);
+            if (size + text.length > bytes.length)
+                grow(text.length);
+            System.arraycopy(text, 0, bytes, size, text.length);
+            size += text.length;
+        }
+
+        ByteBuffer toBuffer()
+        {
+            return ByteBuffer.wrap(bytes, 0, size);
+        }
+
+        private void grow(int needed)
+        {
+            byte[] grown = new byte[Math.max(size + needed, 2 * bytes.length)];
+            System.arraycopy(bytes, 0, grown, 0, size);
+            bytes = grown;
+        }
+    }
+}
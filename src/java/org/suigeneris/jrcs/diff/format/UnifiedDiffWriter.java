@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.format;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+import org.suigeneris.jrcs.diff.delta.Delta;
+
+/**
+ * Writes revisions in the unified format of <code>diff -u</code>, with a
+ * configurable number of context lines.
+ *
+ * @version $Revision$ $Date$
+ * @see ContextDiffWriter
+ */
+public class UnifiedDiffWriter extends ContextDiffWriter
+{
+    /**
+     * Constructs a writer that shows the default number of context lines.
+     *
+     * @param out
+     *            where the script is written.
+     */
+    public UnifiedDiffWriter(Appendable out)
+    {
+        super(out);
+    }
+
+    /**
+     * Constructs a writer.
+     *
+     * @param out
+     *            where the script is written.
+     * @param context
+     *            the number of unchanged lines shown around the deltas.
+     */
+    public UnifiedDiffWriter(Appendable out, int context)
+    {
+        super(out, context);
+    }
+
+    /**
+     * Constructs a writer that encodes the script to a channel.
+     *
+     * @param channel
+     *            where the script is written.
+     * @param charsetName
+     *            the name of the encoding of the script.
+     * @param context
+     *            the number of unchanged lines shown around the deltas.
+     */
+    public UnifiedDiffWriter(WritableByteChannel channel, String charsetName,
+            int context)
+    {
+        super(channel, charsetName, context);
+    }
+
+    public void writeHeader(String origName, String revName)
+            throws IOException
+    {
+        line("--- " + origName);
+        line("+++ " + revName);
+    }
+
+    protected void writeHunk(List deltas, Object[] orig, int i0, int i1,
+            int j0, int j1) throws IOException
+    {
+        line("@@ -" + unifiedRange(i0, i1) + " +" + unifiedRange(j0, j1)
+                + " @@");
+        int k = i0;
+        for (int d = 0; d < deltas.size(); d++)
+        {
+            Delta delta = (Delta) deltas.get(d);
+            while (k < delta.getOriginal().first())
+                line(" ", orig[k++]);
+            for (int n = delta.getOriginal().size(); n > 0; n--)
+                line("-", orig[k++]);
+            writeText("+", delta.getRevised());
+        }
+        while (k < i1)
+            line(" ", orig[k++]);
+    }
+
+    /**
+     * Formats the lines from <code>start</code> to <code>end</code> as the
+     * first line number and the number of lines, leaving out a count of one.
+     * An empty range starts at the line before it.
+     */
+    static String unifiedRange(int start, int end)
+    {
+        if (end - start == 1)
+            return String.valueOf(end);
+        if (end - start == 0)
+            return start + ",0";
+        return (start + 1) + "," + (end - start);
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.histogram;
+
+import org.suigeneris.jrcs.diff.DiffOptions;
+import org.suigeneris.jrcs.diff.DifferentiationFailedException;
+import org.suigeneris.jrcs.diff.Matches;
+import org.suigeneris.jrcs.diff.Mismatch;
+import org.suigeneris.jrcs.diff.Revision;
+import org.suigeneris.jrcs.diff.Tokens;
+import org.suigeneris.jrcs.diff.TrimmableDiffAlgorithm;
+import org.suigeneris.jrcs.diff.myers.MyersDiff;
+
+/**
+ * Implements a histogram differencing algorithm, in the style of the one in
+ * JGit.
+ * <p>
+ * <b>Overview of Algorithm</b>
+ * </p>
+ * <p>
+ * A histogram of the items in the original sequence is built, in which each
+ * distinct item has a count of its occurrences and a chain of the positions
+ * where it occurs. The revised sequence is then scanned, and each item found
+ * in the histogram is extended forward and backward into a region of matching
+ * items. The region whose rarest item has the lowest count is chosen as the
+ * split point, preferring the longest one among equally rare regions. The
+ * region is matched, and the algorithm is applied again to the parts before and
+ * after it.
+ * </p>
+ * <p>
+ * Items that occur more times than the maximum chain length are left out of
+ * the histogram, so common low information items like blank lines or closing
+ * braces never drive the search, nor make it expensive. If a part of the
+ * sequences has items in common, but all of them are too common, the part is
+ * differenced with {@link MyersDiff}.
+ * </p>
+ * <p>
+ * Like {@link org.suigeneris.jrcs.diff.patience.PatienceDiff PatienceDiff},
+ * which is the special case in which only unique items are considered, this
+ * algorithm doesn't always find minimum diffs, but its deltas tend to follow
+ * the structure of the text.
+ * </p>
+ *
+ * @version $Revision$ $Date$
+ * @see MyersDiff
+ * @see Revision
+ */
+public class HistogramDiff implements TrimmableDiffAlgorithm
+{
+    /**
+     * The default maximum number of occurrences an item may have to be
+     * considered as a split point.
+     */
+    public static final int DEFAULT_MAX_CHAIN_LENGTH = 64;
+
+    private final int maxChainLength;
+
+    /**
+     * Constructs an instance of the histogram differencing algorithm.
+     */
+    public HistogramDiff()
+    {
+        this(DEFAULT_MAX_CHAIN_LENGTH);
+    }
+
+    /**
+     * Constructs an instance of the histogram differencing algorithm.
+     *
+     * @param maxChainLength
+     *            the maximum number of occurrences an item may have in the
+     *            original sequence to be considered as a split point.
+     */
+    public HistogramDiff(int maxChainLength)
+    {
+        if (maxChainLength < 1)
+            throw new IllegalArgumentException("maxChainLength < 1");
+        this.maxChainLength = maxChainLength;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Revision diff(Object[] orig, Object[] rev)
+            throws DifferentiationFailedException
+    {
+        return diff(orig, rev, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Revision diff(Object[] orig, Object[] rev, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("original sequence is null");
+        if (rev == null)
+            throw new IllegalArgumentException("revised sequence is null");
+
+        Tokens tokens = Tokens.intern(orig, rev);
+        Search search = new Search(tokens, maxChainLength, options);
+        search.run();
+        return search.matches.toRevision(orig, rev);
+    }
+
+    /**
+     * The state of one differencing run.
+     * <p>
+     * Pending work is kept in an explicit stack, rather than by recursion,
+     * because splits near the ends of large inputs can nest very deeply.
+     */
+    static final class Search
+    {
+        static final int REGION = 0;
+        static final int RUN = 1;
+
+        final int[] orig;
+        final int[] rev;
+        final int maxChainLength;
+        final DiffOptions options;
+
+        /** Occurrences of each token in the current original window. */
+        final int[] count;
+        /** First position, plus one, of each token in the window. */
+        final int[] head;
+        /** Next position, plus one, of the token at each position. */
+        final int[] next;
+
+        /** Pending work, as (kind, i0, i1, j0, j1) tuples. */
+        int[] stack = new int[5 * 16];
+        int top = 0;
+
+        final Matches matches = new Matches();
+
+        Search(Tokens tokens, int maxChainLength, DiffOptions options)
+        {
+            this.orig = tokens.orig;
+            this.rev = tokens.rev;
+            this.maxChainLength = maxChainLength;
+            this.options = options;
+            this.count = new int[tokens.count];
+            this.head = new int[tokens.count];
+            this.next = new int[orig.length];
+        }
+
+        void push(int kind, int i0, int i1, int j0, int j1)
+        {
+            if (top == stack.length)
+            {
+                int[] grown = new int[2 * stack.length];
+                System.arraycopy(stack, 0, grown, 0, stack.length);
+                stack = grown;
+            }
+            stack[top++] = kind;
+            stack[top++] = i0;
+            stack[top++] = i1;
+            stack[top++] = j0;
+            stack[top++] = j1;
+        }
+
+        void run() throws DifferentiationFailedException
+        {
+            push(REGION, 0, orig.length, 0, rev.length);
+            while (top > 0)
+            {
+                top -= 5;
+                int i0 = stack[top + 1];
+                int i1 = stack[top + 2];
+                int j0 = stack[top + 3];
+                int j1 = stack[top + 4];
+                if (stack[top] == RUN)
+                    matches.add(i0, j0, i1 - i0);
+                else
+                    split(i0, i1, j0, j1);
+            }
+        }
+
+        /**
+         * Matches the common prefix of <code>orig[i0..i1)</code> and
+         * <code>rev[j0..j1)</code>, and schedules the rest, split at the
+         * best region found, to be processed in order.
+         */
+        void split(int i0, int i1, int j0, int j1)
+                throws DifferentiationFailedException
+        {
+            DiffOptions.check(options);
+
+            int start = i0;
+            int prefix = Mismatch.forward(orig, i0, rev, j0, Math.min(i1 - i0,
+                    j1 - j0));
+            i0 += prefix;
+            j0 += prefix;
+            matches.add(start, j0 - (i0 - start), i0 - start);
+
+            int end = i1;
+            int suffix = Mismatch.backward(orig, i1, rev, j1, Math.min(i1 - i0,
+                    j1 - j0));
+            i1 -= suffix;
+            j1 -= suffix;
+            push(RUN, i1, end, j1, j1 + (end - i1));
+
+            if (i0 >= i1 || j0 >= j1)
+                return;
+
+            index(i0, i1);
+            int bestI = 0;
+            int bestJ = 0;
+            int bestLength = 0;
+            int lowCount = maxChainLength + 1;
+            boolean tooCommon = false;
+
+            for (int j = j0; j < j1;)
+            {
+                int t = rev[j];
+                int nextJ = j + 1;
+                if (head[t] == 0)
+                {
+                    if (count[t] > maxChainLength)
+                        tooCommon = true;
+                }
+                else if (count[t] <= lowCount)
+                {
+                    for (int p = head[t]; p != 0; p = next[p - 1])
+                    {
+                        int i = p - 1;
+                        int as = i;
+                        int bs = j;
+                        int ae = i + 1;
+                        int be = j + 1;
+                        int rc = count[t];
+
+                        while (as > i0 && bs > j0
+                                && orig[as - 1] == rev[bs - 1])
+                        {
+                            as--;
+                            bs--;
+                            rc = Math.min(rc, count[orig[as]]);
+                        }
+                        while (ae < i1 && be < j1 && orig[ae] == rev[be])
+                        {
+                            rc = Math.min(rc, count[orig[ae]]);
+                            ae++;
+                            be++;
+                        }
+
+                        if (nextJ < be)
+                            nextJ = be;
+                        if (bestLength < ae - as || rc < lowCount)
+                        {
+                            bestI = as;
+                            bestJ = bs;
+                            bestLength = ae - as;
+                            lowCount = rc;
+                        }
+
+                        // the occurrences inside this region would only
+                        // give shorter regions
+                        while (next[p - 1] != 0 && next[p - 1] - 1 < ae)
+                            p = next[p - 1];
+                    }
+                }
+                j = nextJ;
+            }
+            clear(i0, i1);
+
+            if (bestLength > 0)
+            {
+                push(REGION, bestI + bestLength, i1, bestJ + bestLength, j1);
+                push(RUN, bestI, bestI + bestLength, bestJ, bestJ
+                        + bestLength);
+                push(REGION, i0, bestI, j0, bestJ);
+            }
+            else if (tooCommon)
+            {
+                MyersDiff.buildMatches(orig, i0, i1, rev, j0, j1,
+                        MyersDiff.UNBOUNDED, options, matches);
+            }
+        }
+
+        /**
+         * Builds the histogram of <code>orig[i0..i1)</code>, leaving out
+         * the chains of the items that occur too many times.
+         */
+        void index(int i0, int i1)
+        {
+            for (int i = i1 - 1; i >= i0; i--)
+            {
+                int t = orig[i];
+                count[t]++;
+                next[i] = head[t];
+                head[t] = i + 1;
+            }
+            for (int i = i0; i < i1; i++)
+            {
+                if (count[orig[i]] > maxChainLength)
+                    head[orig[i]] = 0;
+            }
+        }
+
+        /**
+         * Clears the histogram of <code>orig[i0..i1)</code>.
+         */
+        void clear(int i0, int i1)
+        {
+            for (int i = i0; i < i1; i++)
+            {
+                count[orig[i]] = 0;
+                head[orig[i]] = 0;
+            }
+        }
+    }
+}
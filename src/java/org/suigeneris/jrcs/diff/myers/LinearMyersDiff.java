@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.myers;
+
+import org.suigeneris.jrcs.diff.*;
+
+/**
+ * The linear space variant of <a
+ * href="http://www.cs.arizona.edu/people/gene/"> Eugene Myers</a>
+ * differencing algorithm.
+ * <p>
+ * Instead of keeping the whole diffpath in memory, as {@link MyersDiff} does,
+ * this implementation searches simultaneously from both ends of the input
+ * sequences until the two searches meet at a <i>middle snake</i>, and then
+ * recurses on the parts before and after it (section 4b of the paper). The
+ * only working storage are two diagonal vectors of <code>2*(N+M)</code>
+ * integers that are reused at every level of the recursion, and the list of
+ * matching runs found, so no {@link PathNode PathNodes} are created.
+ * <p>
+ * The result is a minimum {@link Revision}, just like the one computed by
+ * {@link MyersDiff}. When there are several minimum scripts the two
+ * implementations may choose differently among them.
+ *
+ * @version $Revision$ $Date$
+ * @see MyersDiff
+ * @see Revision
+ * @see Diff
+ */
+public class LinearMyersDiff implements TrimmableDiffAlgorithm
+{
+    /**
+     * Constructs an instance of the linear space Myers differencing
+     * algorithm.
+     */
+    public LinearMyersDiff()
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Revision diff(Object[] orig, Object[] rev)
+            throws DifferentiationFailedException
+    {
+        return diff(orig, rev, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Revision diff(Object[] orig, Object[] rev, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("original sequence is null");
+        if (rev == null)
+            throw new IllegalArgumentException("revised sequence is null");
+
+        DiffContext context = DiffContext.acquire();
+        try
+        {
+            Tokens tokens = context.intern(orig, rev);
+            Search search = new Search(tokens.orig, orig.length, tokens.rev,
+                    rev.length, context, options);
+            search.compare(0, orig.length, 0, rev.length);
+            return search.matches.toRevision(orig, rev);
+        }
+        finally
+        {
+            context.release();
+        }
+    }
+
+    /**
+     * The state of one differencing run: the input sequences as
+     * {@link Tokens tokens}, the diagonal vectors shared by all the levels of
+     * the recursion, and the matching runs found so far, in order.
+     */
+    static final class Search
+    {
+        final int[] orig;
+        final int[] rev;
+        final DiffOptions options;
+
+        /** Furthest reaching x for each diagonal, searching forward. */
+        final int[] fwd;
+        /** Furthest reaching x for each diagonal, searching backward. */
+        final int[] bwd;
+        /** Index of diagonal zero in the vectors. */
+        final int offset;
+
+        /** The matching runs found so far. */
+        final Matches matches;
+
+        Search(int[] orig, int N, int[] rev, int M, DiffContext context,
+                DiffOptions options)
+        {
+            this.orig = orig;
+            this.rev = rev;
+            this.options = options;
+            this.offset = (N + M + 1) / 2 + 1;
+            this.fwd = context.vector(2 * offset + 1);
+            this.bwd = context.vector2(2 * offset + 1);
+            this.matches = context.matches();
+        }
+
+        /**
+         * Finds the matching runs between
+         * <code>orig[i0..i1)</code> and <code>rev[j0..j1)</code>.
+         */
+        void compare(int i0, int i1, int j0, int j1)
+                throws DifferentiationFailedException
+        {
+            // strip the common prefix and suffix
+            int start = i0;
+            int prefix = Mismatch.forward(orig, i0, rev, j0, Math.min(i1 - i0,
+                    j1 - j0));
+            i0 += prefix;
+            j0 += prefix;
+            matches.add(start, j0 - (i0 - start), i0 - start);
+
+            int end = i1;
+            int suffix = Mismatch.backward(orig, i1, rev, j1, Math.min(i1 - i0,
+                    j1 - j0));
+            i1 -= suffix;
+            j1 -= suffix;
+
+            // if either side is empty the rest is all inserts or deletes,
+            // otherwise the edit distance is at least two and the split
+            // point divides it in halves
+            if (i0 < i1 && j0 < j1)
+            {
+                long split = middleSnake(i0, i1, j0, j1);
+                int x = (int) (split >>> 32);
+                int y = (int) split;
+                compare(i0, x, j0, y);
+                compare(x, i1, y, j1);
+            }
+
+            matches.add(i1, j1, end - i1);
+        }
+
+        /**
+         * Finds a point on a minimum diffpath between
+         * <code>orig[i0..i1)</code> and <code>rev[j0..j1)</code> by
+         * running the forward and backward searches until they overlap.
+         *
+         * @return the point, with the position in the original sequence in
+         *         the high 32 bits, and the one in the revised sequence in the
+         *         low 32 bits.
+         */
+        long middleSnake(int i0, int i1, int j0, int j1)
+                throws DifferentiationFailedException
+        {
+            // these are local constants
+            final int N = i1 - i0;
+            final int M = j1 - j0;
+            final int delta = N - M;
+            final boolean odd = (delta & 1) != 0;
+            final int MAX = (N + M + 1) / 2;
+            final int mid = offset;
+
+            // positions are relative to (i0, j0)
+            fwd[mid + 1] = 0;
+            bwd[mid - 1] = N;
+            for (int d = 0; d <= MAX; d++)
+            {
+                DiffOptions.check(options);
+                for (int k = -d; k <= d; k += 2)
+                {
+                    int x;
+                    if (k == -d
+                            || (k != d && fwd[mid + k - 1] < fwd[mid + k + 1]))
+                        x = fwd[mid + k + 1];
+                    else
+                        x = fwd[mid + k - 1] + 1;
+                    int y = x - k;
+                    int snake = Mismatch.forward(orig, i0 + x, rev, j0 + y,
+                            Math.min(N - x, M - y));
+                    x += snake;
+                    y += snake;
+                    fwd[mid + k] = x;
+
+                    // the backward search is one step behind
+                    int c = k - delta;
+                    if (odd && c >= -(d - 1) && c <= d - 1
+                            && bwd[mid + c] <= x)
+                        return point(i0 + x, j0 + y);
+                }
+
+                // the backward diagonals are numbered relative to delta
+                for (int c = -d; c <= d; c += 2)
+                {
+                    int x;
+                    if (c == d
+                            || (c != -d && bwd[mid + c - 1] < bwd[mid + c + 1]))
+                        x = bwd[mid + c - 1];
+                    else
+                        x = bwd[mid + c + 1] - 1;
+                    int k = c + delta;
+                    int y = x - k;
+                    int snake = Mismatch.backward(orig, i0 + x, rev, j0 + y,
+                            Math.min(x, y));
+                    x -= snake;
+                    y -= snake;
+                    bwd[mid + c] = x;
+
+                    if (!odd && k >= -d && k <= d && x <= fwd[mid + k])
+                        return point(i0 + x, j0 + y);
+                }
+            }
+            // According to Myers, this cannot happen
+            throw new DifferentiationFailedException(
+                    "could not find a middle snake");
+        }
+
+        static long point(int i, int j)
+        {
+            return ((long) i << 32) | (j & 0xFFFFFFFFL);
+        }
+    }
+}
@@ -15,8 +15,6 @@
 package org.suigeneris.jrcs.diff.myers;
 
 import org.suigeneris.jrcs.diff.*;
-import org.suigeneris.jrcs.diff.delta.Chunk;
-import org.suigeneris.jrcs.diff.delta.Delta;
 
 /**
  * A clean-room implementation of <a
@@ -35,11 +33,48 @@ import org.suigeneris.jrcs.diff.delta.Delta;
  */
 public class MyersDiff implements DiffAlgorithm
 {
+    /**
+     * The cost that means no limit on the number of differences explored.
+     */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    /**
+     * The largest number of entries of the trace of a search, beyond which
+     * the path is found with linked nodes instead.
+     */
+    static final int MAX_TRACE = 1 << 20;
+
+    private final int maxCost;
+
     /**
      * Constructs an instance of the Myers differencing algorithm.
      */
     public MyersDiff()
     {
+        this(UNBOUNDED);
+    }
+
+    /**
+     * Constructs an instance of the Myers differencing algorithm that gives
+     * up looking for a minimum diff when it is too expensive.
+     * <p>
+     * When more than <code>maxCost</code> differences have been explored
+     * without reaching the end of the sequences, the path to the point
+     * farthest from the start is taken as it is, and the search starts again
+     * from there. As in GNU diff, this bounds the time taken by sequences
+     * that have little in common to about <code>(N + M) * maxCost</code>
+     * steps. The revisions produced this way are valid, but may not be
+     * minimum ones, and are flagged as {@link Revision#isApproximate()
+     * approximate}.
+     * 
+     * @param maxCost
+     *            the maximum number of differences explored in one search.
+     */
+    public MyersDiff(int maxCost)
+    {
+        if (maxCost < 1)
+            throw new IllegalArgumentException("maxCost < 1");
+        this.maxCost = maxCost;
     }
 
     /**
@@ -48,14 +83,56 @@ public class MyersDiff implements DiffAlgorithm
     public Revision diff(Object[] orig, Object[] rev)
             throws DifferentiationFailedException
     {
-        PathNode path = buildPath(orig, rev);
-        return buildRevision(path, orig, rev);
+        return diff(orig, rev, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Revision diff(Object[] orig, Object[] rev, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("original sequence is null");
+        if (rev == null)
+            throw new IllegalArgumentException("revised sequence is null");
+
+        DiffContext context = DiffContext.acquire();
+        try
+        {
+            Tokens tokens = context.intern(orig, rev);
+            Matches matches = context.matches();
+            if (maxCost == UNBOUNDED)
+            {
+                if (traceMatches(tokens.orig, orig.length, tokens.rev,
+                        rev.length, context, options, matches))
+                    return matches.toRevision(orig, rev);
+
+                PathNode path = buildPath(tokens.orig, 0, orig.length,
+                        tokens.rev, 0, rev.length, UNBOUNDED, options);
+                return buildRevision(path, orig, rev);
+            }
+
+            boolean approximate = buildMatches(tokens.orig, 0, orig.length,
+                    tokens.rev, 0, rev.length, maxCost, options, matches);
+            Revision revision = matches.toRevision(orig, rev);
+            revision.setApproximate(approximate);
+            return revision;
+        }
+        finally
+        {
+            context.release();
+        }
     }
 
     /**
      * Computes the minimum diffpath that expresses de differences between the
      * original and revised sequences, according to Gene Myers differencing
      * algorithm.
+     * <p>
+     * The sequences are first translated to {@link Tokens tokens}, so that
+     * the search compares integers instead of calling
+     * {@link Object#equals equals()}.
      * 
      * @param orig
      *            The original sequence.
@@ -73,18 +150,88 @@ public class MyersDiff implements DiffAlgorithm
         if (rev == null)
             throw new IllegalArgumentException("revised sequence is null");
 
-        // these are local constants
-        final int N = orig.length;
-        final int M = rev.length;
+        Tokens tokens = Tokens.intern(orig, rev);
+        return buildPath(tokens.orig, tokens.rev);
+    }
+
+    /**
+     * Computes the minimum diffpath that expresses de differences between the
+     * original and revised sequences, according to Gene Myers differencing
+     * algorithm.
+     * 
+     * @param orig
+     *            The original sequence, as tokens.
+     * @param rev
+     *            The revised sequence, as tokens.
+     * @return A minimum {@link PathNode Path} accross the differences graph.
+     * @throws DifferentiationFailedException
+     *             if a diff path could not be found.
+     * @see Tokens
+     */
+    public static PathNode buildPath(int[] orig, int[] rev)
+            throws DifferentiationFailedException
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("original sequence is null");
+        if (rev == null)
+            throw new IllegalArgumentException("revised sequence is null");
+
+        return buildPath(orig, 0, orig.length, rev, 0, rev.length,
+                UNBOUNDED, null);
+    }
 
-        final int MAX = N + M + 1;
+    /**
+     * Computes a diffpath between <code>orig[i0..i1)</code> and
+     * <code>rev[j0..j1)</code>, exploring at most the given number of
+     * differences.
+     * <p>
+     * If the end of the ranges can't be reached within the given cost, the
+     * path to the point farthest from the start that could be reached is
+     * returned instead.
+     * 
+     * @param orig
+     *            The original sequence, as tokens.
+     * @param i0
+     *            The start of the range in the original sequence.
+     * @param i1
+     *            The end of the range in the original sequence.
+     * @param rev
+     *            The revised sequence, as tokens.
+     * @param j0
+     *            The start of the range in the revised sequence.
+     * @param j1
+     *            The end of the range in the revised sequence.
+     * @param maxCost
+     *            The maximum number of differences to explore.
+     * @param options
+     *            The deadline and cancellation flag to check, or
+     *            <code>null</code>.
+     * @return A {@link PathNode Path} accross the differences graph, with
+     *         positions relative to the start of the ranges.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the search was cancelled.
+     * @throws DifferentiationFailedException
+     *             if a diff path could not be found.
+     */
+    static PathNode buildPath(int[] orig, int i0, int i1, int[] rev, int j0,
+            int j1, int maxCost, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        // these are local constants
+        final int N = i1 - i0;
+        final int M = j1 - j0;
+        final int limit = bound(orig, i0, i1, rev, j0, j1);
+        final int MAX = (maxCost < limit - 1 ? Math.max(2, maxCost + 1)
+                : limit);
         final int size = 1 + 2 * MAX;
         final int middle = (size + 1) / 2;
         final PathNode diagonal[] = new PathNode[size];
 
+        PathNode farthest = null;
         diagonal[middle + 1] = new Snake(0, -1, null);
         for (int d = 0; d < MAX; d++)
         {
+            DiffOptions.check(options);
             for (int k = -d; k <= d; k += 2)
             {
                 final int kmiddle = middle + k;
@@ -114,11 +261,10 @@ public class MyersDiff implements DiffAlgorithm
                 // orig and rev are zero-based
                 // but the algorithm is one-based
                 // that's why there's no +1 when indexing the sequences
-                while (i < N && j < M && orig[i].equals(rev[j]))
-                {
-                    i++;
-                    j++;
-                }
+                int snake = Mismatch.forward(orig, i0 + i, rev, j0 + j, Math
+                        .min(N - i, M - j));
+                i += snake;
+                j += snake;
                 if (i > node.i)
                     node = new Snake(i, j, node);
 
@@ -126,15 +272,417 @@ public class MyersDiff implements DiffAlgorithm
                 {
                     return node;
                 }
-                
+
+                if (d == MAX - 1 && i <= N && j <= M
+                        && (farthest == null
+                                || i + j > farthest.i + farthest.j))
+                    farthest = node;
+
                 diagonal[kmiddle] = node;
             }
             diagonal[middle + d - 1] = null;
         }
+        if (maxCost < UNBOUNDED && farthest != null)
+            return farthest;
         // According to Myers, this cannot happen
         throw new DifferentiationFailedException("could not find a diff path");
     }
 
+    /**
+     * Returns the number of costs a search between <code>orig[i0..i1)</code>
+     * and <code>rev[j0..j1)</code> must explore to be sure to reach the end.
+     */
+    private static int bound(int[] orig, int i0, int i1, int[] rev, int j0,
+            int j1)
+    {
+        final int N = i1 - i0;
+        final int M = j1 - j0;
+
+        // the common prefix and suffix are traversed as snakes, so the
+        // number of differences is bounded by the size of the window
+        // between them, and so is the number of diagonals explored
+        int prefix = Mismatch.forward(orig, i0, rev, j0, Math.min(N, M));
+        int suffix = Mismatch.backward(orig, i1, rev, j1, Math.min(N, M)
+                - prefix);
+
+        // (but leave room for the bootstrap snake even if there are none)
+        return Math.max(2, N + M - 2 * (prefix + suffix) + 1);
+    }
+
+    /**
+     * Adds the matches of the same minimum diffpath that
+     * {@link #buildPath(int[], int[])} finds to a list of {@link Matches},
+     * using the buffers of a {@link DiffContext} instead of linking
+     * {@link PathNode path nodes}.
+     * <p>
+     * The furthest reaching point of every diagonal explored at each cost is
+     * kept in a trace, and the path is recovered walking the trace backwards.
+     * The trace grows with the square of the number of differences, so the
+     * search is abandoned when it would need more than
+     * {@link #MAX_TRACE} entries.
+     * 
+     * @return false if the search was abandoned, in which case no matches
+     *         were added.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the search was cancelled.
+     * @throws DifferentiationFailedException
+     *             if a diff path could not be found.
+     */
+    static boolean traceMatches(int[] orig, int N, int[] rev, int M,
+            DiffContext context, DiffOptions options, Matches matches)
+            throws DifferentiationFailedException
+    {
+        final int MAX = bound(orig, 0, N, rev, 0, M);
+        final int middle = MAX;
+        final int[] v = context.vector(2 * MAX + 1);
+
+        // the points for cost d start at d * (d + 1) / 2 in the trace
+        int[] trace = null;
+        v[middle + 1] = 0;
+        for (int d = 0; d < MAX; d++)
+        {
+            DiffOptions.check(options);
+            int base = d * (d + 1) / 2;
+            if (base + d + 1 > MAX_TRACE)
+                return false;
+            trace = context.trace(base + d + 1);
+
+            for (int k = -d; k <= d; k += 2)
+            {
+                int i;
+                if ((k == -d)
+                        || (k != d && v[middle + k - 1] < v[middle + k + 1]))
+                    i = v[middle + k + 1];
+                else
+                    i = v[middle + k - 1] + 1;
+                int j = i - k;
+                int snake = Mismatch.forward(orig, i, rev, j, Math.min(N - i, M
+                        - j));
+                i += snake;
+                j += snake;
+                v[middle + k] = i;
+                trace[base + (k + d) / 2] = i;
+
+                if (i >= N && j >= M)
+                {
+                    addTrace(trace, d, k, context, matches);
+                    return true;
+                }
+            }
+        }
+        // According to Myers, this cannot happen
+        throw new DifferentiationFailedException("could not find a diff path");
+    }
+
+    /**
+     * Adds the matches of a minimum diff between the first <code>N</code>
+     * tokens of <code>orig</code> and the first <code>M</code> tokens of
+     * <code>rev</code> to a list of {@link Matches}, using the buffers of a
+     * {@link DiffContext} when the differences are few enough.
+     * <p>
+     * The <code>vector</code>, <code>vector2</code> and <code>trace</code>
+     * buffers of the context are overwritten.
+     * 
+     * @param orig
+     *            The original sequence, as tokens.
+     * @param N
+     *            The number of tokens in the original sequence.
+     * @param rev
+     *            The revised sequence, as tokens.
+     * @param M
+     *            The number of tokens in the revised sequence.
+     * @param context
+     *            The context whose buffers are used.
+     * @param options
+     *            The deadline and cancellation flag to check, or
+     *            <code>null</code>.
+     * @param matches
+     *            Where to add the matches.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the search was cancelled.
+     * @throws DifferentiationFailedException
+     *             if a diff path could not be found.
+     */
+    public static void buildMatches(int[] orig, int N, int[] rev, int M,
+            DiffContext context, DiffOptions options, Matches matches)
+            throws DifferentiationFailedException
+    {
+        if (!traceMatches(orig, N, rev, M, context, options, matches))
+            buildMatches(orig, 0, N, rev, 0, M, UNBOUNDED, options, matches);
+    }
+
+    /**
+     * Walks a trace back from the point reached at the given cost and
+     * diagonal, and adds the snakes found on the way to a list of
+     * {@link Matches}.
+     */
+    private static void addTrace(int[] trace, int d, int k,
+            DiffContext context, Matches matches)
+    {
+        // the snakes are found from the end to the start, as (i, j, length)
+        int[] snakes = context.vector2(3 * (d + 1));
+        int n = 0;
+        for (; d > 0; d--)
+        {
+            // cost d starts at base, and cost d - 1 at prev
+            int base = d * (d + 1) / 2;
+            int prev = base - d;
+            int end = trace[base + (k + d) / 2];
+
+            // make the same choice the forward search made
+            int from;
+            int start;
+            if ((k == -d)
+                    || (k != d && trace[prev + (k + d - 2) / 2] < trace[prev
+                            + (k + d) / 2]))
+            {
+                from = k + 1;
+                start = trace[prev + (k + d) / 2];
+            }
+            else
+            {
+                from = k - 1;
+                start = trace[prev + (k + d - 2) / 2] + 1;
+            }
+
+            if (end > start)
+            {
+                snakes[n++] = start;
+                snakes[n++] = start - k;
+                snakes[n++] = end - start;
+            }
+            k = from;
+        }
+        if (trace[0] > 0)
+        {
+            snakes[n++] = 0;
+            snakes[n++] = 0;
+            snakes[n++] = trace[0];
+        }
+        while (n > 0)
+        {
+            n -= 3;
+            matches.add(snakes[n], snakes[n + 1], snakes[n + 2]);
+        }
+    }
+
+    /**
+     * Adds the snakes in a difference path to a list of {@link Matches}.
+     * 
+     * @param path
+     *            The path.
+     * @param ioffset
+     *            The position in the original sequence that corresponds to
+     *            the start of the path.
+     * @param joffset
+     *            The position in the revised sequence that corresponds to
+     *            the start of the path.
+     * @param matches
+     *            Where to add the snakes.
+     */
+    public static void buildMatches(PathNode path, int ioffset, int joffset,
+            Matches matches)
+    {
+        if (path == null)
+            throw new IllegalArgumentException("path is null");
+
+        // the path goes from the end to the start, but matches are added
+        // from the start to the end
+        int count = 0;
+        for (PathNode node = path; node != null; node = node.prev)
+        {
+            if (node.isSnake() && node.prev != null)
+                count++;
+        }
+        PathNode[] snakes = new PathNode[count];
+        for (PathNode node = path; node != null; node = node.prev)
+        {
+            if (node.isSnake() && node.prev != null)
+                snakes[--count] = node;
+        }
+        for (int s = 0; s < snakes.length; s++)
+        {
+            PathNode start = snakes[s].prev;
+            matches.add(ioffset + start.i, joffset + start.j, snakes[s].i
+                    - start.i);
+        }
+    }
+
+    /**
+     * Adds the matches found by Myers' algorithm between
+     * <code>orig[i0..i1)</code> and <code>rev[j0..j1)</code> to a list of
+     * {@link Matches}, exploring at most the given number of differences in
+     * each search.
+     * 
+     * @param orig
+     *            The original sequence, as tokens.
+     * @param i0
+     *            The start of the range in the original sequence.
+     * @param i1
+     *            The end of the range in the original sequence.
+     * @param rev
+     *            The revised sequence, as tokens.
+     * @param j0
+     *            The start of the range in the revised sequence.
+     * @param j1
+     *            The end of the range in the revised sequence.
+     * @param maxCost
+     *            The maximum number of differences explored in one search, or
+     *            {@link #UNBOUNDED}.
+     * @param options
+     *            The deadline and cancellation flag to check, or
+     *            <code>null</code>.
+     * @param matches
+     *            Where to add the matches.
+     * @return true if the search was cut short, so the matches may not be
+     *         the longest possible ones.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the search was cancelled.
+     * @throws DifferentiationFailedException
+     *             if a diff path could not be found.
+     * @see #MyersDiff(int)
+     */
+    public static boolean buildMatches(int[] orig, int i0, int i1,
+            int[] rev, int j0, int j1, int maxCost, DiffOptions options,
+            Matches matches)
+            throws DifferentiationFailedException
+    {
+        // the common prefix and suffix are matched once, so that the
+        // searches restarted from the farthest point reached only walk the
+        // window between them
+        int common = Math.min(i1 - i0, j1 - j0);
+        int prefix = Mismatch.forward(orig, i0, rev, j0, common);
+        int suffix = Mismatch.backward(orig, i1, rev, j1, common - prefix);
+        if (prefix > 0)
+            matches.add(i0, j0, prefix);
+        i0 += prefix;
+        j0 += prefix;
+        i1 -= suffix;
+        j1 -= suffix;
+
+        boolean approximate = false;
+        while (i0 < i1 || j0 < j1)
+        {
+            PathNode path = buildPath(orig, i0, i1, rev, j0, j1, maxCost,
+                    options);
+            buildMatches(path, i0, j0, matches);
+            if (i0 + path.i >= i1 && j0 + path.j >= j1)
+                break;
+
+            // too expensive: take the path as far as it got
+            approximate = true;
+            i0 += path.i;
+            j0 += path.j;
+        }
+        if (suffix > 0)
+            matches.add(i1, j1, suffix);
+        return approximate;
+    }
+
+    /**
+     * Computes the number of items inserted and deleted by a minimum diff
+     * between <code>orig[i0..i1)</code> and <code>rev[j0..j1)</code>, if it
+     * is not greater than the given maximum.
+     * <p>
+     * Only the diagonals <code>[-max, max]</code> are explored, and the search
+     * stops as soon as the distance is known to be greater than
+     * <code>max</code>, so it takes <code>O((N + M) * max)</code> steps at
+     * most. No path is recorded.
+     * 
+     * @param orig
+     *            The original sequence.
+     * @param i0
+     *            The start of the range in the original sequence.
+     * @param i1
+     *            The end of the range in the original sequence.
+     * @param rev
+     *            The revised sequence.
+     * @param j0
+     *            The start of the range in the revised sequence.
+     * @param j1
+     *            The end of the range in the revised sequence.
+     * @param max
+     *            The largest distance of interest.
+     * @param options
+     *            The deadline and cancellation flag to check, or
+     *            <code>null</code>.
+     * @return The distance, or <code>-1</code> if it is greater than
+     *         <code>max</code>.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the search was cancelled.
+     */
+    public static int distance(Object[] orig, int i0, int i1, Object[] rev,
+            int j0, int j1, int max, DiffOptions options)
+            throws DiffTimeoutException
+    {
+        return band(orig, i0, i1, rev, j0, j1, max, options);
+    }
+
+    /**
+     * Computes the number of items inserted and deleted by a minimum diff
+     * between two ranges of token sequences, if it is not greater than the
+     * given maximum.
+     * 
+     * @return The distance, or <code>-1</code> if it is greater than
+     *         <code>max</code>.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the search was cancelled.
+     * @see #distance(Object[], int, int, Object[], int, int, int, DiffOptions)
+     */
+    public static int distance(int[] orig, int i0, int i1, int[] rev,
+            int j0, int j1, int max, DiffOptions options)
+            throws DiffTimeoutException
+    {
+        return band(orig, i0, i1, rev, j0, j1, max, options);
+    }
+
+    /**
+     * Runs the search of {@link #distance distance()} on sequences of
+     * objects or of tokens, which are told apart by their type only to
+     * measure the snakes.
+     */
+    private static int band(Object orig, int i0, int i1, Object rev, int j0,
+            int j1, int max, DiffOptions options) throws DiffTimeoutException
+    {
+        final int N = i1 - i0;
+        final int M = j1 - j0;
+        if (max < 0 || Math.abs(N - M) > max)
+            return -1;
+        max = Math.min(max, N + M);
+
+        final int middle = max + 1;
+        final int[] v = new int[2 * max + 3];
+        v[middle + 1] = 0;
+        for (int d = 0; d <= max; d++)
+        {
+            DiffOptions.check(options);
+            for (int k = -d; k <= d; k += 2)
+            {
+                int i;
+                if ((k == -d)
+                        || (k != d && v[middle + k - 1] < v[middle + k + 1]))
+                    i = v[middle + k + 1];
+                else
+                    i = v[middle + k - 1] + 1;
+                int j = i - k;
+                int snake;
+                if (orig instanceof int[])
+                    snake = Mismatch.forward((int[]) orig, i0 + i,
+                            (int[]) rev, j0 + j, Math.min(N - i, M - j));
+                else
+                    snake = Mismatch.forward((Object[]) orig, i0 + i,
+                            (Object[]) rev, j0 + j, Math.min(N - i, M - j));
+                i += snake;
+                j += snake;
+                v[middle + k] = i;
+
+                if (i >= N && j >= M)
+                    return d;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Constructs a {@link Revision} from a difference path.
      * 
@@ -158,7 +706,10 @@ public class MyersDiff implements DiffAlgorithm
         if (rev == null)
             throw new IllegalArgumentException("revised sequence is null");
 
-        Revision revision = new Revision();
+        // the path goes from the end to the start, so the hunks are
+        // collected as (i, n, j, m) and added backwards
+        int[] hunks = new int[4 * 16];
+        int n = 0;
         if (path.isSnake())
             path = path.prev;
         while (path != null && path.prev != null && path.prev.j >= 0)
@@ -173,12 +724,26 @@ public class MyersDiff implements DiffAlgorithm
             int ianchor = path.i;
             int janchor = path.j;
 
-            Delta delta = Delta.newDelta(new Chunk(orig, ianchor, i - ianchor),
-                    new Chunk(rev, janchor, j - janchor));
-            revision.insertDelta(delta);
+            if (n == hunks.length)
+            {
+                int[] grown = new int[2 * hunks.length];
+                System.arraycopy(hunks, 0, grown, 0, n);
+                hunks = grown;
+            }
+            hunks[n++] = ianchor;
+            hunks[n++] = i - ianchor;
+            hunks[n++] = janchor;
+            hunks[n++] = j - janchor;
             if (path.isSnake())
                 path = path.prev;
         }
+        CompactRevision revision = new CompactRevision(orig, rev);
+        while (n > 0)
+        {
+            n -= 4;
+            revision.addHunk(hunks[n], hunks[n + 1], hunks[n + 2],
+                    hunks[n + 3]);
+        }
         return revision;
     }
 
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.parallel;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.suigeneris.jrcs.diff.CompactRevision;
+import org.suigeneris.jrcs.diff.DiffAlgorithm;
+import org.suigeneris.jrcs.diff.DiffOptions;
+import org.suigeneris.jrcs.diff.DifferentiationFailedException;
+import org.suigeneris.jrcs.diff.Revision;
+import org.suigeneris.jrcs.diff.Tokens;
+import org.suigeneris.jrcs.diff.delta.Delta;
+import org.suigeneris.jrcs.diff.patience.PatienceDiff;
+
+/**
+ * Differences large sequences in parallel, using another algorithm for the
+ * actual work.
+ * <p>
+ * <b>Overview of Algorithm</b>
+ * </p>
+ * <p>
+ * The items that occur exactly once in each sequence, and in the same order,
+ * are found as in {@link PatienceDiff}. Those anchors are matched, and the
+ * sequences are cut at some of them into segments of about the configured
+ * size, which are independent of each other. The segments are then differenced
+ * with the given algorithm on a {@link ForkJoinPool}, and the deltas found in
+ * each of them are displaced to their positions in the complete sequences,
+ * without creating delta objects when the algorithm gives a
+ * {@link CompactRevision}.
+ * </p>
+ * <p>
+ * The result is a valid revision, but it is a minimum one only if the
+ * minimum diff of the complete sequences matches all the anchors, which is
+ * usually the case for versions of the same text. Sequences smaller than two
+ * segments, or without anchors, are passed to the algorithm as they are.
+ * </p>
+ *
+ * @version $Revision$ $Date$
+ * @see PatienceDiff
+ * @see Revision
+ */
+public class ParallelDiff implements DiffAlgorithm
+{
+    /**
+     * The default combined size of the segments.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16384;
+
+    private final DiffAlgorithm algorithm;
+
+    private final ForkJoinPool pool;
+
+    private final int segmentSize;
+
+    /**
+     * Constructs a parallel differencing algorithm that runs on the common
+     * pool.
+     *
+     * @param algorithm
+     *            the algorithm used to difference the segments.
+     */
+    public ParallelDiff(DiffAlgorithm algorithm)
+    {
+        this(algorithm, ForkJoinPool.commonPool(), DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructs a parallel differencing algorithm.
+     *
+     * @param algorithm
+     *            the algorithm used to difference the segments.
+     * @param pool
+     *            the pool the segments are differenced on.
+     * @param segmentSize
+     *            the minimum combined size of the original and revised parts
+     *            of a segment.
+     */
+    public ParallelDiff(DiffAlgorithm algorithm, ForkJoinPool pool,
+            int segmentSize)
+    {
+        if (algorithm == null)
+            throw new IllegalArgumentException("algorithm is null");
+        if (pool == null)
+            throw new IllegalArgumentException("pool is null");
+        if (segmentSize < 1)
+            throw new IllegalArgumentException("segmentSize < 1");
+        this.algorithm = algorithm;
+        this.pool = pool;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Revision diff(Object[] orig, Object[] rev)
+            throws DifferentiationFailedException
+    {
+        return diff(orig, rev, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Revision diff(Object[] orig, Object[] rev, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("original sequence is null");
+        if (rev == null)
+            throw new IllegalArgumentException("revised sequence is null");
+
+        if (orig.length + rev.length < 2 * segmentSize)
+            return algorithm.diff(orig, rev, options);
+
+        int[] anchors = PatienceDiff.anchors(Tokens.intern(orig, rev));
+        if (anchors == null)
+            return algorithm.diff(orig, rev, options);
+
+        // the segments, as (i0, i1, j0, j1) tuples; the anchor between two
+        // segments belongs to neither
+        int[] bounds = new int[4 * (anchors.length / 2 + 1)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        for (int a = 0; a < anchors.length; a += 2)
+        {
+            int x = anchors[a];
+            int y = anchors[a + 1];
+            if ((x - i) + (y - j) >= segmentSize
+                    && (orig.length - x) + (rev.length - y) >= segmentSize)
+            {
+                bounds[n++] = i;
+                bounds[n++] = x;
+                bounds[n++] = j;
+                bounds[n++] = y;
+                i = x + 1;
+                j = y + 1;
+            }
+        }
+        bounds[n++] = i;
+        bounds[n++] = orig.length;
+        bounds[n++] = j;
+        bounds[n++] = rev.length;
+
+        int segments = n / 4;
+        if (segments == 1)
+            return algorithm.diff(orig, rev, options);
+
+        Segments task = new Segments(orig, rev, options, bounds,
+                new Revision[segments], 0, segments);
+        pool.invoke(task);
+        if (task.failure != null)
+            throw task.failure;
+
+        CompactRevision result = new CompactRevision(orig, rev);
+        for (int s = 0; s < segments; s++)
+        {
+            Revision revision = task.results[s];
+            int i0 = bounds[4 * s];
+            int j0 = bounds[4 * s + 2];
+            if (revision instanceof CompactRevision)
+            {
+                CompactRevision compact = (CompactRevision) revision;
+                for (int d = 0; d < compact.size(); d++)
+                    result.addHunk(compact.origAnchor(d) + i0, compact
+                            .origCount(d), compact.revAnchor(d) + j0, compact
+                            .revCount(d));
+            }
+            else
+            {
+                for (int d = 0; d < revision.size(); d++)
+                {
+                    Delta delta = revision.getDelta(d);
+                    delta.getOriginal().shift(i0);
+                    if (delta.getRevised() != null)
+                        delta.getRevised().shift(j0);
+                    result.addDelta(delta);
+                }
+            }
+            if (revision.isApproximate())
+                result.setApproximate(true);
+        }
+        return result;
+    }
+
+    /**
+     * Differences a range of segments, splitting it in halves until a single
+     * segment is left.
+     */
+    final class Segments extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        final Object[] orig;
+        final Object[] rev;
+        final DiffOptions options;
+        final int[] bounds;
+        final Revision[] results;
+        final int from;
+        final int to;
+
+        DifferentiationFailedException failure;
+
+        Segments(Object[] orig, Object[] rev, DiffOptions options,
+                int[] bounds, Revision[] results, int from, int to)
+        {
+            this.orig = orig;
+            this.rev = rev;
+            this.options = options;
+            this.bounds = bounds;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute()
+        {
+            if (to - from > 1)
+            {
+                int mid = (from + to) >>> 1;
+                Segments left = new Segments(orig, rev, options, bounds,
+                        results, from, mid);
+                Segments right = new Segments(orig, rev, options, bounds,
+                        results, mid, to);
+                invokeAll(left, right);
+                failure = (left.failure != null ? left.failure
+                        : right.failure);
+                return;
+            }
+
+            int i0 = bounds[4 * from];
+            int i1 = bounds[4 * from + 1];
+            int j0 = bounds[4 * from + 2];
+            int j1 = bounds[4 * from + 3];
+            Object[] a = new Object[i1 - i0];
+            Object[] b = new Object[j1 - j0];
+            System.arraycopy(orig, i0, a, 0, a.length);
+            System.arraycopy(rev, j0, b, 0, b.length);
+            try
+            {
+                results[from] = algorithm.diff(a, b, options);
+            }
+            catch (DifferentiationFailedException e)
+            {
+                failure = e;
+            }
+        }
+    }
+}
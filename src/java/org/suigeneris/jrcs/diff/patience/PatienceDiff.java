@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.patience;
+
+import org.suigeneris.jrcs.diff.DiffOptions;
+import org.suigeneris.jrcs.diff.DifferentiationFailedException;
+import org.suigeneris.jrcs.diff.Matches;
+import org.suigeneris.jrcs.diff.Mismatch;
+import org.suigeneris.jrcs.diff.Revision;
+import org.suigeneris.jrcs.diff.Tokens;
+import org.suigeneris.jrcs.diff.TrimmableDiffAlgorithm;
+import org.suigeneris.jrcs.diff.myers.MyersDiff;
+
+/**
+ * Implements the patience differencing algorithm.
+ * <p>
+ * <b>Overview of Algorithm</b>
+ * </p>
+ * <p>
+ * The items that occur exactly once in the original sequence and exactly once
+ * in the revised sequence are taken as candidate anchors. Of those, the
+ * longest subsequence that appears in the same order in both sequences is
+ * chosen using patience sorting, which gives the algorithm its name. The
+ * anchors are matched, and the algorithm is applied again to each of the gaps
+ * between them, where items that were repeated in the whole sequences may now
+ * be unique.
+ * </p>
+ * <p>
+ * Gaps that are small, or that have no unique items in common, are
+ * differenced with {@link MyersDiff}.
+ * </p>
+ * <p>
+ * The result is not always a minimum diff, but because unique lines, like
+ * declarations, are seldom moved by accident, the deltas tend to follow the
+ * structure of the text better than the ones computed by Myers' algorithm,
+ * which may match unrelated braces and blank lines. And large rearrangements
+ * are found without the long searches that Myers' algorithm does when there
+ * are many differences.
+ * </p>
+ *
+ * @version $Revision$ $Date$
+ * @see MyersDiff
+ * @see Revision
+ */
+public class PatienceDiff implements TrimmableDiffAlgorithm
+{
+    /**
+     * The default combined size below which gaps are differenced with
+     * {@link MyersDiff}.
+     */
+    public static final int DEFAULT_MYERS_THRESHOLD = 32;
+
+    private final int myersThreshold;
+
+    /**
+     * Constructs an instance of the patience differencing algorithm.
+     */
+    public PatienceDiff()
+    {
+        this(DEFAULT_MYERS_THRESHOLD);
+    }
+
+    /**
+     * Constructs an instance of the patience differencing algorithm.
+     *
+     * @param myersThreshold
+     *            the combined size of the gaps between anchors below which
+     *            the gaps are differenced with {@link MyersDiff}.
+     */
+    public PatienceDiff(int myersThreshold)
+    {
+        this.myersThreshold = myersThreshold;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Revision diff(Object[] orig, Object[] rev)
+            throws DifferentiationFailedException
+    {
+        return diff(orig, rev, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Revision diff(Object[] orig, Object[] rev, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        if (orig == null)
+            throw new IllegalArgumentException("original sequence is null");
+        if (rev == null)
+            throw new IllegalArgumentException("revised sequence is null");
+
+        Tokens tokens = Tokens.intern(orig, rev);
+        Search search = new Search(tokens, myersThreshold, options);
+        search.align(0, orig.length, 0, rev.length);
+        return search.matches.toRevision(orig, rev);
+    }
+
+    /**
+     * Finds the items that occur exactly once in each of the token sequences,
+     * and that form the longest subsequence in the same order in both.
+     *
+     * @param tokens
+     *            the sequences to search.
+     * @return the positions of the anchors in the original and revised
+     *         sequences, in order and interleaved, or <code>null</code> if
+     *         there are none.
+     */
+    public static int[] anchors(Tokens tokens)
+    {
+        Search search = new Search(tokens, 0, null);
+        return search.anchors(0, tokens.orig.length, 0, tokens.rev.length);
+    }
+
+    /**
+     * The state of one differencing run.
+     */
+    static final class Search
+    {
+        final int[] orig;
+        final int[] rev;
+        final int myersThreshold;
+        final DiffOptions options;
+
+        /** Occurrences of each token in the current original window. */
+        final int[] origCount;
+        /** Occurrences of each token in the current revised window. */
+        final int[] revCount;
+        /** Last position of each token in the current revised window. */
+        final int[] revPos;
+
+        final Matches matches = new Matches();
+
+        Search(Tokens tokens, int myersThreshold, DiffOptions options)
+        {
+            this.orig = tokens.orig;
+            this.rev = tokens.rev;
+            this.myersThreshold = myersThreshold;
+            this.options = options;
+            this.origCount = new int[tokens.count];
+            this.revCount = new int[tokens.count];
+            this.revPos = new int[tokens.count];
+        }
+
+        /**
+         * Finds the matches between <code>orig[i0..i1)</code> and
+         * <code>rev[j0..j1)</code>.
+         */
+        void align(int i0, int i1, int j0, int j1)
+                throws DifferentiationFailedException
+        {
+            DiffOptions.check(options);
+
+            // strip the common prefix and suffix
+            int start = i0;
+            int prefix = Mismatch.forward(orig, i0, rev, j0, Math.min(i1 - i0,
+                    j1 - j0));
+            i0 += prefix;
+            j0 += prefix;
+            matches.add(start, j0 - (i0 - start), i0 - start);
+
+            int end = i1;
+            int suffix = Mismatch.backward(orig, i1, rev, j1, Math.min(i1 - i0,
+                    j1 - j0));
+            i1 -= suffix;
+            j1 -= suffix;
+
+            if (i0 < i1 && j0 < j1)
+            {
+                int[] anchors = null;
+                if ((i1 - i0) + (j1 - j0) >= myersThreshold)
+                    anchors = anchors(i0, i1, j0, j1);
+
+                if (anchors == null)
+                {
+                    MyersDiff.buildMatches(orig, i0, i1, rev, j0, j1,
+                            MyersDiff.UNBOUNDED, options, matches);
+                }
+                else
+                {
+                    int i = i0;
+                    int j = j0;
+                    for (int a = 0; a < anchors.length; a += 2)
+                    {
+                        int x = anchors[a];
+                        int y = anchors[a + 1];
+                        align(i, x, j, y);
+                        matches.add(x, y, 1);
+                        i = x + 1;
+                        j = y + 1;
+                    }
+                    align(i, i1, j, j1);
+                }
+            }
+
+            matches.add(i1, j1, end - i1);
+        }
+
+        /**
+         * Chooses the anchors for <code>orig[i0..i1)</code> and
+         * <code>rev[j0..j1)</code>.
+         *
+         * @return the positions of the anchors in the original and revised
+         *         sequences, in order and interleaved, or <code>null</code>
+         *         if there are none.
+         */
+        int[] anchors(int i0, int i1, int j0, int j1)
+        {
+            for (int i = i0; i < i1; i++)
+                origCount[orig[i]]++;
+            for (int j = j0; j < j1; j++)
+            {
+                revCount[rev[j]]++;
+                revPos[rev[j]] = j;
+            }
+
+            // the unique items in common, in the order of the original
+            int n = 0;
+            int[] candI = new int[Math.min(i1 - i0, j1 - j0)];
+            int[] candJ = new int[candI.length];
+            for (int i = i0; i < i1 && n < candI.length; i++)
+            {
+                int t = orig[i];
+                if (origCount[t] == 1 && revCount[t] == 1)
+                {
+                    candI[n] = i;
+                    candJ[n] = revPos[t];
+                    n++;
+                }
+            }
+
+            for (int i = i0; i < i1; i++)
+                origCount[orig[i]] = 0;
+            for (int j = j0; j < j1; j++)
+                revCount[rev[j]] = 0;
+
+            if (n == 0)
+                return null;
+
+            return longestIncreasing(candI, candJ, n);
+        }
+    }
+
+    /**
+     * Finds the longest subsequence of candidate matches that is increasing
+     * in both sequences, by patience sorting.
+     *
+     * @param candI
+     *            the positions of the candidates in the original sequence, in
+     *            increasing order.
+     * @param candJ
+     *            the positions of the candidates in the revised sequence.
+     * @param n
+     *            the number of candidates, which must be at least one.
+     * @return the positions of the chosen candidates in the original and
+     *         revised sequences, in order and interleaved.
+     */
+    public static int[] longestIncreasing(int[] candI, int[] candJ, int n)
+    {
+        // piles[p] is the candidate on top of pile p, and back[c] the
+        // candidate on top of the previous pile when c was dealt
+        int[] piles = new int[n];
+        int[] back = new int[n];
+        int npiles = 0;
+        for (int c = 0; c < n; c++)
+        {
+            int lo = 0;
+            int hi = npiles;
+            while (lo < hi)
+            {
+                int mid = (lo + hi) >>> 1;
+                if (candJ[piles[mid]] < candJ[c])
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            piles[lo] = c;
+            back[c] = (lo > 0 ? piles[lo - 1] : -1);
+            if (lo == npiles)
+                npiles++;
+        }
+
+        // the longest increasing subsequence ends at the last pile
+        int[] result = new int[2 * npiles];
+        int k = result.length;
+        for (int c = piles[npiles - 1]; c >= 0; c = back[c])
+        {
+            result[--k] = candJ[c];
+            result[--k] = candI[c];
+        }
+        return result;
+    }
+}
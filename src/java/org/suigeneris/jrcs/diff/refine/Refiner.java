@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff.refine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.suigeneris.jrcs.diff.CompactRevision;
+import org.suigeneris.jrcs.diff.DiffContext;
+import org.suigeneris.jrcs.diff.DiffOptions;
+import org.suigeneris.jrcs.diff.DifferentiationFailedException;
+import org.suigeneris.jrcs.diff.Matches;
+import org.suigeneris.jrcs.diff.Revision;
+import org.suigeneris.jrcs.diff.Tokens;
+import org.suigeneris.jrcs.diff.delta.ChangeDelta;
+import org.suigeneris.jrcs.diff.delta.Chunk;
+import org.suigeneris.jrcs.diff.delta.Delta;
+import org.suigeneris.jrcs.diff.myers.MyersDiff;
+
+/**
+ * Finds the words or characters that changed inside the
+ * {@link ChangeDelta change deltas} of a {@link Revision}.
+ * <p>
+ * <b>Overview of Algorithm</b>
+ * </p>
+ * <p>
+ * The items of the original and revised chunks of a delta are copied, one
+ * line each, to a character buffer that is reused for all the deltas refined
+ * by a thread. The text is cut into tokens, which are interned with a hash
+ * table over the buffer, without creating any strings, and the token
+ * sequences are differenced with Myers' algorithm using the buffers of a
+ * {@link DiffContext}. The gaps between the matches become the deltas of a
+ * revision that is {@link ChangeDelta#setRefinement(Revision) attached} to
+ * the change delta.
+ * </p>
+ * <p>
+ * The chunks of the refinement hold no items. Their positions and sizes are
+ * offsets and lengths in characters into the text of the original or revised
+ * chunk, in which the items are separated by newlines. With {@link #WORDS},
+ * a token is a run of letters, digits and underscores, a run of blanks, or
+ * any other single character; with {@link #CHARACTERS}, every character is a
+ * token.
+ * </p>
+ * <p>
+ * Revisions with many change deltas are refined in parallel, in batches, on
+ * a {@link ForkJoinPool}.
+ * </p>
+ *
+ * @version $Revision$ $Date$
+ * @see ChangeDelta#getRefinement()
+ * @see MyersDiff
+ */
+public class Refiner
+{
+    /** Compares words, blanks and punctuation. */
+    public static final int WORDS = 0;
+
+    /** Compares single characters. */
+    public static final int CHARACTERS = 1;
+
+    /**
+     * The default number of change deltas from which a revision is refined
+     * in parallel.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 64;
+
+    /** The most change deltas refined by one task. */
+    static final int BATCH = 16;
+
+    private static final int WORD = 0;
+    private static final int BLANK = 1;
+    private static final int OTHER = 2;
+
+    private final int granularity;
+
+    private final ForkJoinPool pool;
+
+    private final int parallelThreshold;
+
+    /**
+     * Constructs a refiner that compares words.
+     */
+    public Refiner()
+    {
+        this(WORDS);
+    }
+
+    /**
+     * Constructs a refiner that runs on the common pool.
+     *
+     * @param granularity
+     *            {@link #WORDS} or {@link #CHARACTERS}.
+     */
+    public Refiner(int granularity)
+    {
+        this(granularity, ForkJoinPool.commonPool(),
+                DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Constructs a refiner.
+     *
+     * @param granularity
+     *            {@link #WORDS} or {@link #CHARACTERS}.
+     * @param pool
+     *            the pool the deltas are refined on.
+     * @param parallelThreshold
+     *            the number of change deltas from which a revision is
+     *            refined in parallel.
+     */
+    public Refiner(int granularity, ForkJoinPool pool, int parallelThreshold)
+    {
+        if (granularity != WORDS && granularity != CHARACTERS)
+            throw new IllegalArgumentException("unknown granularity");
+        if (pool == null)
+            throw new IllegalArgumentException("pool is null");
+        if (parallelThreshold < 1)
+            throw new IllegalArgumentException("parallelThreshold < 1");
+        this.granularity = granularity;
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Refines all the change deltas of a revision.
+     *
+     * @param revision
+     *            the revision.
+     * @throws DifferentiationFailedException
+     *             if a delta could not be refined.
+     */
+    public void refine(Revision revision)
+            throws DifferentiationFailedException
+    {
+        refine(revision, null);
+    }
+
+    /**
+     * Refines all the change deltas of a revision.
+     *
+     * @param revision
+     *            the revision.
+     * @param options
+     *            the deadline and cancellation flag to check, or
+     *            <code>null</code>.
+     * @throws org.suigeneris.jrcs.diff.DiffTimeoutException
+     *             if the deadline passed or the refinement was cancelled.
+     * @throws DifferentiationFailedException
+     *             if a delta could not be refined.
+     */
+    public void refine(Revision revision, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        if (revision == null)
+            throw new IllegalArgumentException("revision is null");
+
+        // only the change deltas of a compact revision are created, as they
+        // keep their refinements
+        List changes = new ArrayList();
+        if (revision instanceof CompactRevision)
+        {
+            CompactRevision compact = (CompactRevision) revision;
+            for (int d = 0; d < compact.size(); d++)
+            {
+                if (compact.origCount(d) == 0 || compact.revCount(d) == 0)
+                    continue;
+                Delta delta = compact.getDelta(d);
+                if (delta instanceof ChangeDelta)
+                    changes.add(delta);
+            }
+        }
+        else
+        {
+            Iterator i = revision.listIterator(0);
+            while (i.hasNext())
+            {
+                Object delta = i.next();
+                if (delta instanceof ChangeDelta)
+                    changes.add(delta);
+            }
+        }
+        ChangeDelta[] deltas = (ChangeDelta[]) changes
+                .toArray(new ChangeDelta[changes.size()]);
+
+        if (deltas.length < parallelThreshold)
+        {
+            refine(deltas, 0, deltas.length, options);
+            return;
+        }
+        Batch task = new Batch(deltas, options, 0, deltas.length);
+        pool.invoke(task);
+        if (task.failure != null)
+            throw task.failure;
+    }
+
+    /**
+     * Refines a single change delta, and attaches the result to it.
+     *
+     * @param delta
+     *            the delta.
+     * @param options
+     *            the deadline and cancellation flag to check, or
+     *            <code>null</code>.
+     * @return the refinement.
+     * @throws org.suigeneris.jrcs.diff.DiffTimeoutException
+     *             if the deadline passed or the refinement was cancelled.
+     * @throws DifferentiationFailedException
+     *             if the delta could not be refined.
+     */
+    public Revision refine(ChangeDelta delta, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        if (delta == null)
+            throw new IllegalArgumentException("delta is null");
+
+        DiffContext context = DiffContext.acquire();
+        try
+        {
+            Revision refinement = refine(delta, context, options);
+            delta.setRefinement(refinement);
+            return refinement;
+        }
+        finally
+        {
+            context.release();
+        }
+    }
+
+    /**
+     * Refines <code>deltas[from..to)</code> in the current thread.
+     */
+    void refine(ChangeDelta[] deltas, int from, int to, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        DiffContext context = DiffContext.acquire();
+        try
+        {
+            for (int d = from; d < to; d++)
+                deltas[d].setRefinement(refine(deltas[d], context, options));
+        }
+        finally
+        {
+            context.release();
+        }
+    }
+
+    private Revision refine(ChangeDelta delta, DiffContext context,
+            DiffOptions options) throws DifferentiationFailedException
+    {
+        Chunk orig = delta.getOriginal();
+        Chunk rev = delta.getRevised();
+        if (!orig.hasText() || !rev.hasText())
+            throw new IllegalArgumentException("the delta holds no items");
+
+        final int m = length(orig);
+        final int n = length(rev);
+        char[] text = context.chars(m + n);
+        copy(orig, text, 0);
+        copy(rev, text, m);
+
+        // starts[t] .. starts[t + 1] are the characters of token t, and the
+        // tokens of the revised text follow those of the original
+        int[] starts = context.offsets(m + n + 1);
+        final int p = tokenize(text, 0, m, starts, 0);
+        final int q = tokenize(text, m, m + n, starts, p) - p;
+        starts[p + q] = m + n;
+
+        int[] a = context.origTokens(p);
+        int[] b = context.revTokens(q);
+        if (granularity == CHARACTERS)
+        {
+            for (int t = 0; t < p; t++)
+                a[t] = text[t];
+            for (int t = 0; t < q; t++)
+                b[t] = text[m + t];
+        }
+        else
+            intern(text, starts, p, q, a, b, context);
+
+        Matches matches = context.matches();
+        MyersDiff.buildMatches(a, p, b, q, context, options, matches);
+
+        Revision refinement = new Revision();
+        int i = 0;
+        int j = 0;
+        for (int r = 0; r <= matches.size(); r++)
+        {
+            int ianchor = (r < matches.size() ? matches.origStart(r) : p);
+            int janchor = (r < matches.size() ? matches.revStart(r) : q);
+            if (ianchor > i || janchor > j)
+            {
+                int start = starts[p + j];
+                Chunk original = new Chunk(starts[i], starts[ianchor]
+                        - starts[i]);
+                Chunk revised = new Chunk(start - m, starts[p + janchor]
+                        - start);
+                refinement.addDelta(Delta.newDelta(original, revised));
+            }
+            if (r < matches.size())
+            {
+                i = ianchor + matches.length(r);
+                j = janchor + matches.length(r);
+            }
+        }
+        return refinement;
+    }
+
+    /**
+     * Returns the length of the text of a chunk, with its items separated by
+     * newlines.
+     */
+    private static int length(Chunk items)
+    {
+        int length = Math.max(0, items.size() - 1);
+        for (int k = 0; k < items.size(); k++)
+            length += items.get(k).toString().length();
+        return length;
+    }
+
+    /**
+     * Copies the text of a chunk to a character buffer.
+     */
+    private static void copy(Chunk items, char[] text, int at)
+    {
+        for (int k = 0; k < items.size(); k++)
+        {
+            if (k > 0)
+                text[at++] = '\n';
+            String item = items.get(k).toString();
+            item.getChars(0, item.length(), text, at);
+            at += item.length();
+        }
+    }
+
+    /**
+     * Records the starts of the tokens in <code>text[from..to)</code>,
+     * numbering them from <code>t</code>.
+     *
+     * @return the number of the token after the last one.
+     */
+    private int tokenize(char[] text, int from, int to, int[] starts, int t)
+    {
+        int c = from;
+        while (c < to)
+        {
+            starts[t++] = c;
+            int kind = kind(text[c++]);
+            if (granularity == WORDS && kind != OTHER)
+            {
+                while (c < to && kind(text[c]) == kind)
+                    c++;
+            }
+        }
+        return t;
+    }
+
+    private static int kind(char c)
+    {
+        if (Character.isLetterOrDigit(c) || c == '_')
+            return WORD;
+        if (c != '\n' && Character.isWhitespace(c))
+            return BLANK;
+        return OTHER;
+    }
+
+    /**
+     * Numbers the distinct tokens in order of first appearance, with an open
+     * addressing hash table of token numbers.
+     */
+    private static void intern(char[] text, int[] starts, int p, int q,
+            int[] a, int[] b, DiffContext context)
+    {
+        int capacity = Tokens.capacity((long) p + q);
+        final int mask = capacity - 1;
+        int[] table = context.vector(capacity);
+        Arrays.fill(table, 0, capacity, -1);
+
+        int count = 0;
+        for (int t = 0; t < p + q; t++)
+        {
+            int hash = 0;
+            for (int c = starts[t]; c < starts[t + 1]; c++)
+                hash = 31 * hash + text[c];
+            int slot = (hash ^ (hash >>> 16)) & mask;
+
+            int id;
+            while (true)
+            {
+                int u = table[slot];
+                if (u < 0)
+                {
+                    table[slot] = t;
+                    id = count++;
+                    break;
+                }
+                if (equal(text, starts, u, t))
+                {
+                    id = (u < p ? a[u] : b[u - p]);
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (t < p)
+                a[t] = id;
+            else
+                b[t - p] = id;
+        }
+    }
+
+    private static boolean equal(char[] text, int[] starts, int u, int t)
+    {
+        int length = starts[u + 1] - starts[u];
+        if (starts[t + 1] - starts[t] != length)
+            return false;
+        for (int c = 0; c < length; c++)
+        {
+            if (text[starts[u] + c] != text[starts[t] + c])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Refines a range of change deltas, splitting it in halves until it fits
+     * in a batch.
+     */
+    final class Batch extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        final ChangeDelta[] deltas;
+        final DiffOptions options;
+        final int from;
+        final int to;
+
+        DifferentiationFailedException failure;
+
+        Batch(ChangeDelta[] deltas, DiffOptions options, int from, int to)
+        {
+            this.deltas = deltas;
+            this.options = options;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute()
+        {
+            if (to - from > BATCH)
+            {
+                int mid = (from + to) >>> 1;
+                Batch left = new Batch(deltas, options, from, mid);
+                Batch right = new Batch(deltas, options, mid, to);
+                invokeAll(left, right);
+                failure = (left.failure != null ? left.failure
+                        : right.failure);
+                return;
+            }
+            try
+            {
+                refine(deltas, from, to, options);
+            }
+            catch (DifferentiationFailedException e)
+            {
+                failure = e;
+            }
+        }
+    }
+}
@@ -17,11 +17,14 @@ package org.suigeneris.jrcs.diff.simple;
 
 import java.util.*;
 
+import org.suigeneris.jrcs.diff.CompactRevision;
 import org.suigeneris.jrcs.diff.DiffAlgorithm;
+import org.suigeneris.jrcs.diff.DiffContext;
+import org.suigeneris.jrcs.diff.DiffOptions;
+import org.suigeneris.jrcs.diff.DiffTimeoutException;
 import org.suigeneris.jrcs.diff.DifferentiationFailedException;
 import org.suigeneris.jrcs.diff.Revision;
-import org.suigeneris.jrcs.diff.delta.Chunk;
-import org.suigeneris.jrcs.diff.delta.Delta;
+import org.suigeneris.jrcs.diff.Tokens;
 
 /**
  * Implements a simple differencing algortithm.
@@ -119,8 +122,40 @@ public class SimpleDiff implements DiffAlgorithm
     static final int NOT_FOUND_j = -1;
     static final int EOS = Integer.MAX_VALUE;
 
+    /**
+     * Whether a subclass overrides {@link #buildEqSet buildEqSet()} or
+     * {@link #buildIndex buildIndex()}, so the indexes are built with them.
+     */
+    private final boolean legacy;
+
     public SimpleDiff()
     {
+        legacy = overrides("buildEqSet", new Class[] { Object[].class,
+                Object[].class })
+                || overrides("buildIndex", new Class[] { Map.class,
+                        Object[].class, int.class });
+    }
+
+    /**
+     * Tells whether a method of this class is overridden by the class of
+     * this object.
+     */
+    private boolean overrides(String name, Class[] parameters)
+    {
+        for (Class c = getClass(); c != SimpleDiff.class; c = c
+                .getSuperclass())
+        {
+            try
+            {
+                c.getDeclaredMethod(name, parameters);
+                return true;
+            }
+            catch (NoSuchMethodException e)
+            {
+                // look in the superclass
+            }
+        }
+        return false;
     }
 
     protected int scan(int[] ndx, int i, int target)
@@ -146,28 +181,63 @@ public class SimpleDiff implements DiffAlgorithm
     public Revision diff(Object[] orig, Object[] rev)
             throws DifferentiationFailedException
     {
-        // create map eqs, such that for each item in both orig and rev
-        // eqs(item) = firstOccurrence(item, orig);
-        Map eqs = buildEqSet(orig, rev);
+        return diff(orig, rev, null);
+    }
 
-        // create an array such that
+    /**
+     * Compute the difference between original and revised sequences,
+     * checking the given options after each scan.
+     * 
+     * @param orig
+     *            The original sequence.
+     * @param rev
+     *            The revised sequence to be compared with the original.
+     * @param options
+     *            The deadline and cancellation flag to check, or
+     *            <code>null</code>.
+     * @return A Revision object describing the differences.
+     * @throws DiffTimeoutException
+     *             if the deadline passed or the diff was cancelled.
+     * @throws DifferenciationFailedException
+     *             if the diff could not be computed.
+     */
+    public Revision diff(Object[] orig, Object[] rev, DiffOptions options)
+            throws DifferentiationFailedException
+    {
+        // create arrays such that
         // indx[i] = NOT_FOUND_i if orig[i] is not in rev
         // indx[i] = firstOccurrence(orig[i], orig)
-        int[] indx = buildIndex(eqs, orig, NOT_FOUND_i);
-
-        // create an array such that
         // jndx[j] = NOT_FOUND_j if orig[j] is not in rev
         // jndx[j] = firstOccurrence(rev[j], orig)
-        int[] jndx = buildIndex(eqs, rev, NOT_FOUND_j);
+        int[] indx;
+        int[] jndx;
+        if (legacy)
+        {
+            Map eqs = buildEqSet(orig, rev);
+            indx = buildIndex(eqs, orig, NOT_FOUND_i);
+            jndx = buildIndex(eqs, rev, NOT_FOUND_j);
+        }
+        else
+        {
+            indx = new int[orig.length + 1];
+            jndx = new int[rev.length + 1];
+            DiffContext context = DiffContext.acquire();
+            try
+            {
+                buildIndexes(orig, rev, indx, jndx, context);
+            }
+            finally
+            {
+                context.release();
+            }
+        }
 
         // what in effect has been done is to build a unique hash
         // for each item that is in both orig and rev
         // and to label each item in orig and new with that hash value
         // or a marker that the item is not common to both.
 
-        eqs = null; // let gc know we're done with this
-
-        Revision deltas = new Revision(); // !!! new Revision()
+        CompactRevision deltas = new CompactRevision(orig, rev);
         int i = 0;
         int j = 0;
 
@@ -206,6 +276,7 @@ public class SimpleDiff implements DiffAlgorithm
                 {
                     i++;
                 }
+                DiffOptions.check(options);
 
                 // this doesn't do a compare each line with each other line
                 // so it won't find all matching lines
@@ -222,8 +293,7 @@ public class SimpleDiff implements DiffAlgorithm
                 --j;
             }
 
-            deltas.addDelta(Delta.newDelta(new Chunk(orig, ia, i - ia),
-                    new Chunk(rev, ja, j - ja)));
+            deltas.addHunk(ia, i - ia, ja, j - ja);
             // skip matching
             for (; indx[i] != EOS && indx[i] == jndx[j]; i++, j++)
             {
@@ -233,6 +303,92 @@ public class SimpleDiff implements DiffAlgorithm
         return deltas;
     }
 
+    /**
+     * build the arrays of first occurrences for orig and rev, such that
+     * <code>indx[i] = eqs(orig[i])</code> and
+     * <code>jndx[j] = eqs(rev[j])</code>, or the not found markers if the
+     * item is not common to both sequences, followed by {@link #EOS}.
+     * <p>
+     * The equivalence set is an open addressing hash table that maps each
+     * distinct item in orig, by its hash code, to the index of its first
+     * occurrence. The table holds only <code>int</code>s, and is built in
+     * one pass over orig and looked up in one pass over rev.
+     * 
+     * @param orig
+     *            the original sequence of items
+     * @param rev
+     *            the revised sequence of items
+     * @param indx
+     *            where to put the index of orig, with room for
+     *            <code>orig.length + 1</code> items.
+     * @param jndx
+     *            where to put the index of rev, with room for
+     *            <code>rev.length + 1</code> items.
+     * @param context
+     *            the context that provides the buffers for the table.
+     */
+    protected void buildIndexes(Object[] orig, Object[] rev, int[] indx,
+            int[] jndx, DiffContext context)
+    {
+        int capacity = Tokens.capacity(orig.length);
+        final int mask = capacity - 1;
+
+        // first[slot] is one plus the index of the first occurrence of the
+        // item in the slot, or zero if the slot is empty, and is made
+        // negative when the item is found in rev
+        int[] first = context.vector(capacity);
+        int[] hashes = context.vector2(capacity);
+        Arrays.fill(first, 0, capacity, 0);
+
+        for (int i = 0; i < orig.length; i++)
+        {
+            int h = orig[i].hashCode();
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (first[slot] != 0
+                    && (hashes[slot] != h || !orig[first[slot] - 1]
+                            .equals(orig[i])))
+            {
+                slot = (slot + 1) & mask;
+            }
+            if (first[slot] == 0)
+            {
+                first[slot] = i + 1;
+                hashes[slot] = h;
+            }
+            // remember the slot until we know if the item is common
+            indx[i] = slot;
+        }
+
+        for (int j = 0; j < rev.length; j++)
+        {
+            int h = rev[j].hashCode();
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (first[slot] != 0
+                    && (hashes[slot] != h || !orig[Math.abs(first[slot]) - 1]
+                            .equals(rev[j])))
+            {
+                slot = (slot + 1) & mask;
+            }
+            if (first[slot] == 0)
+            {
+                jndx[j] = NOT_FOUND_j;
+            }
+            else
+            {
+                first[slot] = -Math.abs(first[slot]);
+                jndx[j] = -first[slot] - 1;
+            }
+        }
+        jndx[rev.length] = EOS;
+
+        for (int i = 0; i < orig.length; i++)
+        {
+            int f = first[indx[i]];
+            indx[i] = (f < 0 ? -f - 1 : NOT_FOUND_i);
+        }
+        indx[orig.length] = EOS;
+    }
+
     /**
      * create a <code>Map</code> from each common item in orig and rev to the
      * index of its first occurrence in orig
@@ -241,7 +397,12 @@ public class SimpleDiff implements DiffAlgorithm
      *            the original sequence of items
      * @param rev
      *            the revised sequence of items
+     * @deprecated {@link #diff diff()} builds the indexes with
+     *             {@link #buildIndexes(Object[], Object[], int[], int[], DiffContext)
+     *             buildIndexes()}, and only calls this method if a subclass
+     *             overrides it or {@link #buildIndex buildIndex()}.
      */
+    @Deprecated
     protected Map buildEqSet(Object[] orig, Object[] rev)
     {
         // construct a set of the objects that orig and rev have in common
@@ -276,7 +437,12 @@ public class SimpleDiff implements DiffAlgorithm
      *            a sequence of objects
      * @param NF
      *            the not found marker
+     * @deprecated {@link #diff diff()} builds the indexes with
+     *             {@link #buildIndexes(Object[], Object[], int[], int[], DiffContext)
+     *             buildIndexes()}, and only calls this method if a subclass
+     *             overrides it or {@link #buildEqSet buildEqSet()}.
      */
+    @Deprecated
     protected int[] buildIndex(Map eqs, Object[] seq, int NF)
     {
         int[] result = new int[seq.length + 1];
@@ -36,6 +36,7 @@ import java.util.regex.Pattern;
 import org.suigeneris.jrcs.diff.Diff;
 import org.suigeneris.jrcs.diff.DiffException;
 import org.suigeneris.jrcs.diff.DifferentiationFailedException;
+import org.suigeneris.jrcs.diff.Normalizer;
 import org.suigeneris.jrcs.diff.PatchFailedException;
 import org.suigeneris.jrcs.rcs.impl.BranchNode;
 import org.suigeneris.jrcs.rcs.impl.Line;
@@ -1315,13 +1316,12 @@ public class Archive extends ToString
         {
             if (headAdd)
             {
-                deltaText = Diff.diff(text, head.getText()).toRCSString(
-                        RCS_NEWLINE);
+                deltaText = deltaText(text, head.getText());
             }
             else
             {
                 Object[] oldText = path.patch().toArray();
-                deltaText = Diff.diff(oldText, text).toRCSString(RCS_NEWLINE);
+                deltaText = deltaText(oldText, text);
             }
             if (deltaText.length() == 0)
             {
@@ -1620,6 +1620,24 @@ public class Archive extends ToString
         removeNode(target);
     }
 
+    /**
+     * Computes the delta text that turns one text into another, with the
+     * deltas normalized so that there are as few of them as possible.
+     * 
+     * @param orig
+     *            the text the delta text applies to.
+     * @param rev
+     *            the text the delta text produces.
+     * @return the delta text, in RCS format.
+     * @throws DifferentiationFailedException
+     */
+    private static String deltaText(Object[] orig, Object[] rev)
+            throws DifferentiationFailedException
+    {
+        return new Normalizer().normalize(Diff.diff(orig, rev), orig, rev)
+                .toRCSString(RCS_NEWLINE);
+    }
+
     /**
      * Removes a node from the archive.
      * 
@@ -1657,14 +1675,12 @@ public class Archive extends ToString
             Object[] childTxt = getRevision(child.version);
             if (node.version.isTrunk())
             {
-                String deltaText = Diff.diff(childTxt, parentTxt).toRCSString(
-                        RCS_NEWLINE);
+                String deltaText = deltaText(childTxt, parentTxt);
                 parent.setText(deltaText);
             }
             else
             {
-                String deltaText = Diff.diff(parentTxt, childTxt).toRCSString(
-                        RCS_NEWLINE);
+                String deltaText = deltaText(parentTxt, childTxt);
                 child.setText(deltaText);
                 parent.removeBranch(node);
                 parent.setRCSNext(child);
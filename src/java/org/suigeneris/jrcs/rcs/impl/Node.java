@@ -587,8 +587,11 @@ public abstract class Node extends ToString implements Comparable
             }
             else if (action == 'a')
             {
-                revision.addDelta(new AddDelta(n, new Chunk(getTextLines(
-                        it + 1, it + 1 + count), 0, count, n - 1)));
+                Object[] added = new Object[count];
+                for (int k = 0; k < count; k++)
+                    added[k] = new Line(deltaRevision(), lines[it + 1 + k]);
+                revision.addDelta(new AddDelta(n, Chunk.view(added, 0, count,
+                        n - 1)));
                 it += count;
             }
             else
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.suigeneris.jrcs.diff.Diff;
+import org.suigeneris.jrcs.diff.DiffAlgorithm;
+import org.suigeneris.jrcs.diff.DiffStat;
+import org.suigeneris.jrcs.diff.Revision;
+import org.suigeneris.jrcs.diff.delta.Delta;
+import org.suigeneris.jrcs.diff.histogram.HistogramDiff;
+import org.suigeneris.jrcs.diff.myers.LinearMyersDiff;
+import org.suigeneris.jrcs.diff.myers.MyersDiff;
+import org.suigeneris.jrcs.diff.patience.PatienceDiff;
+import org.suigeneris.jrcs.diff.simple.SimpleDiff;
+
+/**
+ * A program to compare the differencing algorithms.
+ * <p>
+ * DiffBenchmark runs each of the algorithms in the
+ * {@linkplain org.suigeneris.jrcs.diff diff} package on the two given files,
+ * or on a generated pair of source-like texts of the given size, and reports
+ * the time taken, the number of deltas, and the number of lines changed. It
+ * also times {@link Diff#stat Diff.stat()}, which only counts the changes.
+ * </p>
+ * <p>
+ * The generated texts have many repeated lines, like blank lines and closing
+ * braces, which are the common case for the files kept under version control,
+ * and the hard one for the algorithms.
+ */
+public class DiffBenchmark
+{
+    static final String[] NAMES = { "SimpleDiff", "MyersDiff",
+            "LinearMyersDiff", "PatienceDiff", "HistogramDiff" };
+
+    static final DiffAlgorithm newAlgorithm(int i)
+    {
+        switch (i)
+        {
+        case 0:
+            return new SimpleDiff();
+        case 1:
+            return new MyersDiff();
+        case 2:
+            return new LinearMyersDiff();
+        case 3:
+            return new PatienceDiff();
+        default:
+            return new HistogramDiff();
+        }
+    }
+
+    static final String[] generate(Random random, int size)
+    {
+        List lines = new ArrayList(size);
+        int method = 0;
+        while (lines.size() < size)
+        {
+            method++;
+            lines.add("    public void method" + method + "()");
+            lines.add("    {");
+            int statements = 1 + random.nextInt(8);
+            for (int s = 0; s < statements; s++)
+            {
+                lines.add("        value" + random.nextInt(size / 4 + 1)
+                        + " = " + random.nextInt(10) + ";");
+            }
+            lines.add("    }");
+            lines.add("");
+        }
+        return (String[]) lines.toArray(new String[lines.size()]);
+    }
+
+    static final String[] edit(Random random, String[] orig, int edits)
+    {
+        List lines = new ArrayList(orig.length + edits);
+        for (int i = 0; i < orig.length; i++)
+            lines.add(orig[i]);
+        for (int e = 0; e < edits && lines.size() > 0; e++)
+        {
+            int at = random.nextInt(lines.size());
+            switch (random.nextInt(4))
+            {
+            case 0:
+                lines.remove(at);
+                break;
+            case 1:
+                lines.add(at, "        edit" + e + "();");
+                break;
+            case 2:
+                lines.set(at, "        change" + e + "();");
+                break;
+            default:
+                // move a block of lines elsewhere
+                int length = Math.min(1 + random.nextInt(10), lines.size()
+                        - at);
+                List block = new ArrayList(lines.subList(at, at + length));
+                lines.subList(at, at + length).clear();
+                lines.addAll(random.nextInt(lines.size() + 1), block);
+            }
+        }
+        return (String[]) lines.toArray(new String[lines.size()]);
+    }
+
+    static final void usage(String name)
+    {
+        System.err.println("Usage: " + name + " file1 file2");
+        System.err.println("       " + name + " -generate lines edits [seed]");
+    }
+
+    public static void main(String[] argv) throws Exception
+    {
+        Object[] orig;
+        Object[] rev;
+        if (argv.length >= 3 && argv[0].equals("-generate"))
+        {
+            int size = Integer.parseInt(argv[1]);
+            int edits = Integer.parseInt(argv[2]);
+            Random random = new Random(argv.length > 3 ? Long
+                    .parseLong(argv[3]) : 0);
+            orig = generate(random, size);
+            rev = edit(random, (String[]) orig, edits);
+        }
+        else if (argv.length == 2)
+        {
+            orig = JDiff.loadFile(argv[0]);
+            rev = JDiff.loadFile(argv[1]);
+        }
+        else
+        {
+            usage("DiffBenchmark");
+            return;
+        }
+
+        System.out.println(orig.length + " and " + rev.length + " lines");
+        for (int a = 0; a < NAMES.length; a++)
+        {
+            DiffAlgorithm algorithm = newAlgorithm(a);
+            try
+            {
+                // once to warm up, and once to measure
+                algorithm.diff(orig, rev);
+                long start = System.currentTimeMillis();
+                Revision revision = algorithm.diff(orig, rev);
+                long time = System.currentTimeMillis() - start;
+
+                int changed = 0;
+                for (int d = 0; d < revision.size(); d++)
+                {
+                    Delta delta = revision.getDelta(d);
+                    changed += delta.getOriginal().size()
+                            + delta.getRevised().size();
+                }
+                System.out.println(NAMES[a] + ": " + time + " ms, "
+                        + revision.size() + " deltas, " + changed
+                        + " lines changed");
+            }
+            catch (OutOfMemoryError e)
+            {
+                System.out.println(NAMES[a] + ": out of memory");
+            }
+        }
+
+        // the counts alone, which is all some reports need
+        Diff.stat(orig, rev);
+        long start = System.currentTimeMillis();
+        DiffStat stat = Diff.stat(orig, rev);
+        long time = System.currentTimeMillis() - start;
+        System.out.println("Diff.stat: " + time + " ms, " + stat.getDistance()
+                + " lines changed");
+    }
+}
@@ -15,6 +15,7 @@
 package org.suigeneris.jrcs.tools;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -22,6 +23,7 @@ import java.util.Date;
 import java.util.List;
 
 import org.suigeneris.jrcs.diff.Diff;
+import org.suigeneris.jrcs.diff.LineIndex;
 import org.suigeneris.jrcs.diff.Revision;
 
 /**
@@ -61,8 +63,10 @@ public class JDiff
         }
         else
         {
-            Object[] orig = loadFile(argv[0]);
-            Object[] rev = loadFile(argv[1]);
+            // the files are mapped, so only the lines that differ are read
+            // into memory as text
+            Object[] orig = LineIndex.map(new File(argv[0])).lines();
+            Object[] rev = LineIndex.map(new File(argv[1])).lines();
 
             Diff df = new Diff(orig);
             Revision r = df.diff(rev);
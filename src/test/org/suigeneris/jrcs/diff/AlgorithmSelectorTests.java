@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.suigeneris.jrcs.diff.histogram.HistogramDiff;
+import org.suigeneris.jrcs.diff.myers.MyersDiff;
+import org.suigeneris.jrcs.diff.patience.PatienceDiff;
+
+public class AlgorithmSelectorTests extends TestCase
+{
+
+    public AlgorithmSelectorTests(String name)
+    {
+        super(name);
+    }
+
+    static Object[] lines(int size, int distinct, String prefix)
+    {
+        Object[] lines = new Object[size];
+        for (int i = 0; i < size; i++)
+            lines[i] = prefix + (distinct > 0 ? i % distinct : i);
+        return lines;
+    }
+
+    static DiffAlgorithm select(Object[] orig, Object[] rev)
+    {
+        return AlgorithmSelector.select(orig, 0, orig.length, rev, 0,
+                rev.length);
+    }
+
+    public void testSmall()
+    {
+        assertNull(select(lines(100, 0, "a"), lines(100, 0, "b")));
+    }
+
+    public void testSimilar()
+    {
+        Object[] orig = lines(20000, 0, "line ");
+        Object[] rev = (Object[]) orig.clone();
+        for (int j = 0; j < rev.length; j += 1000)
+            rev[j] = "changed " + j;
+        assertNull(select(orig, rev));
+    }
+
+    public void testUnique()
+    {
+        Object[] orig = lines(20000, 0, "line ");
+        Object[] rev = DiffHelper.shuffle(orig, 1);
+        for (int j = 0; j < rev.length; j += 2)
+            rev[j] = "changed " + j;
+        assertTrue(select(orig, rev) instanceof PatienceDiff);
+    }
+
+    public void testRepetitive()
+    {
+        Object[] orig = lines(20000, 50, "a");
+        Object[] rev = lines(20000, 70, "b");
+        assertTrue(select(orig, rev) instanceof HistogramDiff);
+    }
+
+    public void testMetrics() throws Exception
+    {
+        final List reports = new ArrayList();
+        DiffMetrics metrics = new DiffMetrics()
+        {
+            public void diffed(DiffAlgorithm algorithm, boolean selected,
+                    int origSize, int revSize, long nanos, Revision revision)
+            {
+                reports.add(new Object[] { algorithm,
+                        Boolean.valueOf(selected), Integer.valueOf(origSize),
+                        Integer.valueOf(revSize), revision });
+            }
+        };
+        Object[] orig = new String[] { "a", "b", "c", "d" };
+        Object[] rev = new String[] { "a", "x", "d" };
+        Diff.setMetrics(metrics);
+        try
+        {
+            Revision revision = Diff.diff(orig, rev);
+            Diff.diff(orig, rev, new MyersDiff());
+            Diff.diff(orig, orig);
+            assertSame(metrics, Diff.getMetrics());
+
+            assertEquals(2, reports.size());
+            Object[] report = (Object[]) reports.get(0);
+            assertTrue(report[0] instanceof MyersDiff);
+            assertEquals(Boolean.TRUE, report[1]);
+            assertEquals(Integer.valueOf(4), report[2]);
+            assertEquals(Integer.valueOf(3), report[3]);
+            assertEquals(revision.toString(), report[4].toString());
+            report = (Object[]) reports.get(1);
+            assertEquals(Boolean.FALSE, report[1]);
+        }
+        finally
+        {
+            Diff.setMetrics(null);
+        }
+    }
+
+    public void testAdaptiveDefault() throws Exception
+    {
+        Object[] orig = lines(20000, 0, "line ");
+        Object[] rev = DiffHelper.shuffle(orig, 2);
+        Revision revision = Diff.diff(orig, rev);
+        assertTrue(Diff.compare(revision.patch(orig), rev));
+
+        orig = lines(5000, 50, "a");
+        rev = lines(5000, 70, "a");
+        revision = Diff.diff(orig, rev);
+        assertTrue(Diff.compare(revision.patch(orig), rev));
+    }
+
+    public void testOverriddenDefault() throws Exception
+    {
+        // a subclass that picks its own default algorithm still gets it
+        final int[] calls = new int[1];
+        Diff diff = new Diff(lines(100, 0, "line "))
+        {
+            protected DiffAlgorithm defaultAlgorithm()
+            {
+                return new MyersDiff()
+                {
+                    public Revision diff(Object[] orig, Object[] rev,
+                            DiffOptions options)
+                            throws DifferentiationFailedException
+                    {
+                        calls[0]++;
+                        return super.diff(orig, rev, options);
+                    }
+                };
+            }
+        };
+        Object[] rev = lines(100, 0, "line ");
+        rev[50] = "changed";
+        diff.diff(rev);
+        assertEquals(1, calls[0]);
+    }
+
+    public void testCapacity()
+    {
+        assertEquals(2, Tokens.capacity(0));
+        assertEquals(16, Tokens.capacity(5));
+        assertEquals(Tokens.MAX_CAPACITY, Tokens
+                .capacity(Tokens.MAX_CAPACITY / 2));
+        try
+        {
+            // twice the size overflows an int
+            Tokens.capacity(Tokens.MAX_CAPACITY + 1L);
+            fail("sized a table beyond the largest one");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+}
@@ -29,6 +29,24 @@ public class AllTests extends TestCase
         TestSuite suite = new TestSuite();
         suite.addTestSuite(SimpleDiffTests.class);
         suite.addTestSuite(MyersDiffTests.class);
+        suite.addTestSuite(LinearMyersDiffTests.class);
+        suite.addTestSuite(PatienceDiffTests.class);
+        suite.addTestSuite(HistogramDiffTests.class);
+        suite.addTestSuite(ParallelDiffTests.class);
+        suite.addTestSuite(LineIndexTests.class);
+        suite.addTestSuite(ExternalDiffTests.class);
+        suite.addTestSuite(DiffStatTests.class);
+        suite.addTestSuite(MismatchTests.class);
+        suite.addTestSuite(RefinerTests.class);
+        suite.addTestSuite(CachingDiffTests.class);
+        suite.addTestSuite(AlgorithmSelectorTests.class);
+        suite.addTestSuite(CompactRevisionTests.class);
+        suite.addTestSuite(RevisionTests.class);
+        suite.addTestSuite(ChunkTests.class);
+        suite.addTestSuite(DiffWriterTests.class);
+        suite.addTestSuite(NormalizerTests.class);
+        suite.addTestSuite(RevisionCodecTests.class);
+        suite.addTestSuite(DiffContextTests.class);
         return suite;
     }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import org.suigeneris.jrcs.diff.cache.CachingDiffAlgorithm;
+import org.suigeneris.jrcs.diff.myers.MyersDiff;
+
+public class CachingDiffTests extends DiffTest
+{
+
+    public CachingDiffTests(String name)
+    {
+        super(name, new CachingDiffAlgorithm(new MyersDiff()));
+    }
+
+    public void testHits() throws Exception
+    {
+        CachingDiffAlgorithm cache = new CachingDiffAlgorithm(new MyersDiff());
+        Object[] orig = new Object[200];
+        for (int i = 0; i < orig.length; i++)
+            orig[i] = "line " + (i * 7 % 50);
+        Object[] rev = DiffHelper.randomEdit(orig, 1);
+        Revision first = cache.diff(orig, rev);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // equal but not the same sequences
+        Object[] copy = new Object[rev.length];
+        for (int j = 0; j < rev.length; j++)
+            copy[j] = new String(rev[j].toString());
+        Revision second = cache.diff(orig, copy);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertNotSame(first, second);
+        assertEquals(first.toString(), second.toString());
+        assertEquals(1, cache.size());
+
+        cache.diff(rev, orig);
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    public void testKeys() throws Exception
+    {
+        CachingDiffAlgorithm cache = new CachingDiffAlgorithm(new MyersDiff());
+
+        // the boundary between the sequences is part of the key
+        cache.diff(new String[] { "a", "b" }, new String[] { "c" });
+        cache.diff(new String[] { "a" }, new String[] { "b", "c" });
+        // and so are the boundaries between items
+        cache.diff(new String[] { "ab" }, new String[] { "c" });
+        cache.diff(new String[] { "a", "b" }, new String[] { "c" });
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    public void testEviction() throws Exception
+    {
+        // room for two entries of one delta in a single stripe
+        CachingDiffAlgorithm cache = new CachingDiffAlgorithm(new MyersDiff(),
+                "myers", 300, 1);
+        Object[][] seqs = new Object[4][];
+        for (int s = 0; s < seqs.length; s++)
+            seqs[s] = new String[] { "a", "b", "c" + s };
+        cache.diff(seqs[0], seqs[1]);
+        cache.diff(seqs[1], seqs[2]);
+        cache.diff(seqs[0], seqs[1]);
+        cache.diff(seqs[2], seqs[3]);
+        assertEquals(1, cache.getHits());
+        assertTrue(cache.getBytes() <= 300);
+
+        // the least recently used entry was dropped
+        cache.diff(seqs[0], seqs[1]);
+        assertEquals(2, cache.getHits());
+        cache.diff(seqs[1], seqs[2]);
+        assertEquals(2, cache.getHits());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    public void testThreads() throws Exception
+    {
+        final CachingDiffAlgorithm cache = new CachingDiffAlgorithm(
+                new MyersDiff());
+        final Object[][] seqs = new Object[8][];
+        for (int s = 0; s < seqs.length; s++)
+            seqs[s] = DiffHelper.randomSequence(100, s);
+        final String expected = cache.diff(seqs[0], seqs[1]).toString();
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++)
+        {
+            threads[t] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int k = 0; k < 100; k++)
+                        {
+                            int s = k % (seqs.length - 1);
+                            Revision revision = cache.diff(seqs[s],
+                                    seqs[s + 1]);
+                            if (s == 0)
+                                assertEquals(expected, revision.toString());
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        failure[0] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++)
+            threads[t].join();
+        if (failure[0] != null)
+            fail(failure[0].toString());
+        assertEquals(401, cache.getHits() + cache.getMisses());
+        assertEquals(seqs.length - 1, cache.size());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.suigeneris.jrcs.diff.delta.AddDelta;
+import org.suigeneris.jrcs.diff.delta.Chunk;
+
+public class ChunkTests extends TestCase
+{
+    Object[] text = new String[] { "a", "b", "c", "d", "e" };
+
+    public ChunkTests(String name)
+    {
+        super(name);
+    }
+
+    public void testView()
+    {
+        Chunk chunk = Chunk.view(text, 1, 3, 7);
+        assertEquals(7, chunk.anchor());
+        assertEquals(3, chunk.size());
+        assertTrue(chunk.hasText());
+        assertEquals("c", chunk.get(1));
+        assertEquals(new Chunk(text, 1, 3, 7).toString(), chunk.toString());
+
+        // the text is read from the sequence, not copied
+        text[2] = "x";
+        assertEquals("x", chunk.get(1));
+
+        Object[] copy = new Object[4];
+        chunk.copyTo(copy, 1);
+        assertEquals(Arrays.asList(new Object[] { null, "b", "x", "d" }),
+                Arrays.asList(copy));
+        try
+        {
+            chunk.get(3);
+            fail("read beyond the chunk");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            // expected
+        }
+    }
+
+    public void testChunkCopied()
+    {
+        // the list of a view is its own, and can be changed
+        Chunk chunk = Chunk.view(text, 1, 3, 0);
+        List list = chunk.chunk();
+        assertEquals(Arrays.asList(new Object[] { "b", "c", "d" }), list);
+        list.set(0, "x");
+        list.add("y");
+        assertEquals("b", text[1]);
+        assertSame(list, chunk.chunk());
+
+        // and it is what the chunk reads from then
+        text[2] = "z";
+        assertEquals("c", chunk.get(1));
+        assertEquals("x", chunk.get(0));
+    }
+
+    public void testBounds()
+    {
+        try
+        {
+            Chunk.view(text, 3, 3, 0);
+            fail("viewed beyond the text");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            // expected
+        }
+        assertEquals(0, Chunk.view(text, 5, 0, 0).chunk().size());
+    }
+
+    public void testPatch() throws Exception
+    {
+        Chunk chunk = Chunk.view(text, 1, 2, 0);
+        List target = new ArrayList(Arrays.asList(new Object[] { "b", "c",
+                "z" }));
+        assertTrue(chunk.verify(target));
+        chunk.applyAdd(3, target);
+        assertEquals(Arrays.asList(new Object[] { "b", "c", "z", "b", "c" }),
+                target);
+
+        Revision revision = new Revision();
+        revision.addDelta(new AddDelta(1, chunk));
+        assertEquals(Arrays.asList(new Object[] { "q", "b", "c" }), Arrays
+                .asList(revision.patch(new Object[] { "q" })));
+    }
+
+    public void testSaved()
+    {
+        Chunk chunk = new Chunk(text, 0, 2);
+        text[0] = "x";
+        assertEquals("a", chunk.get(0));
+        assertFalse(new Chunk(0, 2).hasText());
+    }
+}
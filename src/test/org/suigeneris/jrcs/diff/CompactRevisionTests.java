@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.suigeneris.jrcs.diff.delta.AddDelta;
+import org.suigeneris.jrcs.diff.delta.Chunk;
+import org.suigeneris.jrcs.diff.delta.DeleteDelta;
+import org.suigeneris.jrcs.diff.delta.Delta;
+import org.suigeneris.jrcs.diff.myers.MyersDiff;
+import org.suigeneris.jrcs.diff.patience.PatienceDiff;
+
+public class CompactRevisionTests extends TestCase
+{
+    Object[] orig = new String[] { "a", "b", "c", "d", "e", "f" };
+
+    Object[] rev = new String[] { "a", "x", "c", "d", "f", "g" };
+
+    public CompactRevisionTests(String name)
+    {
+        super(name);
+    }
+
+    CompactRevision compact()
+    {
+        CompactRevision revision = new CompactRevision(orig, rev);
+        revision.addHunk(1, 1, 1, 1);
+        revision.addHunk(4, 1, 4, 0);
+        revision.addHunk(6, 0, 5, 1);
+        return revision;
+    }
+
+    Revision plain()
+    {
+        Revision revision = new Revision();
+        revision.addDelta(Delta.newDelta(new Chunk(orig, 1, 1), new Chunk(
+                rev, 1, 1)));
+        revision.addDelta(Delta.newDelta(new Chunk(orig, 4, 1), new Chunk(
+                rev, 4, 0)));
+        revision.addDelta(Delta.newDelta(new Chunk(orig, 6, 0), new Chunk(
+                rev, 5, 1)));
+        return revision;
+    }
+
+    public void testPatch() throws Exception
+    {
+        CompactRevision revision = compact();
+        assertTrue(Diff.compare(rev, revision.patch(orig)));
+        List target = new ArrayList(Arrays.asList(orig));
+        revision.applyTo(target, new DiffOptions());
+        assertEquals(Arrays.asList(rev), target);
+    }
+
+    public void testPatchFails()
+    {
+        Object[] other = new String[] { "a", "y", "c", "d", "e", "f" };
+        try
+        {
+            compact().patch(other);
+            fail("patched a different sequence");
+        }
+        catch (PatchFailedException e)
+        {
+            // expected
+        }
+        try
+        {
+            compact().patch(new Object[] { "a", "b" });
+            fail("patched a shorter sequence");
+        }
+        catch (PatchFailedException e)
+        {
+            // expected
+        }
+    }
+
+    public void testToString()
+    {
+        assertEquals(plain().toString(), compact().toString());
+        assertEquals(plain().toRCSString("\n"), compact().toRCSString("\n"));
+    }
+
+    public void testDeltas()
+    {
+        CompactRevision revision = compact();
+        Delta delta = revision.getDelta(2);
+        assertSame(delta, revision.getDelta(2));
+        assertTrue(delta instanceof AddDelta);
+        assertEquals(plain().getDelta(2).toString(), delta.toString());
+        assertEquals(3, revision.size());
+    }
+
+    public void testAccessors()
+    {
+        CompactRevision revision = compact();
+        assertEquals(4, revision.origAnchor(1));
+        assertEquals(1, revision.origCount(1));
+        assertEquals(4, revision.revAnchor(1));
+        assertEquals(0, revision.revCount(1));
+
+        // a materialized delta is what the accessors read
+        revision.getDelta(1).getOriginal().shift(10);
+        assertEquals(14, revision.origAnchor(1));
+        try
+        {
+            revision.origAnchor(3);
+            fail("read a delta that isn't there");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            // expected
+        }
+    }
+
+    public void testAddedDeltas() throws Exception
+    {
+        CompactRevision revision = new CompactRevision(orig, rev);
+        Revision deltas = plain();
+        revision.addHunk(4, 1, 4, 0);
+        revision.insertDelta(deltas.getDelta(0));
+        revision.addDelta(deltas.getDelta(2));
+        assertSame(deltas.getDelta(0), revision.getDelta(0));
+        assertEquals(1, revision.revAnchor(0));
+        assertEquals(5, revision.revAnchor(2));
+        assertEquals(deltas.toString(), revision.toString());
+        assertTrue(Diff.compare(rev, revision.patch(orig)));
+    }
+
+    public void testDeleteDelta() throws Exception
+    {
+        // a delete delta made from its original chunk has no revised chunk
+        CompactRevision revision = new CompactRevision(orig, rev);
+        revision.addHunk(1, 1, 1, 1);
+        revision.addDelta(new DeleteDelta(new Chunk(orig, 4, 1)));
+        revision.addHunk(6, 0, 5, 1);
+        assertEquals(4, revision.revAnchor(1));
+        assertEquals(0, revision.revCount(1));
+        assertTrue(Diff.compare(rev, revision.patch(orig)));
+
+        revision.shift(2);
+        assertEquals(6, revision.origAnchor(1));
+        assertEquals(6, revision.revAnchor(1));
+        Object[] longer = new String[orig.length + 2];
+        longer[0] = "p";
+        longer[1] = "q";
+        System.arraycopy(orig, 0, longer, 2, orig.length);
+        List target = new ArrayList(Arrays.asList(longer));
+        revision.applyTo(target);
+        assertEquals(Arrays.asList(new String[] { "p", "q", "a", "x", "c",
+                "d", "f", "g" }), target);
+    }
+
+    public void testBadHunks()
+    {
+        CompactRevision revision = new CompactRevision(orig, rev);
+        try
+        {
+            revision.addHunk(1, 0, 1, 0);
+            fail("added an empty hunk");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+        try
+        {
+            revision.addHunk(5, 2, 1, 1);
+            fail("added a hunk beyond the original sequence");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    public void testGrowth() throws Exception
+    {
+        Object[] a = DiffHelper.randomSequence(1000, 7);
+        Object[] b = (Object[]) a.clone();
+        for (int i = 5; i < b.length; i += 40)
+            b[i] = Integer.valueOf(-i);
+        Revision revision = new MyersDiff().diff(a, b);
+        assertTrue(revision instanceof CompactRevision);
+        assertTrue(revision.size() > 8);
+        assertTrue(Diff.compare(b, revision.patch(a)));
+    }
+
+    public void testShifted() throws Exception
+    {
+        // the common prefix and suffix are trimmed, so the algorithm works on
+        // shorter sequences and its revision is shifted back
+        Object[] a = new String[] { "p", "q", "r", "s", "t", "u" };
+        Object[] b = new String[] { "p", "q", "x", "s", "t", "u" };
+        Revision revision = new Diff(a, new PatienceDiff()).diff(b);
+        assertTrue(revision instanceof CompactRevision);
+        assertEquals(1, revision.size());
+        Delta delta = revision.getDelta(0);
+        assertEquals(2, delta.getOriginal().anchor());
+        assertEquals("r", delta.getOriginal().chunk().get(0));
+        assertEquals("x", delta.getRevised().chunk().get(0));
+        assertTrue(Diff.compare(b, revision.patch(a)));
+    }
+}
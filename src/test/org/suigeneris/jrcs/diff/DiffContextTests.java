@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import junit.framework.TestCase;
+
+public class DiffContextTests extends TestCase
+{
+
+    public DiffContextTests(String name)
+    {
+        super(name);
+    }
+
+    public void testRetained()
+    {
+        DiffContext.clear();
+        DiffContext context = DiffContext.acquire();
+        int[] vector = context.vector(1000);
+        context.release();
+        assertSame(context, DiffContext.acquire());
+        assertSame(vector, context.vector(1000));
+
+        // together, the buffers go over the budget, so none is kept
+        context.vector2(DiffContext.RETAINED_BYTES / 8);
+        context.trace(DiffContext.RETAINED_BYTES / 8);
+        assertTrue(context.getRetainedBytes() > DiffContext.RETAINED_BYTES);
+        context.release();
+        assertTrue(context.getRetainedBytes() < 1024);
+        assertNotSame(vector, context.vector(1000));
+    }
+
+    public void testClear()
+    {
+        DiffContext context = DiffContext.acquire();
+        context.release();
+        DiffContext.clear();
+        DiffContext other = DiffContext.acquire();
+        other.release();
+        assertNotSame(context, other);
+    }
+}
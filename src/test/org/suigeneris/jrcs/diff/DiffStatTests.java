@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import junit.framework.TestCase;
+
+import org.suigeneris.jrcs.diff.delta.Delta;
+import org.suigeneris.jrcs.diff.myers.MyersDiff;
+
+public class DiffStatTests extends TestCase
+{
+
+    public DiffStatTests(String name)
+    {
+        super(name);
+    }
+
+    void assertSameCounts(Object[] orig, Object[] rev) throws Exception
+    {
+        Revision revision = new MyersDiff().diff(orig, rev);
+        int deleted = 0;
+        int inserted = 0;
+        for (int d = 0; d < revision.size(); d++)
+        {
+            Delta delta = revision.getDelta(d);
+            deleted += delta.getOriginal().size();
+            inserted += delta.getRevised().size();
+        }
+        DiffStat stat = Diff.stat(orig, rev);
+        assertEquals(deleted, stat.getDeleted());
+        assertEquals(inserted, stat.getInserted());
+        assertEquals(orig.length - deleted, stat.getCommon());
+        assertEquals(rev.length - inserted, stat.getCommon());
+    }
+
+    public void testSimple() throws Exception
+    {
+        Object[] orig = new String[] { "[1] one", "[2] two", "[3] three",
+                "[4] four", "[5] five", "[6] six" };
+        Object[] rev = new String[] { "[1] one", "[3] three", "[4] four",
+                "[4a] four and a half", "[5] five", "[7] seven" };
+        DiffStat stat = Diff.stat(orig, rev);
+        assertEquals(2, stat.getInserted());
+        assertEquals(2, stat.getDeleted());
+        assertEquals(4, stat.getCommon());
+        assertEquals(4, stat.getDistance());
+    }
+
+    public void testEmpty() throws Exception
+    {
+        Object[] seq = new String[] { "a", "b", "c" };
+        assertEquals(0, Diff.stat(seq, seq).getDistance());
+        assertEquals(3, Diff.stat(new Object[0], seq).getInserted());
+        assertEquals(3, Diff.stat(seq, new Object[0]).getDeleted());
+    }
+
+    public void testRandomEdits() throws Exception
+    {
+        for (int seed = 0; seed < 20; seed++)
+        {
+            Object[] orig = DiffHelper.randomSequence(50 + 37 * seed, seed);
+            Object[] rev = DiffHelper.randomEdit(orig, seed);
+            assertSameCounts(orig, rev);
+            assertSameCounts(rev, orig);
+        }
+    }
+
+    public void testShuffles() throws Exception
+    {
+        // long sequences, so that carries cross several words
+        for (int seed = 0; seed < 5; seed++)
+        {
+            Object[] orig = DiffHelper.randomSequence(700, seed);
+            Object[] rev = DiffHelper.shuffle(orig, seed);
+            assertSameCounts(orig, rev);
+        }
+    }
+
+    public void testRepeatedItems() throws Exception
+    {
+        // tokens frequent enough to get precomputed masks
+        Object[] orig = new Object[500];
+        Object[] rev = new Object[400];
+        for (int i = 0; i < orig.length; i++)
+            orig[i] = Integer.valueOf(i % 3);
+        for (int j = 0; j < rev.length; j++)
+            rev[j] = Integer.valueOf((j * 7) % 5);
+        assertSameCounts(orig, rev);
+    }
+
+    public void testWithinDistance() throws Exception
+    {
+        for (int seed = 0; seed < 20; seed++)
+        {
+            Object[] orig = DiffHelper.randomSequence(100 + 17 * seed, seed);
+            Object[] rev = DiffHelper.randomEdit(orig, seed);
+            int distance = Diff.stat(orig, rev).getDistance();
+            assertTrue(Diff.withinDistance(orig, rev, distance));
+            assertTrue(Diff.withinDistance(orig, rev, distance + 5));
+            if (distance > 0)
+                assertFalse(Diff.withinDistance(orig, rev, distance - 1));
+        }
+        Object[] seq = new String[] { "a", "b", "c" };
+        assertTrue(Diff.withinDistance(seq, seq, 0));
+        assertTrue(Diff.withinDistance(new Object[0], seq, 3));
+        assertFalse(Diff.withinDistance(new Object[0], seq, 2));
+    }
+
+    public void testCancelled() throws Exception
+    {
+        DiffOptions options = new DiffOptions();
+        options.cancel();
+        try
+        {
+            Diff.stat(DiffHelper.randomSequence(100, 1), DiffHelper
+                    .randomSequence(100, 2), options);
+            fail("cancelled count didn't stop");
+        }
+        catch (DiffTimeoutException e)
+        {
+            // expected
+        }
+    }
+}
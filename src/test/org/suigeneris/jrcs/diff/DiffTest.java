@@ -157,6 +157,29 @@ public abstract class DiffTest extends TestCase
                 .toRCSString());
     }
 
+    public void testChangeInTheMiddle() throws DifferentiationFailedException,
+            PatchFailedException
+    {
+        Object[] rev = new String[]
+        {
+                "[1] one",
+                "[2] two",
+                "[3] three",
+                "[4] four revised",
+                "[5] five",
+                "[6] six",
+                "[7] seven",
+                "[8] eight",
+                "[9] nine" };
+        Revision revision = Diff.diff(original, rev, algorithm);
+        assertEquals(1, revision.size());
+        assertEquals(3, revision.getDelta(0).getOriginal().anchor());
+        assertEquals(3, revision.getDelta(0).getRevised().anchor());
+        assertTrue(Diff.compare(revision.patch(original), rev));
+        assertEquals("d4 1" + Diff.NL + "a4 1" + Diff.NL + "[4] four revised"
+                + Diff.NL, revision.toRCSString());
+    }
+
     public void testPatchFailed() throws DifferentiationFailedException
     {
         try
@@ -170,6 +193,73 @@ public abstract class DiffTest extends TestCase
         }
     }
 
+    public void testDeadlinePassed() throws DifferentiationFailedException
+    {
+        DiffOptions options = new DiffOptions();
+        options.setDeadline(System.currentTimeMillis() - 1);
+        try
+        {
+            algorithm.diff(original, rev2, options);
+            fail("DiffTimeoutException not thrown");
+        }
+        catch (DiffTimeoutException e)
+        {
+        }
+    }
+
+    public void testCancelled() throws DifferentiationFailedException,
+            PatchFailedException
+    {
+        DiffOptions options = new DiffOptions(60 * 1000);
+        Revision revision = Diff.diff(original, rev2, algorithm, options);
+        assertTrue(Diff.compare(revision.patch(original, options), rev2));
+
+        options.cancel();
+        try
+        {
+            Diff.diff(original, rev1, algorithm, options);
+            fail("DiffTimeoutException not thrown");
+        }
+        catch (DiffTimeoutException e)
+        {
+        }
+        try
+        {
+            revision.patch(original, options);
+            fail("DiffTimeoutException not thrown");
+        }
+        catch (DiffTimeoutException e)
+        {
+        }
+    }
+
+    public void testWithoutOptions() throws DifferentiationFailedException,
+            PatchFailedException
+    {
+        // an algorithm written before the options were added
+        DiffAlgorithm plain = new DiffAlgorithm()
+        {
+            public Revision diff(Object[] orig, Object[] rev)
+                    throws DifferentiationFailedException
+            {
+                return algorithm.diff(orig, rev);
+            }
+        };
+        DiffOptions options = new DiffOptions(60 * 1000);
+        Revision revision = Diff.diff(original, rev2, plain, options);
+        assertTrue(Diff.compare(revision.patch(original), rev2));
+
+        options.cancel();
+        try
+        {
+            Diff.diff(original, rev1, plain, options);
+            fail("DiffTimeoutException not thrown");
+        }
+        catch (DiffTimeoutException e)
+        {
+        }
+    }
+
     public void testPreviouslyFailedShuffle()
             throws DifferentiationFailedException, PatchFailedException
     {
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+
+import junit.framework.TestCase;
+
+import org.suigeneris.jrcs.diff.format.ContextDiffWriter;
+import org.suigeneris.jrcs.diff.format.EdDiffWriter;
+import org.suigeneris.jrcs.diff.format.RCSDiffWriter;
+import org.suigeneris.jrcs.diff.format.UnifiedDiffWriter;
+
+public class DiffWriterTests extends TestCase
+{
+    Object[] orig = new String[] { "a", "b", "c", "d", "e", "f", "g", "h",
+            "i", "j", "k", "l", "m" };
+
+    Object[] rev = new String[] { "a", "B", "c", "d", "e", "f", "g", "h",
+            "i", "k", "l", "m", ".", "n" };
+
+    // the output of GNU diff for the same files
+    static final String UNIFIED = "--- o\n"
+            + "+++ r\n"
+            + "@@ -1,4 +1,4 @@\n"
+            + " a\n"
+            + "-b\n"
+            + "+B\n"
+            + " c\n"
+            + " d\n"
+            + "@@ -8,6 +8,7 @@\n"
+            + " h\n"
+            + " i\n"
+            + "-j\n"
+            + " k\n"
+            + " l\n"
+            + " m\n"
+            + "+.\n"
+            + "+n\n";
+
+    static final String CONTEXT = "*** o\n"
+            + "--- r\n"
+            + "***************\n"
+            + "*** 1,3 ****\n"
+            + "  a\n"
+            + "! b\n"
+            + "  c\n"
+            + "--- 1,3 ----\n"
+            + "  a\n"
+            + "! B\n"
+            + "  c\n"
+            + "***************\n"
+            + "*** 9,11 ****\n"
+            + "  i\n"
+            + "- j\n"
+            + "  k\n"
+            + "--- 9,10 ----\n"
+            + "***************\n"
+            + "*** 13 ****\n"
+            + "--- 12,14 ----\n"
+            + "  m\n"
+            + "+ .\n"
+            + "+ n\n";
+
+    static final String ED = "13a\n"
+            + "..\n"
+            + ".\n"
+            + "s/.//\n"
+            + "a\n"
+            + "n\n"
+            + ".\n"
+            + "10d\n"
+            + "2c\n"
+            + "B\n"
+            + ".\n";
+
+    static final String RCS = "d2 1\n"
+            + "a2 1\n"
+            + "B\n"
+            + "d10 1\n"
+            + "a13 2\n"
+            + ".\n"
+            + "n\n";
+
+    public DiffWriterTests(String name)
+    {
+        super(name);
+    }
+
+    public void testUnified() throws Exception
+    {
+        StringBuilder s = new StringBuilder();
+        UnifiedDiffWriter writer = new UnifiedDiffWriter(s, 2);
+        writer.writeHeader("o", "r");
+        writer.write(Diff.diff(orig, rev), orig);
+        assertEquals(UNIFIED, s.toString());
+    }
+
+    public void testContext() throws Exception
+    {
+        StringBuilder s = new StringBuilder();
+        ContextDiffWriter writer = new ContextDiffWriter(s, 1);
+        writer.writeHeader("o", "r");
+        writer.write(Diff.diff(orig, rev), orig);
+        assertEquals(CONTEXT, s.toString());
+    }
+
+    public void testEd() throws Exception
+    {
+        StringBuilder s = new StringBuilder();
+        new EdDiffWriter(s).write(Diff.diff(orig, rev), null);
+        assertEquals(ED, s.toString());
+    }
+
+    public void testRCS() throws Exception
+    {
+        Revision revision = Diff.diff(orig, rev);
+        StringBuilder s = new StringBuilder();
+        new RCSDiffWriter(s).write(revision, null);
+        assertEquals(RCS, s.toString());
+        assertEquals(revision.toRCSString("\n"), s.toString());
+    }
+
+    public void testChannel() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        UnifiedDiffWriter writer = new UnifiedDiffWriter(Channels
+                .newChannel(bytes), "UTF-8", 2);
+        writer.setLineSeparator("\r\n");
+        writer.writeHeader("o", "r");
+        writer.write(Diff.diff(orig, rev), orig);
+        writer.flush();
+        assertEquals(UNIFIED.replaceAll("\n", "\r\n"), bytes
+                .toString("UTF-8"));
+    }
+
+    public void testDeltasNotKept() throws Exception
+    {
+        CompactRevision revision = new CompactRevision(orig, rev);
+        revision.addHunk(1, 1, 1, 1);
+        new UnifiedDiffWriter(new StringBuilder()).write(revision, orig);
+        assertNotSame(revision.listIterator(0).next(), revision
+                .listIterator(0).next());
+        assertSame(revision.getDelta(0), revision.listIterator(0).next());
+    }
+
+    public void testNoDifferences() throws Exception
+    {
+        StringBuilder s = new StringBuilder();
+        new ContextDiffWriter(s).write(Diff.diff(orig, orig), orig);
+        assertEquals(0, s.length());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import junit.framework.TestCase;
+
+import org.suigeneris.jrcs.diff.external.ExternalDiff;
+import org.suigeneris.jrcs.diff.myers.MyersDiff;
+
+public class ExternalDiffTests extends TestCase
+{
+    static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    File file1;
+    File file2;
+
+    public ExternalDiffTests(String name)
+    {
+        super(name);
+    }
+
+    protected void tearDown()
+    {
+        if (file1 != null)
+            file1.delete();
+        if (file2 != null)
+            file2.delete();
+    }
+
+    File write(Object[] lines) throws IOException
+    {
+        File file = File.createTempFile("jrcs", ".txt");
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(Diff.arrayToString(lines, "\n").getBytes("ISO-8859-1"));
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+
+    static Object[] strings(Object[] items)
+    {
+        Object[] result = new String[items.length];
+        for (int i = 0; i < items.length; i++)
+            result[i] = items[i].toString();
+        return result;
+    }
+
+    Revision diff(ExternalDiff diff, Object[] orig, Object[] rev)
+            throws Exception
+    {
+        file1 = write(orig);
+        file2 = write(rev);
+        Revision revision = new Revision();
+        diff.diff(file1, file2, LATIN1, revision);
+        assertTrue(Diff.compare(rev, revision.patch(orig)));
+        return revision;
+    }
+
+    public void testSimple() throws Exception
+    {
+        Object[] orig = new String[] { "[1] one", "[2] two", "[3] three",
+                "[4] four", "[5] five", "[6] six" };
+        Object[] rev = new String[] { "[1] one", "[3] three", "[4] four",
+                "[4a] four and a half", "[5] five", "[7] seven" };
+        Revision revision = diff(new ExternalDiff(), orig, rev);
+        assertEquals(Diff.diff(orig, rev).toString(), revision.toString());
+    }
+
+    public void testEmpty() throws Exception
+    {
+        Object[] lines = new String[] { "a", "b", "c" };
+        assertEquals(0, diff(new ExternalDiff(), lines, lines).size());
+        assertEquals(1, diff(new ExternalDiff(), new Object[0], lines).size());
+        assertEquals(1, diff(new ExternalDiff(), lines, new Object[0]).size());
+    }
+
+    public void testSmallRuns() throws Exception
+    {
+        // many runs to merge, several blocks of anchors, and windows that
+        // are too large to be differenced
+        ExternalDiff diff = new ExternalDiff(new MyersDiff(), 3, 8, null);
+        for (int seed = 0; seed < 20; seed++)
+        {
+            Object[] orig = DiffHelper.randomSequence(200, seed);
+            Object[] rev = DiffHelper.randomEdit(orig, seed);
+            diff(diff, strings(orig), strings(rev));
+            tearDown();
+        }
+    }
+
+    public void testRepeatedLines() throws Exception
+    {
+        Object[] orig = new String[300];
+        Object[] rev = new String[250];
+        for (int i = 0; i < orig.length; i++)
+            orig[i] = "x" + (i % 7);
+        for (int j = 0; j < rev.length; j++)
+            rev[j] = "x" + (j % 5);
+        diff(new ExternalDiff(new MyersDiff(), 16, 32, null), orig, rev);
+    }
+}
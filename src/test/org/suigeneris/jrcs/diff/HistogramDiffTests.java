@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import org.suigeneris.jrcs.diff.histogram.HistogramDiff;
+
+public class HistogramDiffTests extends DiffTest
+{
+
+    public HistogramDiffTests(String name)
+    {
+        super(name, new HistogramDiff());
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class LineIndexTests extends TestCase
+{
+    File file1;
+    File file2;
+
+    public LineIndexTests(String name)
+    {
+        super(name);
+    }
+
+    protected void tearDown()
+    {
+        if (file1 != null)
+            file1.delete();
+        if (file2 != null)
+            file2.delete();
+    }
+
+    File write(String text) throws IOException
+    {
+        File file = File.createTempFile("jrcs", ".txt");
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(text.getBytes("ISO-8859-1"));
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+
+    public void testLines() throws Exception
+    {
+        file1 = write("[1] one\n[2] two\r\n\n[4] four");
+        LineIndex index = LineIndex.map(file1);
+        assertEquals(4, index.size());
+        assertEquals("[1] one", index.getLine(0));
+        assertEquals("[2] two", index.getLine(1));
+        assertEquals("", index.getLine(2));
+        assertEquals("[4] four", index.getLine(3));
+        assertEquals("[4] four", index.lines()[3].toString());
+    }
+
+    public void testEmpty() throws Exception
+    {
+        file1 = write("");
+        assertEquals(0, LineIndex.map(file1).size());
+    }
+
+    public void testEquals() throws Exception
+    {
+        file1 = write("same\r\nother\nsame\n");
+        file2 = write("same\nsame\r\nsamf\n");
+        LineIndex a = LineIndex.map(file1);
+        LineIndex b = LineIndex.map(file2);
+        assertTrue(a.equals(0, b, 0));
+        assertTrue(a.equals(0, b, 1));
+        assertTrue(a.equals(0, a, 2));
+        assertFalse(a.equals(1, b, 1));
+        assertFalse(a.equals(0, b, 2));
+        assertEquals(a.hash(0), b.hash(1));
+        assertEquals(a.lines()[0], b.lines()[1]);
+        assertEquals(a.lines()[0].hashCode(), b.lines()[1].hashCode());
+    }
+
+    public void testDiff() throws Exception
+    {
+        String[] orig = new String[] { "[1] one", "[2] two", "[3] three",
+                "[4] four", "[5] five", "[6] six" };
+        String[] rev = new String[] { "[1] one", "[3] three", "[4] four",
+                "[4a] four and a half", "[5] five", "[7] seven" };
+        file1 = write(Diff.arrayToString(orig, "\n"));
+        file2 = write(Diff.arrayToString(rev, "\r\n"));
+
+        Object[] a = LineIndex.map(file1).lines();
+        Object[] b = LineIndex.map(file2).lines();
+        Revision revision = Diff.diff(a, b);
+        assertEquals(Diff.diff(orig, rev).toString(), revision.toString());
+        assertTrue(Diff.compare(b, revision.patch(a)));
+    }
+}
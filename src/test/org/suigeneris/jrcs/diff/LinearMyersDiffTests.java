@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import org.suigeneris.jrcs.diff.delta.Delta;
+import org.suigeneris.jrcs.diff.myers.LinearMyersDiff;
+import org.suigeneris.jrcs.diff.myers.MyersDiff;
+
+public class LinearMyersDiffTests extends DiffTest
+{
+
+    public LinearMyersDiffTests(String name)
+    {
+        super(name, new LinearMyersDiff());
+    }
+
+    static int editCount(Revision revision)
+    {
+        int count = 0;
+        for (int i = 0; i < revision.size(); i++)
+        {
+            Delta delta = revision.getDelta(i);
+            count += delta.getOriginal().size() + delta.getRevised().size();
+        }
+        return count;
+    }
+
+    public void testSameCostAsMyers() throws DifferentiationFailedException,
+            PatchFailedException
+    {
+        Object[] orig = DiffHelper.randomSequence(LARGE);
+        for (int seed = 0; seed < 10; seed++)
+        {
+            Object[] rev = DiffHelper.randomEdit(orig, seed);
+            Revision linear = Diff.diff(orig, rev, algorithm);
+            Revision myers = Diff.diff(orig, rev, new MyersDiff());
+            assertEquals("iter " + seed, editCount(myers), editCount(linear));
+            assertTrue(Diff.compare(linear.patch(orig), rev));
+            orig = rev;
+        }
+    }
+
+    public void testDefaultAboveThreshold()
+            throws DifferentiationFailedException, PatchFailedException
+    {
+        int threshold = Diff.getLinearThreshold();
+        try
+        {
+            Diff.setLinearThreshold(10);
+            Revision revision = Diff.diff(original, rev1);
+            assertEquals(2, revision.size());
+            assertTrue(Diff.compare(revision.patch(original), rev1));
+        }
+        finally
+        {
+            Diff.setLinearThreshold(threshold);
+        }
+    }
+
+}
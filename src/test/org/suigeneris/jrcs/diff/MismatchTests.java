@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class MismatchTests extends TestCase
+{
+
+    public MismatchTests(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Compares an implementation with the scalar one on sequences that agree
+     * on runs of every length.
+     */
+    void check(Mismatch.Finder finder)
+    {
+        Mismatch.Finder scalar = new Mismatch.Finder();
+        Random random = new Random(7);
+        int[] a = new int[300];
+        int[] b = new int[300];
+        for (int t = 0; t < 200; t++)
+        {
+            for (int i = 0; i < a.length; i++)
+            {
+                a[i] = random.nextInt(1000);
+                b[i] = a[i];
+            }
+            int at = random.nextInt(a.length);
+            b[at]++;
+            for (int i = 0; i < a.length; i += 1 + random.nextInt(50))
+            {
+                int max = random.nextInt(a.length - i + 1);
+                assertEquals(scalar.forward(a, i, b, i, max), finder.forward(
+                        a, i, b, i, max));
+                assertEquals(scalar.forward(a, i, b, i, max), Mismatch
+                        .forward(a, i, b, i, max));
+                int end = a.length - i;
+                assertEquals(scalar.backward(a, end, b, end, max), finder
+                        .backward(a, end, b, end, max));
+                assertEquals(scalar.backward(a, end, b, end, max), Mismatch
+                        .backward(a, end, b, end, max));
+            }
+        }
+    }
+
+    public void testScalar()
+    {
+        Mismatch.Finder finder = Mismatch.load("scalar");
+        assertEquals("scalar", finder.getName());
+        check(finder);
+    }
+
+    public void testArrays()
+    {
+        Mismatch.Finder finder = Mismatch.load("arrays");
+        // only on Java 9 and later
+        if (finder.getName().equals("arrays"))
+            check(finder);
+    }
+
+    public void testDefault()
+    {
+        check(Mismatch.load(null));
+    }
+
+    public void testNothingToCompare()
+    {
+        int[] a = new int[] { 1, 2, 3 };
+        assertEquals(0, Mismatch.forward(a, 3, a, 3, 0));
+        assertEquals(0, Mismatch.forward(a, 4, a, 2, -1));
+        assertEquals(0, Mismatch.backward(a, 0, a, 0, 0));
+    }
+}
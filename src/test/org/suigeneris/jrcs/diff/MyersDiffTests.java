@@ -14,6 +14,7 @@
 
 package org.suigeneris.jrcs.diff;
 
+import org.suigeneris.jrcs.diff.delta.Delta;
 import org.suigeneris.jrcs.diff.myers.MyersDiff;
 
 public class MyersDiffTests extends DiffTest
@@ -24,4 +25,61 @@ public class MyersDiffTests extends DiffTest
         super(name, new MyersDiff());
     }
 
+    public void testSamePathAsNodes() throws DifferentiationFailedException
+    {
+        Object[] orig = DiffHelper.randomSequence(LARGE);
+        for (int seed = 0; seed < 10; seed++)
+        {
+            Object[] rev = DiffHelper.randomEdit(orig, seed);
+            Revision nodes = MyersDiff.buildRevision(MyersDiff.buildPath(orig,
+                    rev), orig, rev);
+            assertEquals("iter " + seed, nodes.toString(), algorithm.diff(
+                    orig, rev).toString());
+            orig = rev;
+        }
+    }
+
+    public void testCostBound() throws DifferentiationFailedException,
+            PatchFailedException
+    {
+        Object[] orig = DiffHelper.randomSequence(LARGE);
+        Object[] rev = DiffHelper.shuffle(orig);
+        Revision revision = new MyersDiff(16).diff(orig, rev);
+        assertTrue(revision.isApproximate());
+        assertTrue(Diff.compare(revision.patch(orig), rev));
+    }
+
+    public void testCostBoundWithCommonEnds()
+            throws DifferentiationFailedException, PatchFailedException
+    {
+        // the common prefix and suffix are matched once, not at every
+        // restart of the search
+        Object[] middle = DiffHelper.randomSequence(LARGE);
+        Object[] shuffled = DiffHelper.shuffle(middle);
+        Object[] orig = new Object[3 * LARGE];
+        Object[] rev = new Object[3 * LARGE];
+        for (int i = 0; i < LARGE; i++)
+        {
+            orig[i] = rev[i] = "head " + i;
+            orig[LARGE + i] = middle[i];
+            rev[LARGE + i] = shuffled[i];
+            orig[2 * LARGE + i] = rev[2 * LARGE + i] = "tail " + i;
+        }
+        Revision revision = new MyersDiff(16).diff(orig, rev);
+        assertTrue(revision.isApproximate());
+        assertTrue(revision.getDelta(0).getOriginal().first() >= LARGE);
+        Delta last = revision.getDelta(revision.size() - 1);
+        assertTrue(last.getOriginal().last() < 2 * LARGE);
+        assertTrue(Diff.compare(revision.patch(orig), rev));
+    }
+
+    public void testCostBoundNotReached()
+            throws DifferentiationFailedException, PatchFailedException
+    {
+        Revision bounded = new MyersDiff(16).diff(original, rev1);
+        assertFalse(bounded.isApproximate());
+        assertEquals(algorithm.diff(original, rev1).toString(), bounded
+                .toString());
+    }
+
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.suigeneris.jrcs.diff.delta.AddDelta;
+import org.suigeneris.jrcs.diff.delta.ChangeDelta;
+import org.suigeneris.jrcs.diff.delta.Chunk;
+import org.suigeneris.jrcs.diff.delta.DeleteDelta;
+import org.suigeneris.jrcs.diff.delta.Delta;
+
+public class NormalizerTests extends TestCase
+{
+    Object[] orig = new String[] { "a", "b", "c", "d", "e", "f" };
+
+    public NormalizerTests(String name)
+    {
+        super(name);
+    }
+
+    public void testAdjacent() throws Exception
+    {
+        Object[] rev = new String[] { "a", "x", "d", "e", "f" };
+        Revision revision = new Revision();
+        revision.addDelta(new DeleteDelta(new Chunk(orig, 1, 1)));
+        revision.addDelta(new ChangeDelta(new Chunk(orig, 2, 1), new Chunk(
+                rev, 1, 1)));
+        revision.setApproximate(true);
+        Revision normal = new Normalizer().normalize(revision, orig, rev);
+        assertEquals(1, normal.size());
+        assertTrue(normal.isApproximate());
+        Delta delta = normal.getDelta(0);
+        assertEquals(1, delta.getOriginal().first());
+        assertEquals(2, delta.getOriginal().size());
+        assertEquals(1, delta.getRevised().first());
+        assertEquals(1, delta.getRevised().size());
+        assertEquals(Arrays.asList(rev), Arrays.asList(normal.patch(orig)));
+    }
+
+    public void testGap() throws Exception
+    {
+        Object[] rev = new String[] { "a", "x", "c", "y", "e", "f" };
+        Revision revision = Diff.diff(orig, rev);
+        assertEquals(2, revision.size());
+        assertEquals(2, new Normalizer().normalize(revision, orig, rev)
+                .size());
+
+        Revision normal = new Normalizer(1).normalize(revision, orig, rev);
+        assertEquals(1, normal.size());
+        assertEquals(1, normal.getDelta(0).getOriginal().first());
+        assertEquals(3, normal.getDelta(0).getOriginal().size());
+        assertEquals(3, normal.getDelta(0).getRevised().size());
+        assertEquals(Arrays.asList(rev), Arrays.asList(normal.patch(orig)));
+    }
+
+    public void testSlideToBlank() throws Exception
+    {
+        Object[] orig = new String[] { "int f()", "{", "}", "", "int h()",
+                "{", "}" };
+        Object[] rev = new String[] { "int f()", "{", "}", "", "int g()", "{",
+                "}", "", "int h()", "{", "}" };
+        // the new function, as a diff may place it
+        Revision revision = new Revision();
+        revision.addDelta(new AddDelta(2, new Chunk(rev, 2, 4)));
+        assertEquals(Arrays.asList(rev), Arrays.asList(revision.patch(orig)));
+
+        Revision normal = new Normalizer().normalize(revision, orig, rev);
+        assertEquals(1, normal.size());
+        Chunk revised = normal.getDelta(0).getRevised();
+        assertEquals(0, normal.getDelta(0).getOriginal().size());
+        assertEquals(4, normal.getDelta(0).getOriginal().first());
+        assertEquals(Arrays.asList(new String[] { "int g()", "{", "}", "" }),
+                revised.chunk());
+        assertEquals(Arrays.asList(rev), Arrays.asList(normal.patch(orig)));
+    }
+
+    public void testSlideDown() throws Exception
+    {
+        // without blank lines, the deletion goes as low as it can
+        Object[] orig = new String[] { "x", "a", "b", "a", "b", "c" };
+        Object[] rev = new String[] { "x", "a", "b", "c" };
+        Revision revision = new Revision();
+        revision.addDelta(new DeleteDelta(new Chunk(orig, 1, 2)));
+        Revision normal = new Normalizer().normalize(revision, orig, rev);
+        assertEquals(3, normal.getDelta(0).getOriginal().first());
+        assertEquals(Arrays.asList(rev), Arrays.asList(normal.patch(orig)));
+    }
+
+    public void testRandom() throws Exception
+    {
+        String[] lines = new String[] { "", "a", "b", "{", "}" };
+        for (int seed = 0; seed < 200; seed++)
+        {
+            Random random = new Random(seed);
+            Object[] orig = new Object[random.nextInt(40)];
+            for (int i = 0; i < orig.length; i++)
+                orig[i] = lines[random.nextInt(lines.length)];
+            Object[] rev = RevisionTests.edit(orig, seed);
+            Revision revision = Diff.diff(orig, rev);
+            for (int gap = 0; gap < 3; gap++)
+            {
+                Revision normal = new Normalizer(gap).normalize(revision,
+                        orig, rev);
+                assertTrue(normal.size() <= revision.size());
+                assertEquals(Arrays.asList(rev), Arrays.asList(normal
+                        .patch(orig)));
+                for (int d = 1; d < normal.size(); d++)
+                {
+                    Chunk previous = normal.getDelta(d - 1).getOriginal();
+                    assertTrue(normal.getDelta(d).getOriginal().first()
+                            - previous.first() - previous.size() > gap);
+                }
+            }
+        }
+    }
+
+    public void testOutOfOrder() throws Exception
+    {
+        Revision revision = new Revision();
+        revision.addDelta(new DeleteDelta(new Chunk(orig, 3, 1)));
+        revision.addDelta(new DeleteDelta(new Chunk(orig, 1, 1)));
+        try
+        {
+            new Normalizer().normalize(revision, orig, new Object[4]);
+            fail("deltas out of order were normalized");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.suigeneris.jrcs.diff.myers.MyersDiff;
+import org.suigeneris.jrcs.diff.parallel.ParallelDiff;
+
+public class ParallelDiffTests extends DiffTest
+{
+
+    public ParallelDiffTests(String name)
+    {
+        super(name, new ParallelDiff(new MyersDiff(), ForkJoinPool
+                .commonPool(), 4));
+    }
+
+}
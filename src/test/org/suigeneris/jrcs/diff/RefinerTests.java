@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+import org.suigeneris.jrcs.diff.delta.ChangeDelta;
+import org.suigeneris.jrcs.diff.delta.Chunk;
+import org.suigeneris.jrcs.diff.delta.Delta;
+import org.suigeneris.jrcs.diff.myers.MyersDiff;
+import org.suigeneris.jrcs.diff.refine.Refiner;
+
+public class RefinerTests extends TestCase
+{
+
+    public RefinerTests(String name)
+    {
+        super(name);
+    }
+
+    static String text(Chunk chunk)
+    {
+        StringBuffer s = new StringBuffer();
+        for (int i = 0; i < chunk.size(); i++)
+        {
+            if (i > 0)
+                s.append('\n');
+            s.append(chunk.chunk().get(i));
+        }
+        return s.toString();
+    }
+
+    /**
+     * Rebuilds the revised text of a change delta from the original text and
+     * its refinement.
+     */
+    static String patch(ChangeDelta delta)
+    {
+        String orig = text(delta.getOriginal());
+        String rev = text(delta.getRevised());
+        Revision refinement = delta.getRefinement();
+        StringBuffer s = new StringBuffer();
+        int i = 0;
+        for (int d = 0; d < refinement.size(); d++)
+        {
+            Chunk original = refinement.getDelta(d).getOriginal();
+            Chunk revised = refinement.getDelta(d).getRevised();
+            assertTrue(original.first() >= i);
+            s.append(orig.substring(i, original.first()));
+            s.append(rev.substring(revised.first(), revised.first()
+                    + revised.size()));
+            i = original.first() + original.size();
+        }
+        s.append(orig.substring(i));
+        return s.toString();
+    }
+
+    public void testWords() throws Exception
+    {
+        Object[] orig = new String[] { "one", "the quick brown fox", "three" };
+        Object[] rev = new String[] { "one", "the slow brown dog", "three" };
+        Revision revision = Diff.diff(orig, rev);
+        new Refiner().refine(revision);
+
+        ChangeDelta delta = (ChangeDelta) revision.getDelta(0);
+        Revision refinement = delta.getRefinement();
+        assertEquals(2, refinement.size());
+        Delta first = refinement.getDelta(0);
+        assertEquals(4, first.getOriginal().first());
+        assertEquals(5, first.getOriginal().size());
+        assertEquals(4, first.getRevised().first());
+        assertEquals(4, first.getRevised().size());
+        assertEquals("the slow brown dog", patch(delta));
+    }
+
+    public void testCharacters() throws Exception
+    {
+        ChangeDelta delta = new ChangeDelta(new Chunk(new Object[] {
+                "colour", "grey" }, 0, 2), new Chunk(new Object[] { "color",
+                "gray" }, 0, 2));
+        Revision refinement = new Refiner(Refiner.CHARACTERS).refine(delta,
+                null);
+        assertSame(refinement, delta.getRefinement());
+        assertEquals(2, refinement.size());
+        assertEquals(0, refinement.getDelta(0).getRevised().size());
+        assertEquals(4, refinement.getDelta(0).getOriginal().first());
+        assertEquals("color\ngray", patch(delta));
+    }
+
+    public void testOnlyChangeDeltas() throws Exception
+    {
+        Object[] orig = new String[] { "a b", "c d", "e f" };
+        Object[] rev = new String[] { "a b", "c x", "e f", "g h" };
+        Revision revision = Diff.diff(orig, rev);
+        new Refiner().refine(revision);
+        for (int d = 0; d < revision.size(); d++)
+        {
+            Delta delta = revision.getDelta(d);
+            if (delta instanceof ChangeDelta)
+                assertNotNull(((ChangeDelta) delta).getRefinement());
+        }
+    }
+
+    public void testParallel() throws Exception
+    {
+        // many small edits, so that there are many change deltas
+        Object[] orig = new Object[2000];
+        Object[] rev = new Object[2000];
+        for (int i = 0; i < orig.length; i++)
+        {
+            orig[i] = "line " + i + " of the text";
+            rev[i] = (i % 7 == 3 ? "line " + (i * 31 % 1000) + " in the text"
+                    : orig[i]);
+        }
+        Revision revision = new MyersDiff().diff(orig, rev);
+        assertTrue(revision.size() > 100);
+        new Refiner(Refiner.WORDS, ForkJoinPool.commonPool(), 8)
+                .refine(revision);
+        for (int d = 0; d < revision.size(); d++)
+        {
+            ChangeDelta delta = (ChangeDelta) revision.getDelta(d);
+            assertEquals(text(delta.getRevised()), patch(delta));
+        }
+    }
+
+    public void testCancelled() throws Exception
+    {
+        Revision revision = Diff.diff(new Object[] { "a b c" },
+                new Object[] { "a c d" });
+        DiffOptions options = new DiffOptions();
+        options.cancel();
+        try
+        {
+            new Refiner().refine(revision, options);
+            fail("cancelled refinement didn't stop");
+        }
+        catch (DiffTimeoutException e)
+        {
+            // expected
+        }
+    }
+}
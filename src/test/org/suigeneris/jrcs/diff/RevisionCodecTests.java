@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.suigeneris.jrcs.diff.format.RevisionCodec;
+
+public class RevisionCodecTests extends TestCase
+{
+    Object[] orig = new String[] { "a", "b", "c", "d", "e", "f" };
+
+    Object[] rev = new String[] { "x", "a", "c", "t", "x", "f",
+            "x" };
+
+    public RevisionCodecTests(String name)
+    {
+        super(name);
+    }
+
+    public void testRoundTrip() throws Exception
+    {
+        Revision revision = Diff.diff(orig, rev);
+        for (int t = 0; t < 2; t++)
+        {
+            ByteBuffer buffer = RevisionCodec.encode(revision, t == 1);
+            Revision decoded = RevisionCodec.decode(buffer);
+            assertEquals(0, buffer.remaining());
+            assertEquals(revision.size(), decoded.size());
+            assertEquals(revision.toRCSString(), decoded.toRCSString());
+            assertEquals(Arrays.asList(rev), Arrays.asList(decoded
+                    .patch(orig)));
+        }
+    }
+
+    public void testTable() throws Exception
+    {
+        Object[] rev = new Object[100];
+        for (int j = 0; j < rev.length; j++)
+            rev[j] = "a line that is repeated";
+        Revision revision = Diff.diff(orig, rev);
+        int plain = RevisionCodec.encode(revision, false).remaining();
+        int tabled = RevisionCodec.encode(revision, true).remaining();
+        assertTrue(tabled * 10 < plain);
+        assertEquals(tabled, RevisionCodec.encode(revision).remaining());
+
+        Revision decoded = RevisionCodec.decode(RevisionCodec
+                .encode(revision));
+        assertEquals(Arrays.asList(rev), Arrays.asList(decoded.patch(orig)));
+    }
+
+    public void testRandom() throws Exception
+    {
+        for (int seed = 0; seed < 100; seed++)
+        {
+            Object[] rev = RevisionTests.edit(orig, seed);
+            Revision revision = Diff.diff(orig, rev);
+            revision.setApproximate(seed % 2 == 0);
+            Revision decoded = RevisionCodec.decode(RevisionCodec
+                    .encode(revision));
+            assertEquals(revision.isApproximate(), decoded.isApproximate());
+            assertEquals(Arrays.asList(rev), Arrays.asList(decoded
+                    .patch(orig)));
+        }
+    }
+
+    public void testDirectBuffer() throws Exception
+    {
+        // two revisions, one after the other, outside the heap
+        ByteBuffer first = RevisionCodec.encode(Diff.diff(orig, rev));
+        ByteBuffer second = RevisionCodec.encode(Diff.diff(rev, orig), false);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(first.remaining()
+                + second.remaining());
+        buffer.put(first).put(second).flip();
+
+        assertEquals(Arrays.asList(rev), Arrays.asList(RevisionCodec.decode(
+                buffer).patch(orig)));
+        assertEquals(Arrays.asList(orig), Arrays.asList(RevisionCodec.decode(
+                buffer).patch(rev)));
+        assertEquals(0, buffer.remaining());
+    }
+
+    public void testMalformed() throws Exception
+    {
+        ByteBuffer buffer = RevisionCodec.encode(Diff.diff(orig, rev));
+        ByteBuffer truncated = buffer.duplicate();
+        truncated.limit(truncated.limit() - 1);
+        try
+        {
+            RevisionCodec.decode(truncated);
+            fail("a truncated revision was decoded");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+
+        // counts that the bytes left can't hold
+        byte[][] headers = new byte[][] {
+                { 1, 0, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+                        7 },
+                { 1, 0, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x40 },
+                { 1, RevisionCodec.TABLE, 1, (byte) 0xff, (byte) 0xff,
+                        (byte) 0xff, (byte) 0xff, 7 },
+                { 1, 0, 1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+                        7, 1, 0, 0 },
+                { 1, 0, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+                        (byte) 0xff } };
+        for (int h = 0; h < headers.length; h++)
+        {
+            try
+            {
+                RevisionCodec.decode(ByteBuffer.wrap(headers[h]));
+                fail("a corrupt header was decoded: " + h);
+            }
+            catch (IllegalArgumentException e)
+            {
+                // expected
+            }
+        }
+
+        buffer.put(buffer.position(), (byte) (RevisionCodec.VERSION + 1));
+        try
+        {
+            RevisionCodec.decode(buffer);
+            fail("an unknown version was decoded");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 1999-2006 Juancarlo Aez
+ * All rights reserved.
+ *
+ * $Id$
+ *
+ * For usage rights please see the LICENSE.* files that 
+ * come bundled with legal distributions of this resource.
+ *  
+ * Fore more information please email Juancarlo Aez at:
+ *      juanca@suigeneris.org
+ *      juancarlo.anez@gmail.com
+ */
+
+package org.suigeneris.jrcs.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.suigeneris.jrcs.diff.delta.AddDelta;
+import org.suigeneris.jrcs.diff.delta.ChangeDelta;
+import org.suigeneris.jrcs.diff.delta.Chunk;
+import org.suigeneris.jrcs.diff.delta.DeleteDelta;
+import org.suigeneris.jrcs.diff.delta.Delta;
+
+public class RevisionTests extends TestCase
+{
+    Object[] orig = new String[] { "a", "b", "c", "d", "e", "f" };
+
+    public RevisionTests(String name)
+    {
+        super(name);
+    }
+
+    public void testMerge() throws Exception
+    {
+        Object[] rev = new String[] { "x", "a", "c", "y", "e", "f", "z" };
+        Revision revision = new Revision();
+        revision.addDelta(new AddDelta(0, new Chunk(rev, 0, 1)));
+        revision.addDelta(new DeleteDelta(new Chunk(orig, 1, 1)));
+        revision.addDelta(new ChangeDelta(new Chunk(orig, 3, 1), new Chunk(
+                rev, 3, 1)));
+        revision.addDelta(new AddDelta(6, new Chunk(rev, 6, 1)));
+        assertEquals(Arrays.asList(rev), Arrays.asList(revision.patch(orig)));
+
+        List target = new LinkedList(Arrays.asList(orig));
+        revision.applyTo(target);
+        assertEquals(Arrays.asList(rev), target);
+    }
+
+    public void testWithoutText() throws Exception
+    {
+        // deltas read from an archive don't save the deleted text
+        Revision revision = new Revision();
+        revision.addDelta(new DeleteDelta(new Chunk(0, 2)));
+        revision.addDelta(new DeleteDelta(new Chunk(4, 2)));
+        assertEquals(Arrays.asList(new Object[] { "c", "d" }), Arrays
+                .asList(revision.patch(orig)));
+        revision.addDelta(new DeleteDelta(new Chunk(6, 1)));
+        try
+        {
+            revision.patch(orig);
+            fail("deleted beyond the end");
+        }
+        catch (PatchFailedException e)
+        {
+            // expected
+        }
+    }
+
+    public void testOutOfOrder() throws Exception
+    {
+        // applied one at a time from the last one, so the position of the
+        // first delta is in the text the second one leaves
+        Revision revision = new Revision();
+        revision.addDelta(new DeleteDelta(new Chunk(orig, 3, 1, 1)));
+        revision.addDelta(new DeleteDelta(new Chunk(orig, 0, 2)));
+        assertEquals(Arrays.asList(new Object[] { "c", "e", "f" }), Arrays
+                .asList(revision.patch(orig)));
+    }
+
+    public void testFailure()
+    {
+        Revision revision = new Revision();
+        revision.addDelta(new DeleteDelta(new Chunk(orig, 0, 1)));
+        revision.addDelta(new DeleteDelta(new Chunk(new Object[] { "z" }, 0,
+                1, 4)));
+        List target = new ArrayList(Arrays.asList(orig));
+        try
+        {
+            revision.applyTo(target);
+            fail("patched a different text");
+        }
+        catch (PatchFailedException e)
+        {
+            // expected
+        }
+        assertEquals(Arrays.asList(orig), target);
+    }
+
+    public void testManyDeltas() throws Exception
+    {
+        Object[] a = new Object[200000];
+        Object[] b = new Object[a.length];
+        Revision revision = new Revision();
+        for (int i = 0; i < a.length; i++)
+        {
+            a[i] = Integer.valueOf(i);
+            b[i] = (i % 4 == 1 ? Integer.valueOf(-i) : a[i]);
+            if (i % 4 == 1)
+                revision.addDelta(new ChangeDelta(new Chunk(a, i, 1),
+                        new Chunk(b, i, 1)));
+        }
+        assertTrue(Diff.compare(b, revision.patch(a)));
+    }
+
+    public void testCancelled() throws Exception
+    {
+        Revision revision = new Revision();
+        revision.addDelta(new DeleteDelta(new Chunk(orig, 0, 1)));
+        DiffOptions options = new DiffOptions();
+        options.cancel();
+        try
+        {
+            revision.patch(orig, options);
+            fail("cancelled patch didn't stop");
+        }
+        catch (DiffTimeoutException e)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * Copies a revision into a plain one, with chunks that save their text.
+     */
+    static Revision plain(Revision revision)
+    {
+        Revision copy = new Revision();
+        for (int d = 0; d < revision.size(); d++)
+        {
+            Delta delta = revision.getDelta(d);
+            Chunk original = delta.getOriginal();
+            Chunk revised = delta.getRevised();
+            copy.addDelta(Delta.newDelta(new Chunk(original.chunk(), 0,
+                    original.size(), original.anchor()), new Chunk(revised
+                    .chunk(), 0, revised.size(), revised.anchor())));
+        }
+        return copy;
+    }
+
+    static Object[] edit(Object[] text, long seed)
+    {
+        Random random = new Random(seed);
+        List edited = new ArrayList(Arrays.asList(text));
+        for (int e = random.nextInt(12); e > 0; e--)
+        {
+            int at = random.nextInt(edited.size() + 1);
+            switch (random.nextInt(3))
+            {
+            case 0:
+                edited.add(at, "new " + seed + " " + e);
+                break;
+            case 1:
+                if (at < edited.size())
+                    edited.remove(at);
+                break;
+            default:
+                if (at < edited.size())
+                    edited.set(at, "changed " + seed + " " + e);
+            }
+        }
+        return edited.toArray();
+    }
+
+    public void testInvert() throws Exception
+    {
+        for (long seed = 0; seed < 50; seed++)
+        {
+            Object[] a = DiffHelper.randomSequence(40, seed);
+            Object[] b = edit(a, seed);
+            Revision revision = Diff.diff(a, b);
+            assertTrue(Diff.compare(a, revision.invert().patch(b)));
+            assertTrue(Diff.compare(a, plain(revision).invert().patch(b)));
+            assertTrue(Diff.compare(b, revision.invert().invert().patch(a)));
+        }
+    }
+
+    public void testInvertWithoutText()
+    {
+        Revision revision = new Revision();
+        revision.addDelta(new DeleteDelta(new Chunk(0, 2)));
+        try
+        {
+            revision.invert();
+            fail("inverted a delta without its deleted text");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    public void testCompose() throws Exception
+    {
+        for (long seed = 0; seed < 200; seed++)
+        {
+            Object[] a = DiffHelper.randomSequence(30, seed);
+            Object[] b = edit(a, seed);
+            Object[] c = edit(b, seed + 1000);
+            Revision ab = Diff.diff(a, b);
+            Revision bc = Diff.diff(b, c);
+            Revision ac = Revision.compose(ab, bc);
+            assertTrue(Diff.compare(c, ac.patch(a)));
+            assertTrue(Diff.compare(c, Revision.compose(plain(ab), plain(bc))
+                    .patch(a)));
+            assertTrue(Diff.compare(a, ac.invert().patch(c)));
+        }
+    }
+
+    public void testComposeChain() throws Exception
+    {
+        Object[] text = DiffHelper.randomSequence(100, 3);
+        Object[] first = text;
+        Revision chain = new Revision();
+        for (long seed = 0; seed < 20; seed++)
+        {
+            Object[] next = edit(text, seed);
+            chain = Revision.compose(chain, Diff.diff(text, next));
+            text = next;
+        }
+        assertTrue(Diff.compare(text, chain.patch(first)));
+    }
+
+    public void testComposeWithoutText() throws Exception
+    {
+        // deltas read from an archive don't save the deleted text
+        Revision ab = new Revision();
+        ab.addDelta(new DeleteDelta(new Chunk(1, 2)));
+        Revision bc = new Revision();
+        bc.addDelta(new AddDelta(2, new Chunk(new Object[] { "x" }, 0, 1)));
+        Revision ac = Revision.compose(ab, bc);
+        assertEquals(Arrays.asList(new Object[] { "a", "d", "x", "e", "f" }),
+                Arrays.asList(ac.patch(orig)));
+        assertFalse(ac.getDelta(0).getOriginal().hasText());
+    }
+
+    public void testComposeCancels() throws Exception
+    {
+        Object[] b = new String[] { "a", "b", "x", "c", "d", "e", "f" };
+        Revision ac = Revision.compose(Diff.diff(orig, b), Diff.diff(b, orig));
+        assertEquals(0, ac.size());
+    }
+}
@@ -14,6 +14,8 @@
 
 package org.suigeneris.jrcs.diff;
 
+import java.util.Map;
+
 import org.suigeneris.jrcs.diff.simple.SimpleDiff;
 
 public class SimpleDiffTests extends DiffTest
@@ -24,4 +26,22 @@ public class SimpleDiffTests extends DiffTest
         super(name, new SimpleDiff());
     }
 
+    public void testOverriddenIndex() throws DifferentiationFailedException,
+            PatchFailedException
+    {
+        // a subclass that builds the index itself still has it used
+        final int[] calls = new int[1];
+        SimpleDiff simple = new SimpleDiff()
+        {
+            protected int[] buildIndex(Map eqs, Object[] seq, int NF)
+            {
+                calls[0]++;
+                return super.buildIndex(eqs, seq, NF);
+            }
+        };
+        Revision revision = simple.diff(original, rev1);
+        assertEquals(2, calls[0]);
+        assertTrue(Diff.compare(revision.patch(original), rev1));
+    }
+
 }